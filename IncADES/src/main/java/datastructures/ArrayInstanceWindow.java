@@ -0,0 +1,84 @@
+/*
+*    ArrayInstanceWindow.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/*
+ * Window kept on the heap, as references in a circular array that doubles when full.
+ */
+public class ArrayInstanceWindow extends InstanceWindow implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Instance[] instances = new Instance[16];
+	private int first = 0;
+	private int size = 0;
+
+	@Override
+	public void addLast(Instance inst) {
+		if (this.size == this.instances.length) {
+			Instance[] grown = new Instance[this.instances.length * 2];
+			for (int i = 0; i < this.size; i++) {
+				grown[i] = this.get(i);
+			}
+			this.instances = grown;
+			this.first = 0;
+		}
+		this.instances[(this.first + this.size++) % this.instances.length] = inst;
+		this.modCount++;
+	}
+
+	@Override
+	public Instance removeFirst() {
+		if (this.size == 0)
+			throw new NoSuchElementException();
+		Instance inst = this.instances[this.first];
+		this.instances[this.first] = null;
+		this.first = (this.first + 1) % this.instances.length;
+		this.size--;
+		this.modCount++;
+		return inst;
+	}
+
+	@Override
+	public Instance get(int index) {
+		if (index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException("Index " + index + " out of a window of " + this.size + ".");
+		return this.instances[(this.first + index) % this.instances.length];
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(this.instances, null);
+		this.first = 0;
+		this.size = 0;
+		this.modCount++;
+	}
+}
@@ -0,0 +1,295 @@
+/*
+*    BackgroundRebuildNeighborSearch.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import incades.neighborsearch.NeighborSet;
+import incades.neighborsearch.StreamNeighborSearch;
+import incades.neighborsearch.factory.AbstractNeighborSearchFactory;
+
+/*
+ * Double-buffered neighbour search. The first build is synchronous; every later call
+ * to setInstances snapshots the window and builds a new index on a background thread
+ * while the current one keeps answering queries.
+ *
+ * While a build is pending, removals are applied to the current index, and inserted
+ * instances go to a small buffer that is scanned linearly and merged with the index
+ * results. Both kinds of update are also logged and replayed on the new index before
+ * it is swapped in, so the answers stay exact across the rebuild.
+ *
+ * The wrapper expects the current index to hold exactly the window it was built from
+ * plus the updates it received, i.e. every removal from the window must be reported.
+ */
+public class BackgroundRebuildNeighborSearch implements StreamNeighborSearch {
+
+	private static final ExecutorService REBUILDER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "neighbor-search-rebuild");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AbstractNeighborSearchFactory factory;
+
+	private final AtomicReference<StreamNeighborSearch> current = new AtomicReference<StreamNeighborSearch>();
+
+	private Future<StreamNeighborSearch> pending = null;
+
+	private int nDims = 0;
+
+	// Instances of the window that are not in the current index
+	private ArrayList<Instance> scanInstances = new ArrayList<Instance>();
+	private double[] scanRows = new double[0];
+
+	// Updates received since the snapshot of the pending build
+	private ArrayList<Instance> replayInstances = new ArrayList<Instance>();
+	private boolean[] replayInserts = new boolean[16];
+
+	private int numSwaps = 0;
+
+	private final NeighborSet neighbours = new NeighborSet();
+	private Instance[] resultInstances = new Instance[8];
+	private final IntFunction<Instance> resolver = slot -> this.resultInstances[slot];
+
+	public BackgroundRebuildNeighborSearch(AbstractNeighborSearchFactory factory) {
+		this.factory = factory;
+	}
+
+	public boolean isRebuilding() {
+		return this.pending != null;
+	}
+
+	public int getNumSwaps() {
+		return this.numSwaps;
+	}
+
+	@Override
+	public void setInstances(Instances insts) throws Exception {
+		List<Instance> window = new ArrayList<Instance>(insts.size());
+		for (int i = 0; i < insts.size(); i++) {
+			window.add(insts.get(i));
+		}
+		this.setInstances(window);
+	}
+
+	@Override
+	public void setInstances(List<Instance> window) throws Exception {
+
+		this.nDims = window.get(0).numAttributes() - 1;
+
+		if (this.current.get() == null) {
+			StreamNeighborSearch index = this.factory.createNeighborSearch();
+			index.setInstances(window);
+			this.current.set(index);
+			return;
+		}
+
+		// A newer snapshot supersedes the build in progress, whose result is dropped
+		if (this.pending != null)
+			this.pending.cancel(false);
+
+		this.replayInstances.clear();
+
+		List<Instance> snapshot = new ArrayList<Instance>(window);
+		this.pending = REBUILDER.submit(() -> {
+			StreamNeighborSearch index = this.factory.createNeighborSearch();
+			index.setInstances(snapshot);
+			return index;
+		});
+	}
+
+	/*
+	 * Swaps in the new index if its build has finished, after replaying on it the
+	 * updates received since the snapshot.
+	 */
+	private void poll() throws Exception {
+		if (this.pending == null || !this.pending.isDone())
+			return;
+
+		StreamNeighborSearch index;
+		try {
+			index = this.pending.get();
+		} catch (ExecutionException e) {
+			this.pending = null;
+			throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+		}
+		this.pending = null;
+
+		for (int i = 0; i < this.replayInstances.size(); i++) {
+			if (this.replayInserts[i])
+				index.update(this.replayInstances.get(i));
+			else
+				index.removeInstance(this.replayInstances.get(i));
+		}
+		this.replayInstances.clear();
+		this.scanInstances.clear();
+
+		this.current.set(index);
+		this.numSwaps++;
+	}
+
+	private void logUpdate(Instance inst, boolean insert) {
+		if (this.pending == null)
+			return;
+		int position = this.replayInstances.size();
+		if (position == this.replayInserts.length)
+			this.replayInserts = Arrays.copyOf(this.replayInserts, position * 2);
+		this.replayInserts[position] = insert;
+		this.replayInstances.add(inst);
+	}
+
+	@Override
+	public void update(Instance inst) throws Exception {
+		this.poll();
+
+		if (this.pending == null) {
+			this.current.get().update(inst);
+			return;
+		}
+
+		int position = this.scanInstances.size();
+		if ((position + 1) * this.nDims > this.scanRows.length)
+			this.scanRows = Arrays.copyOf(this.scanRows, Math.max(16, position * 2) * this.nDims);
+		FlatKDTree.loadFeatures(inst, this.scanRows, position * this.nDims);
+		this.scanInstances.add(inst);
+
+		this.logUpdate(inst, true);
+	}
+
+	@Override
+	public void removeInstance(Instance inst) throws Exception {
+		this.poll();
+
+		int position = this.indexOfScanInstance(inst);
+		if (position >= 0) {
+			int last = this.scanInstances.size() - 1;
+			this.scanInstances.set(position, this.scanInstances.get(last));
+			this.scanInstances.remove(last);
+			System.arraycopy(this.scanRows, last * this.nDims, this.scanRows, position * this.nDims, this.nDims);
+		} else {
+			this.current.get().removeInstance(inst);
+		}
+
+		this.logUpdate(inst, false);
+	}
+
+	private int indexOfScanInstance(Instance inst) {
+		for (int i = 0; i < this.scanInstances.size(); i++) {
+			if (this.scanInstances.get(i) == inst)
+				return i;
+		}
+		return -1;
+	}
+
+	/*
+	 * Counters of the index in service, which start again when a rebuilt one replaces
+	 * it.
+	 */
+	@Override
+	public long getTotalNodesVisited() {
+		StreamNeighborSearch index = this.current.get();
+		return index == null ? -1 : index.getTotalNodesVisited();
+	}
+
+	@Override
+	public long getTotalDistancesComputed() {
+		StreamNeighborSearch index = this.current.get();
+		return index == null ? -1 : index.getTotalDistancesComputed();
+	}
+
+	@Override
+	public boolean isToRebuild() {
+		try {
+			this.poll();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		return this.pending == null && this.current.get().isToRebuild();
+	}
+
+	@Override
+	public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception {
+		this.poll();
+
+		StreamNeighborSearch index = this.current.get();
+		if (this.scanInstances.isEmpty())
+			return index.kNearestNeighbourSet(target, k);
+
+		NeighborSet indexed = index.kNearestNeighbourSet(target, k);
+
+		// The index is done with the query context, so its heap can merge both sources
+		KnnQueryContext context = KnnQueryContext.get();
+		double[] query = context.begin(k, this.nDims);
+		FlatKDTree.loadFeatures(target, query, 0);
+
+		BoundedMaxHeap heap = context.heap;
+		for (int i = 0; i < indexed.size(); i++) {
+			heap.offer(indexed.distance(i), i);
+		}
+		int numScanned = this.scanInstances.size();
+		double[] scan = context.scanBuffer(numScanned);
+		this.factory.getDistanceKernel().distances(query, 0, this.scanRows, 0, numScanned, this.nDims, scan, 0);
+		for (int i = 0; i < numScanned; i++) {
+			heap.offer(scan[i], -1 - i);
+		}
+		int found = context.finish();
+
+		if (this.resultInstances.length < found)
+			this.resultInstances = new Instance[found];
+
+		this.neighbours.clear(target.numClasses(), this.resolver);
+		for (int i = 0; i < found; i++) {
+			int source = context.slots[i];
+			Instance inst = source >= 0 ? indexed.instance(source) : this.scanInstances.get(-1 - source);
+			this.resultInstances[i] = inst;
+			this.neighbours.add(i, context.distances[i], inst.classValue());
+		}
+
+		return this.neighbours;
+	}
+
+	@Override
+	public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+		this.poll();
+
+		if (this.scanInstances.isEmpty())
+			return this.current.get().kNearestNeighbours(target, k);
+
+		NeighborSet merged = this.kNearestNeighbourSet(target, k);
+
+		ReusableInstances result = KnnQueryContext.get().neighbours(target, k);
+		for (int i = 0; i < merged.size(); i++) {
+			result.addNeighbour(merged.instance(i));
+		}
+		return result;
+	}
+}
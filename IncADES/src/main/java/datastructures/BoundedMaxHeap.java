@@ -0,0 +1,150 @@
+/*
+*    BoundedMaxHeap.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datastructures;
+
+/*
+ * Fixed-capacity max-heap of (distance, slot) pairs kept in two primitive arrays.
+ * The root always holds the worst of the current k best candidates, so it can be
+ * used directly as the pruning radius of a k nearest neighbours search.
+ */
+public class BoundedMaxHeap {
+
+	private double[] distances;
+	private int[] slots;
+	private int capacity;
+	private int size;
+
+	public BoundedMaxHeap(int capacity) {
+		this.distances = new double[capacity];
+		this.slots = new int[capacity];
+		this.capacity = capacity;
+	}
+
+	/*
+	 * Empties the heap and sets how many candidates it keeps. The backing arrays only
+	 * grow, so reusing the heap does not allocate once it is warmed up.
+	 */
+	public void reset(int capacity) {
+		if (capacity > this.distances.length) {
+			this.distances = new double[capacity];
+			this.slots = new int[capacity];
+		}
+		this.capacity = capacity;
+		this.size = 0;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int capacity() {
+		return this.capacity;
+	}
+
+	public boolean isFull() {
+		return this.size == this.capacity;
+	}
+
+	/*
+	 * Distance of the worst candidate kept, or positive infinity while the heap still
+	 * has room.
+	 */
+	public double worstDistance() {
+		if (this.size < this.capacity)
+			return Double.POSITIVE_INFINITY;
+		return this.distances[0];
+	}
+
+	/*
+	 * Slot of the closest candidate kept, found by a scan of the heap. The heap must not
+	 * be empty.
+	 */
+	public int closestSlot() {
+		int closest = 0;
+		for (int i = 1; i < this.size; i++) {
+			if (this.distances[i] < this.distances[closest])
+				closest = i;
+		}
+		return this.slots[closest];
+	}
+
+	/*
+	 * Keeps the candidate if the heap has room or if it is no farther than the current
+	 * worst one, which it replaces: as in the original K-d tree, the candidate offered
+	 * last wins a tie. Returns true when the candidate was kept.
+	 */
+	public boolean offer(double distance, int slot) {
+		if (this.size < this.capacity) {
+			int i = this.size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (this.distances[parent] >= distance)
+					break;
+				this.distances[i] = this.distances[parent];
+				this.slots[i] = this.slots[parent];
+				i = parent;
+			}
+			this.distances[i] = distance;
+			this.slots[i] = slot;
+			return true;
+		}
+
+		if (this.capacity == 0 || distance > this.distances[0])
+			return false;
+
+		this.siftDown(distance, slot, this.size);
+		return true;
+	}
+
+	/*
+	 * Empties the heap into the given arrays in ascending order of distance and returns
+	 * the number of candidates written.
+	 */
+	public int drainAscending(double[] sortedDistances, int[] sortedSlots) {
+		int count = this.size;
+		while (this.size > 0) {
+			int last = --this.size;
+			sortedDistances[last] = this.distances[0];
+			sortedSlots[last] = this.slots[0];
+			if (last > 0)
+				this.siftDown(this.distances[last], this.slots[last], last);
+		}
+		return count;
+	}
+
+	private void siftDown(double distance, int slot, int length) {
+		int i = 0;
+		int half = length >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < length && this.distances[right] > this.distances[child])
+				child = right;
+			if (distance >= this.distances[child])
+				break;
+			this.distances[i] = this.distances[child];
+			this.slots[i] = this.slots[child];
+			i = child;
+		}
+		this.distances[i] = distance;
+		this.slots[i] = slot;
+	}
+}
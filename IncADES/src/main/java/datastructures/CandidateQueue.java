@@ -0,0 +1,105 @@
+/*
+*    CandidateQueue.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.util.Arrays;
+
+/*
+ * Growable min-heap of (distance, slot) pairs kept in two primitive arrays, the
+ * counterpart of BoundedMaxHeap for the frontier of best-first graph searches.
+ */
+public class CandidateQueue {
+
+	private double[] distances;
+	private int[] slots;
+	private int size;
+
+	public CandidateQueue(int capacity) {
+		this.distances = new double[capacity];
+		this.slots = new int[capacity];
+	}
+
+	public void clear() {
+		this.size = 0;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public void add(double distance, int slot) {
+		if (this.size == this.distances.length) {
+			int capacity = Math.max(16, this.size * 2);
+			this.distances = Arrays.copyOf(this.distances, capacity);
+			this.slots = Arrays.copyOf(this.slots, capacity);
+		}
+
+		int i = this.size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (this.distances[parent] <= distance)
+				break;
+			this.distances[i] = this.distances[parent];
+			this.slots[i] = this.slots[parent];
+			i = parent;
+		}
+		this.distances[i] = distance;
+		this.slots[i] = slot;
+	}
+
+	/*
+	 * Distance of the closest candidate. The queue must not be empty.
+	 */
+	public double peekDistance() {
+		return this.distances[0];
+	}
+
+	/*
+	 * Removes the closest candidate and returns its slot. The queue must not be empty.
+	 */
+	public int poll() {
+		int slot = this.slots[0];
+		int last = --this.size;
+		if (last > 0) {
+			double distance = this.distances[last];
+			int moved = this.slots[last];
+			int i = 0;
+			int half = last >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				int right = child + 1;
+				if (right < last && this.distances[right] < this.distances[child])
+					child = right;
+				if (distance <= this.distances[child])
+					break;
+				this.distances[i] = this.distances[child];
+				this.slots[i] = this.slots[child];
+				i = child;
+			}
+			this.distances[i] = distance;
+			this.slots[i] = moved;
+		}
+		return slot;
+	}
+}
@@ -0,0 +1,38 @@
+/*
+*    CoordinateFormat.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+/*
+ * How an index stores the coordinates of its points: as given, as 32-bit floats, or
+ * as 16 or 8-bit codes over the range of each attribute.
+ */
+public enum CoordinateFormat {
+	DOUBLE(8), FLOAT(4), QUANTIZED_16(2), QUANTIZED_8(1);
+
+	private final int bytesPerValue;
+
+	private CoordinateFormat(int bytesPerValue) {
+		this.bytesPerValue = bytesPerValue;
+	}
+
+	public int bytesPerValue() {
+		return this.bytesPerValue;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+*    CoordinateStore.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.io.Serializable;
+
+import incades.neighborsearch.DistanceKernel;
+
+/*
+ * Rows of nDims coordinates in one of the formats of CoordinateFormat. The kernels
+ * work on doubles, so a compact row is decoded into a scratch buffer before its
+ * distance is computed; only DoubleCoordinateStore hands its array to the kernel.
+ *
+ * The distances of a compact store are approximate, so an index using one keeps more
+ * candidates than asked and ranks them again with the exact values of the instances
+ * (see rerankSize).
+ */
+public abstract class CoordinateStore implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final int nDims;
+
+	protected CoordinateStore(int nDims) {
+		this.nDims = nDims;
+	}
+
+	public static CoordinateStore create(CoordinateFormat format, int nDims) {
+		switch (format) {
+		case FLOAT:
+			return new FloatCoordinateStore(nDims);
+		case QUANTIZED_16:
+			return new QuantizedCoordinateStore(nDims, 16);
+		case QUANTIZED_8:
+			return new QuantizedCoordinateStore(nDims, 8);
+		default:
+			return new DoubleCoordinateStore(nDims);
+		}
+	}
+
+	/*
+	 * Number of candidates kept by a query of k neighbours before they are ranked again
+	 * with the exact values.
+	 */
+	public static int rerankSize(int k) {
+		return 2 * k + 8;
+	}
+
+	public int numDims() {
+		return this.nDims;
+	}
+
+	/*
+	 * True when the stored coordinates are the values given, so no re-ranking is needed.
+	 */
+	public boolean isExact() {
+		return false;
+	}
+
+	/*
+	 * Makes room for capacity rows, keeping the rows stored.
+	 */
+	public abstract void grow(int capacity);
+
+	public abstract void set(int row, double[] values, int offset);
+
+	public abstract void decode(int row, double[] out, int outOffset);
+
+	/*
+	 * Writes the rows fromRow to toRow - 1 one after the other from out[outOffset].
+	 */
+	public void decode(int fromRow, int toRow, double[] out, int outOffset) {
+		for (int row = fromRow; row < toRow; row++) {
+			this.decode(row, out, outOffset + (row - fromRow) * this.nDims);
+		}
+	}
+
+	public abstract void copy(int fromRow, int toRow);
+
+	/*
+	 * Lets the store learn the range of the values before they are set. Only quantized
+	 * stores use it, to spread their codes over the values of a window.
+	 */
+	public void include(double[] values, int offset) {
+	}
+
+	public double distance(DistanceKernel kernel, double[] x, int xOffset, int row, double[] scratch) {
+		this.decode(row, scratch, 0);
+		return kernel.distance(x, xOffset, scratch, 0, this.nDims);
+	}
+
+	public double distance(DistanceKernel kernel, double[] x, int xOffset, int row, double cutoff, double[] scratch) {
+		this.decode(row, scratch, 0);
+		return kernel.distance(x, xOffset, scratch, 0, this.nDims, cutoff);
+	}
+
+	/*
+	 * Distances from x to the rows fromRow to toRow - 1, written from out[outOffset].
+	 * The scratch buffer must hold the decoded rows.
+	 */
+	public void distances(DistanceKernel kernel, double[] x, int xOffset, int fromRow, int toRow, double[] out,
+			int outOffset, double[] scratch) {
+		this.decode(fromRow, toRow, scratch, 0);
+		kernel.distances(x, xOffset, scratch, 0, toRow - fromRow, this.nDims, out, outOffset);
+	}
+}
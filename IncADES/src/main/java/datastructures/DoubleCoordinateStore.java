@@ -0,0 +1,79 @@
+/*
+*    DoubleCoordinateStore.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.util.Arrays;
+
+import incades.neighborsearch.DistanceKernel;
+
+/*
+ * Coordinates kept as given, handed to the kernel without decoding.
+ */
+public class DoubleCoordinateStore extends CoordinateStore {
+
+	private static final long serialVersionUID = 1L;
+
+	private double[] values = new double[0];
+
+	public DoubleCoordinateStore(int nDims) {
+		super(nDims);
+	}
+
+	@Override
+	public boolean isExact() {
+		return true;
+	}
+
+	@Override
+	public void grow(int capacity) {
+		this.values = Arrays.copyOf(this.values, capacity * this.nDims);
+	}
+
+	@Override
+	public void set(int row, double[] values, int offset) {
+		System.arraycopy(values, offset, this.values, row * this.nDims, this.nDims);
+	}
+
+	@Override
+	public void decode(int row, double[] out, int outOffset) {
+		System.arraycopy(this.values, row * this.nDims, out, outOffset, this.nDims);
+	}
+
+	@Override
+	public void copy(int fromRow, int toRow) {
+		System.arraycopy(this.values, fromRow * this.nDims, this.values, toRow * this.nDims, this.nDims);
+	}
+
+	@Override
+	public double distance(DistanceKernel kernel, double[] x, int xOffset, int row, double[] scratch) {
+		return kernel.distance(x, xOffset, this.values, row * this.nDims, this.nDims);
+	}
+
+	@Override
+	public double distance(DistanceKernel kernel, double[] x, int xOffset, int row, double cutoff, double[] scratch) {
+		return kernel.distance(x, xOffset, this.values, row * this.nDims, this.nDims, cutoff);
+	}
+
+	@Override
+	public void distances(DistanceKernel kernel, double[] x, int xOffset, int fromRow, int toRow, double[] out,
+			int outOffset, double[] scratch) {
+		kernel.distances(x, xOffset, this.values, fromRow, toRow, this.nDims, out, outOffset);
+	}
+}
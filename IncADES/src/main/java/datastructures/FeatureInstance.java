@@ -0,0 +1,114 @@
+/*
+*    FeatureInstance.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+/*
+ * Instance carrying the FeatureRecord of its values. IncADES turns every instance it
+ * trains on into one, so the window, the indexes and the selection of classifiers all
+ * read the same primitive arrays. A copy keeps the storage of the instance it is made
+ * from, so a sparse instance stays sparse, and so does its record.
+ *
+ * The record is built on first use and dropped whenever a value is set; copies share
+ * it until they are modified.
+ */
+public class FeatureInstance extends DenseInstance {
+
+	private static final long serialVersionUID = 1L;
+
+	private FeatureRecord record;
+
+	public FeatureInstance(double weight, double[] values) {
+		super(weight, values);
+	}
+
+	public FeatureInstance(Instance inst) {
+		super(inst);
+		if (inst instanceof FeatureInstance)
+			this.record = ((FeatureInstance) inst).record;
+	}
+
+	/*
+	 * inst itself when it already carries a record, or a copy of it that does.
+	 */
+	public static FeatureInstance of(Instance inst) {
+		if (inst instanceof FeatureInstance)
+			return (FeatureInstance) inst;
+		FeatureInstance featureInstance = new FeatureInstance(inst);
+		featureInstance.getRecord();
+		return featureInstance;
+	}
+
+	public FeatureRecord getRecord() {
+		if (this.record == null)
+			this.record = new FeatureRecord(this);
+		return this.record;
+	}
+
+	@Override
+	public Instance copy() {
+		return new FeatureInstance(this);
+	}
+
+	@Override
+	public void setValue(int attributeIndex, double value) {
+		super.setValue(attributeIndex, value);
+		this.record = null;
+	}
+
+	@Override
+	public void setClassValue(double value) {
+		super.setClassValue(value);
+		this.record = null;
+	}
+
+	@Override
+	public void setMissing(int attributeIndex) {
+		super.setMissing(attributeIndex);
+		this.record = null;
+	}
+
+	@Override
+	public void deleteAttributeAt(int position) {
+		super.deleteAttributeAt(position);
+		this.record = null;
+	}
+
+	@Override
+	public void insertAttributeAt(int position) {
+		super.insertAttributeAt(position);
+		this.record = null;
+	}
+
+	@Override
+	public void addSparseValues(int[] indexValues, double[] attributeValues, int numberAttributes) {
+		super.addSparseValues(indexValues, attributeValues, numberAttributes);
+		this.record = null;
+	}
+
+	@Override
+	public void setDataset(Instances dataset) {
+		super.setDataset(dataset);
+		this.record = null;
+	}
+}
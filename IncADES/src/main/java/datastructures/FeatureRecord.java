@@ -0,0 +1,284 @@
+/*
+*    FeatureRecord.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/*
+ * Primitive copy of the values of an instance, made once when it enters the stream
+ * (see FeatureInstance) and shared by the window, the indexes and the distance
+ * functions, so that they stop calling toDoubleArray() on every node visit.
+ *
+ * features() holds the attribute values without the class, in attribute order, and
+ * magnitudes() their absolute values, the terms of the Canberra denominators. A record
+ * is never modified: an instance whose values change gets a new one.
+ *
+ * The record of a sparse instance only keeps its non-zero features, as the positions
+ * and values returned by nonZeroIndices() and nonZeroValues(), and builds the dense
+ * arrays on first use. The record of a dense instance builds the sparse arrays on
+ * first use instead, for the indexes that only visit non-zero features.
+ */
+public final class FeatureRecord implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public final double label;
+	public final int classIndex;
+
+	private final int numFeatures;
+	private final boolean sparse;
+
+	private volatile double[] features;
+	private volatile double[] magnitudes;
+
+	private volatile int[] nonZeroIndices;
+	private volatile double[] nonZeroValues;
+
+	public FeatureRecord(Instance inst) {
+		int numAttributes = inst.numAttributes();
+		int classIndex = inst.classIndex();
+		this.classIndex = classIndex >= 0 && classIndex < numAttributes ? classIndex : numAttributes;
+		this.numFeatures = this.classIndex < numAttributes ? numAttributes - 1 : numAttributes;
+		this.label = this.classIndex < numAttributes ? inst.classValue() : Double.NaN;
+		this.sparse = isSparse(inst);
+
+		if (this.sparse) {
+			int numValues = inst.numValues();
+			int[] indices = new int[numValues];
+			double[] values = new double[numValues];
+			int count = 0;
+			for (int i = 0; i < numValues; i++) {
+				int index = inst.index(i);
+				double value = inst.valueSparse(i);
+				if (index == this.classIndex || value == 0)
+					continue;
+				indices[count] = index < this.classIndex ? index : index - 1;
+				values[count] = value;
+				count++;
+			}
+			this.nonZeroIndices = Arrays.copyOf(indices, count);
+			this.nonZeroValues = Arrays.copyOf(values, count);
+			return;
+		}
+
+		double[] features = new double[this.numFeatures];
+		for (int i = 0, j = 0; i < numAttributes; i++) {
+			if (i != classIndex)
+				features[j++] = inst.value(i);
+		}
+		this.features = features;
+		this.magnitudes = absolute(features);
+	}
+
+	/*
+	 * The record of inst, built for the occasion when inst does not carry one.
+	 */
+	public static FeatureRecord of(Instance inst) {
+		if (inst instanceof FeatureInstance)
+			return ((FeatureInstance) inst).getRecord();
+		return new FeatureRecord(inst);
+	}
+
+	/*
+	 * Whether inst stores only some of its values, as a SparseInstance does.
+	 */
+	public static boolean isSparse(Instance inst) {
+		return inst.numValues() < inst.numAttributes();
+	}
+
+	public boolean isSparse() {
+		return this.sparse;
+	}
+
+	public int numFeatures() {
+		return this.numFeatures;
+	}
+
+	public double[] features() {
+		double[] features = this.features;
+		if (features == null) {
+			features = new double[this.numFeatures];
+			int[] indices = this.nonZeroIndices;
+			double[] values = this.nonZeroValues;
+			for (int i = 0; i < indices.length; i++) {
+				features[indices[i]] = values[i];
+			}
+			this.features = features;
+		}
+		return features;
+	}
+
+	public double[] magnitudes() {
+		double[] magnitudes = this.magnitudes;
+		if (magnitudes == null) {
+			magnitudes = absolute(this.features());
+			this.magnitudes = magnitudes;
+		}
+		return magnitudes;
+	}
+
+	/*
+	 * Positions of the non-zero features, in increasing order.
+	 */
+	public int[] nonZeroIndices() {
+		if (this.nonZeroIndices == null)
+			this.buildNonZeros();
+		return this.nonZeroIndices;
+	}
+
+	public double[] nonZeroValues() {
+		if (this.nonZeroValues == null)
+			this.buildNonZeros();
+		return this.nonZeroValues;
+	}
+
+	public int numNonZeros() {
+		return this.nonZeroIndices().length;
+	}
+
+	private void buildNonZeros() {
+		double[] features = this.features;
+		int count = 0;
+		for (double value : features) {
+			if (value != 0)
+				count++;
+		}
+		int[] indices = new int[count];
+		double[] values = new double[count];
+		for (int i = 0, j = 0; i < features.length; i++) {
+			if (features[i] != 0) {
+				indices[j] = i;
+				values[j] = features[i];
+				j++;
+			}
+		}
+		// Values first, so a thread seeing the indices also sees them
+		this.nonZeroValues = values;
+		this.nonZeroIndices = indices;
+	}
+
+	/*
+	 * Copies the features into dst from offset, zeros included.
+	 */
+	public void copyFeatures(double[] dst, int offset) {
+		double[] features = this.features;
+		if (features != null) {
+			System.arraycopy(features, 0, dst, offset, this.numFeatures);
+			return;
+		}
+		Arrays.fill(dst, offset, offset + this.numFeatures, 0);
+		int[] indices = this.nonZeroIndices;
+		double[] values = this.nonZeroValues;
+		for (int i = 0; i < indices.length; i++) {
+			dst[offset + indices[i]] = values[i];
+		}
+	}
+
+	/*
+	 * Value of the feature at position index.
+	 */
+	public double feature(int index) {
+		double[] features = this.features;
+		if (features != null)
+			return features[index];
+		int position = Arrays.binarySearch(this.nonZeroIndices, index);
+		return position >= 0 ? this.nonZeroValues[position] : 0;
+	}
+
+	/*
+	 * Value of the attribute at index, counting the class as toDoubleArray() does.
+	 */
+	public double attributeValue(int index) {
+		if (index < this.classIndex)
+			return this.feature(index);
+		if (index == this.classIndex)
+			return this.label;
+		return this.feature(index - 1);
+	}
+
+	/*
+	 * Whether both records hold the same attribute values, the class included, compared
+	 * as toDoubleArray() values are with ==.
+	 */
+	public boolean sameValues(FeatureRecord other) {
+		return this.label == other.label && this.sameFeatures(other);
+	}
+
+	/*
+	 * Same comparison, leaving the class out.
+	 */
+	public boolean sameFeatures(FeatureRecord other) {
+		if (this.classIndex != other.classIndex || this.numFeatures != other.numFeatures)
+			return false;
+
+		if (!this.sparse && !other.sparse) {
+			for (int i = 0; i < this.numFeatures; i++) {
+				if (this.features[i] != other.features[i])
+					return false;
+			}
+			return true;
+		}
+
+		int[] indices = this.nonZeroIndices();
+		int[] otherIndices = other.nonZeroIndices();
+		if (indices.length != otherIndices.length)
+			return false;
+		double[] values = this.nonZeroValues();
+		double[] otherValues = other.nonZeroValues();
+		for (int i = 0; i < indices.length; i++) {
+			if (indices[i] != otherIndices[i] || values[i] != otherValues[i])
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Hash of the features, equal for records with the same features. Zeros are left
+	 * out, so a sparse record and a dense one hash alike.
+	 */
+	public int featureHash() {
+		int hash = this.numFeatures;
+		double[] features = this.features;
+		if (features != null) {
+			for (int i = 0; i < features.length; i++) {
+				if (features[i] != 0)
+					hash = 31 * (31 * hash + i) + Double.hashCode(features[i]);
+			}
+			return hash;
+		}
+		int[] indices = this.nonZeroIndices;
+		double[] values = this.nonZeroValues;
+		for (int i = 0; i < indices.length; i++) {
+			hash = 31 * (31 * hash + indices[i]) + Double.hashCode(values[i]);
+		}
+		return hash;
+	}
+
+	private static double[] absolute(double[] values) {
+		double[] magnitudes = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			magnitudes[i] = Math.abs(values[i]);
+		}
+		return magnitudes;
+	}
+}
@@ -0,0 +1,1050 @@
+/*
+*    FlatKDTree.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import javax.management.InstanceNotFoundException;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import incades.neighborsearch.CanberraKernel;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.NeighborSet;
+import incades.neighborsearch.StreamNeighborSearch;
+import moa.classifiers.lazy.neighboursearch.NearestNeighbourSearch;
+
+/*
+ * K-d tree stored as a struct of arrays. Distances and pruning bounds are computed by
+ * a DistanceKernel, the Canberra distance unless another one is given.
+ *
+ * Every point lives in a slot. The coordinates of slot s (class attribute removed)
+ * are coords[s*nDims .. s*nDims+nDims-1], and the tree links, split dimensions and
+ * tombstones are kept in parallel primitive arrays. Searches walk the tree with an
+ * explicit stack, so degenerate streams cannot overflow the call stack.
+ *
+ * Every node also keeps the bounding box of its subtree (lower and upper, laid out as
+ * coords). A query skips a subtree when the distance to its box already
+ * exceeds the current k-th distance. Boxes grow with insertions and are only tightened
+ * when their subtree is rebuilt, so after removals they may be larger than needed.
+ *
+ * The tree keeps itself in shape with scapegoat-style partial rebuilds instead of
+ * being rebuilt as a whole. Every node knows the number of nodes and of active nodes
+ * of its subtree: an insertion that lands too deep rebuilds the first weight-unbalanced
+ * ancestor, a removal rebuilds the highest ancestor whose subtree holds too many
+ * tombstones, and tombstoned leaves are unlinked right away. Rebuilds are paid with a
+ * credit earned by every update, so a subtree that cannot be balanced (identical
+ * points) is not rebuilt over and over. Slots of removed points are reused.
+ *
+ * A slot is also the handle of its point: it does not move until the point is
+ * removed. As slots are reused, a handle is only honoured while its slot still holds
+ * the instance it was issued for. Points are looked up by identity when they are
+ * removed, so duplicated feature vectors never remove each other.
+ *
+ * Above a window size set with setParallelSearch, a query is split over the common
+ * ForkJoin pool: the top of the tree is searched by the calling thread, and the
+ * subtrees below it by tasks with heaps of their own, which share the best k-th
+ * distance found so far to prune each other's subtrees.
+ */
+public class FlatKDTree extends NearestNeighbourSearch implements StreamNeighborSearch {
+
+	private static final long serialVersionUID = 1L;
+
+	protected static final int NIL = -1;
+
+	/* A child holding more than ALPHA of the nodes of its parent unbalances it */
+	private static final double ALPHA = 0.75;
+	private static final double LOG_INV_ALPHA = Math.log(1 / ALPHA);
+
+	/* Subtrees with at least MIN_REBUILD_SIZE nodes are rebuilt above this ratio of tombstones */
+	private static final double TOMBSTONE_RATIO = 0.3;
+	private static final int MIN_REBUILD_SIZE = 32;
+
+	/* Nodes that may be rebuilt for every insertion or removal */
+	private static final int REBUILD_CREDIT = 16;
+
+	/* Subtrees searched in parallel per thread of the pool, to even out their costs */
+	private static final int TASKS_PER_THREAD = 4;
+
+	private final DistanceKernel kernel;
+
+	private int nDims = 0;
+	private int numInstances = 0;
+	private int numSlots = 0;
+	private int numNodesDeactivated = 0;
+	private int root = NIL;
+
+	private long rebuildCredit = 0;
+	private int numPartialRebuilds = 0;
+
+	/* Work of the sequential searches, for the rebuild policies */
+	private long totalNodesVisited = 0;
+	private long totalDistancesComputed = 0;
+
+	private double epsilon = 0;
+	private int maxVisitedNodes = 0;
+
+	private int parallelThreshold = 0;
+
+	private double[] coords = new double[0];
+	private double[] lower = new double[0];
+	private double[] upper = new double[0];
+	private int[] left = new int[0];
+	private int[] right = new int[0];
+	private int[] splitDims = new int[0];
+	private int[] parents = new int[0];
+	private int[] sizes = new int[0];
+	private int[] live = new int[0];
+	private int[] freeSlots = new int[0];
+	private int numFreeSlots = 0;
+	private boolean[] active = new boolean[0];
+	private double[] labels = new double[0];
+	private Instance[] slotInstances = new Instance[0];
+	private IdentityHashMap<Instance, Integer> slotsByInstance = new IdentityHashMap<Instance, Integer>();
+
+	private transient IntFunction<Instance> resolver;
+
+	public FlatKDTree() {
+		this(new CanberraKernel());
+	}
+
+	public FlatKDTree(DistanceKernel kernel) {
+		super();
+		this.kernel = kernel;
+	}
+
+	public FlatKDTree(Instances instances) throws Exception {
+		this();
+		this.setInstances(instances);
+	}
+
+	public DistanceKernel getDistanceKernel() {
+		return this.kernel;
+	}
+
+	@Override
+	public Instance nearestNeighbour(Instance target) throws Exception {
+		Instances neighbours = this.kNearestNeighbours(target, 1);
+		return neighbours.get(0);
+	}
+
+	public int getNumInstances() {
+		return this.numInstances;
+	}
+
+	public int getNumPartialRebuilds() {
+		return this.numPartialRebuilds;
+	}
+
+	@Override
+	public long getTotalNodesVisited() {
+		return this.totalNodesVisited;
+	}
+
+	@Override
+	public long getTotalDistancesComputed() {
+		return this.totalDistancesComputed;
+	}
+
+	/*
+	 * Turns the search approximate. With epsilon > 0 a subtree is skipped unless it may
+	 * hold a point closer than worst/(1+epsilon), so every neighbour returned is within
+	 * (1+epsilon) times the distance of the true one of the same rank. With
+	 * maxVisitedNodes > 0 a query stops after visiting that many nodes. Zero for both
+	 * gives the exact search.
+	 */
+	public void setApproximation(double epsilon, int maxVisitedNodes) {
+		if (epsilon < 0 || maxVisitedNodes < 0)
+			throw new IllegalArgumentException("epsilon and maxVisitedNodes must not be negative.");
+		this.epsilon = epsilon;
+		this.maxVisitedNodes = maxVisitedNodes;
+	}
+
+	/*
+	 * Splits the queries over the threads of the common ForkJoin pool while the tree
+	 * holds at least minInstances points, for windows large enough for a query to
+	 * outweigh the cost of the tasks. Zero keeps every query on the calling thread, as
+	 * does a limit of visited nodes (see setApproximation).
+	 */
+	public void setParallelSearch(int minInstances) {
+		if (minInstances < 0)
+			throw new IllegalArgumentException("minInstances must not be negative.");
+		this.parallelThreshold = minInstances;
+	}
+
+	/*
+	 * The returned Instances belongs to the query context of the calling thread and is
+	 * overwritten by the next query made on that thread.
+	 */
+	@Override
+	public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+
+		if (this.nDims == 0) {
+			throw new Exception("The K-d tree was not initialized. Please use the method setInstances(Instances)");
+		}
+
+		KnnQueryContext context = KnnQueryContext.get();
+		double[] query = context.begin(k, this.nDims);
+		loadFeatures(target, query, 0);
+
+		this.search(query, context);
+		int found = context.finish();
+
+		ReusableInstances neighbours = context.neighbours(target, k);
+		for (int i = 0; i < found; i++) {
+			neighbours.addNeighbour(this.slotInstances[context.slots[i]]);
+		}
+
+		return neighbours;
+	}
+
+	/*
+	 * Same search as kNearestNeighbours, returning slots, distances and class values
+	 * without building an Instances. The set belongs to the query context of the
+	 * calling thread.
+	 */
+	@Override
+	public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception {
+
+		if (this.nDims == 0) {
+			throw new Exception("The K-d tree was not initialized. Please use the method setInstances(Instances)");
+		}
+
+		KnnQueryContext context = KnnQueryContext.get();
+		double[] query = context.begin(k, this.nDims);
+		loadFeatures(target, query, 0);
+
+		this.search(query, context);
+		int found = context.finish();
+
+		NeighborSet neighbours = context.neighborSet;
+		neighbours.clear(target.numClasses(), this.getResolver());
+		for (int i = 0; i < found; i++) {
+			int slot = context.slots[i];
+			neighbours.add(slot, context.distances[i], this.labels[slot]);
+		}
+
+		return neighbours;
+	}
+
+	/*
+	 * Answers the targets in the order of the leaves they fall into, so consecutive
+	 * queries are close to each other. Each query starts with the neighbours of the
+	 * previous one in its heap: their distances give a tight bound from the first node
+	 * on, and far subtrees are pruned right away. The distances found are the same as
+	 * with one query per target; only ties at the k-th distance may be broken
+	 * differently.
+	 *
+	 * Each query still traverses the tree on its own, and the seeds save little: under
+	 * 1% of the distances on uniform windows. A traversal shared by groups of targets was
+	 * tried and computed more distances, as all members follow the near-first order of
+	 * one of them.
+	 */
+	@Override
+	public NeighborSet[] kNearestNeighbourSets(Instance[] targets, int k) throws Exception {
+
+		if (this.nDims == 0) {
+			throw new Exception("The K-d tree was not initialized. Please use the method setInstances(Instances)");
+		}
+
+		int n = targets.length;
+		double[] queries = new double[n * this.nDims];
+		long[] order = new long[n];
+		for (int i = 0; i < n; i++) {
+			loadFeatures(targets[i], queries, i * this.nDims);
+			order[i] = (this.leafKey(queries, i * this.nDims) << 32) | i;
+		}
+		Arrays.sort(order);
+
+		NeighborSet[] results = new NeighborSet[n];
+		KnnQueryContext context = KnnQueryContext.get();
+		int[] seeds = new int[Math.max(1, k)];
+		int numSeeds = 0;
+
+		for (int j = 0; j < n; j++) {
+			int i = (int) order[j];
+			double[] query = context.begin(k, this.nDims);
+			System.arraycopy(queries, i * this.nDims, query, 0, this.nDims);
+
+			for (int s = 0; s < numSeeds; s++) {
+				context.heap.offer(this.distance(query, seeds[s]), seeds[s]);
+			}
+			this.search(query, context, seeds, numSeeds);
+			int found = context.finish();
+
+			NeighborSet neighbours = new NeighborSet(Math.max(1, k));
+			neighbours.clear(targets[i].numClasses(), this.getResolver());
+			for (int s = 0; s < found; s++) {
+				int slot = context.slots[s];
+				neighbours.add(slot, context.distances[s], this.labels[slot]);
+			}
+			results[i] = neighbours;
+
+			System.arraycopy(context.slots, 0, seeds, 0, found);
+			numSeeds = found;
+		}
+
+		return results;
+	}
+
+	/*
+	 * Path followed by the query from the root, one bit per level (1 for the right
+	 * child) on the first 31 levels. Queries with close keys end in nearby leaves.
+	 */
+	private long leafKey(double[] queries, int offset) {
+		long key = 0;
+		int p = this.root;
+		for (int level = 0; level < 31; level++) {
+			int bit = 0;
+			if (p != NIL) {
+				int dim = this.splitDims[p];
+				if (queries[offset + dim] >= this.coords[p * this.nDims + dim]) {
+					bit = 1;
+					p = this.right[p];
+				} else {
+					p = this.left[p];
+				}
+			}
+			key = (key << 1) | bit;
+		}
+		return key;
+	}
+
+	private IntFunction<Instance> getResolver() {
+		if (this.resolver == null)
+			this.resolver = slot -> this.slotInstances[slot];
+		return this.resolver;
+	}
+
+	/*
+	 * Collects the nearest active slots into the heap of the context. Subtrees are
+	 * pushed with the distance to their bounding box, a lower bound of the distance to
+	 * their points, and skipped once the heap is full and the bound exceeds its worst
+	 * candidate.
+	 */
+	protected void search(double[] query, KnnQueryContext context) {
+		if (this.parallelThreshold > 0 && this.numInstances >= this.parallelThreshold && this.maxVisitedNodes == 0
+				&& ForkJoinPool.getCommonPoolParallelism() > 1)
+			this.parallelSearch(query, context);
+		else
+			this.search(query, context, null, 0);
+	}
+
+	/*
+	 * Offers the points of the top levels of the tree, taken breadth first, to the heap
+	 * of the context until there are TASKS_PER_THREAD subtrees per thread below them.
+	 * The subtrees are then searched by tasks, the closest boxes first, and the heaps of
+	 * the tasks are merged into the heap of the context. The tasks start from the k-th
+	 * distance of the points on the path of the query down to a leaf, so they prune as
+	 * early as the sequential search.
+	 *
+	 * A degenerate tree, such as the chain built over identical points, may not split
+	 * into that many subtrees before the queue is full. The query is then answered by
+	 * the sequential search.
+	 */
+	private void parallelSearch(double[] query, KnnQueryContext context) {
+		if (this.root == NIL)
+			return;
+
+		BoundedMaxHeap heap = context.heap;
+		int wanted = TASKS_PER_THREAD * ForkJoinPool.getCommonPoolParallelism();
+		int[] queue = new int[2 * wanted + 2];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = this.root;
+
+		while (tail - head < wanted && head < tail && tail + 2 <= queue.length) {
+			int node = queue[head++];
+			if (this.active[node])
+				heap.offer(this.distance(query, node), node);
+			if (this.left[node] != NIL)
+				queue[tail++] = this.left[node];
+			if (this.right[node] != NIL)
+				queue[tail++] = this.right[node];
+		}
+
+		if (tail - head < wanted) {
+			heap.reset(heap.capacity());
+			this.search(query, context, null, 0);
+			return;
+		}
+
+		BoundedMaxHeap path = new BoundedMaxHeap(heap.capacity());
+		for (int node = this.root; node != NIL;) {
+			if (this.active[node])
+				path.offer(this.distance(query, node), node);
+			int dim = this.splitDims[node];
+			node = query[dim] >= this.coords[node * this.nDims + dim] ? this.right[node] : this.left[node];
+		}
+
+		double pruneFactor = 1 + this.epsilon;
+		double bound = Math.min(heap.worstDistance(), path.worstDistance());
+		AtomicLong sharedBound = new AtomicLong(Double.doubleToLongBits(bound));
+		long[] order = new long[tail - head];
+		double[] boxBounds = new double[tail - head];
+		for (int i = head; i < tail; i++) {
+			boxBounds[i - head] = this.boxDistance(query, queue[i], Double.POSITIVE_INFINITY);
+			// Bounds are not negative, so their bits sort like them
+			order[i - head] = ((long) Float.floatToIntBits((float) boxBounds[i - head]) << 32) | (i - head);
+		}
+		Arrays.sort(order);
+
+		List<SubtreeSearch> tasks = new ArrayList<SubtreeSearch>(order.length);
+		for (long entry : order) {
+			int i = (int) entry;
+			tasks.add(new SubtreeSearch(query, queue[head + i], boxBounds[i], heap.capacity(), pruneFactor, sharedBound));
+		}
+		ForkJoinTask.invokeAll(tasks);
+
+		for (SubtreeSearch task : tasks) {
+			int found = task.heap.drainAscending(task.distances, task.slots);
+			for (int i = 0; i < found && task.distances[i] < heap.worstDistance(); i++) {
+				heap.offer(task.distances[i], task.slots[i]);
+			}
+		}
+	}
+
+	/*
+	 * Search of a subtree for parallelSearch, with the same pruning as the sequential
+	 * search. A subtree or a point is skipped when it is farther than the k-th distance
+	 * of its own heap or than sharedBound, the smallest k-th distance of a full heap
+	 * among the tasks and the top of the tree, which no k-th distance of the query can
+	 * exceed.
+	 */
+	private final class SubtreeSearch extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] query;
+		private final int subtree;
+		private final double subtreeBound;
+		private final double pruneFactor;
+		private final AtomicLong sharedBound;
+
+		private final BoundedMaxHeap heap;
+		private final double[] distances;
+		private final int[] slots;
+
+		SubtreeSearch(double[] query, int subtree, double subtreeBound, int k, double pruneFactor,
+				AtomicLong sharedBound) {
+			this.query = query;
+			this.subtree = subtree;
+			this.subtreeBound = subtreeBound;
+			this.pruneFactor = pruneFactor;
+			this.sharedBound = sharedBound;
+			this.heap = new BoundedMaxHeap(k);
+			this.distances = new double[k];
+			this.slots = new int[k];
+		}
+
+		private double worstDistance() {
+			return Math.min(this.heap.worstDistance(), Double.longBitsToDouble(this.sharedBound.get()));
+		}
+
+		private void offer(double distance, int slot) {
+			if (!this.heap.offer(distance, slot) || !this.heap.isFull())
+				return;
+			long worst = Double.doubleToLongBits(this.heap.worstDistance());
+			long shared = this.sharedBound.get();
+			while (worst < shared && !this.sharedBound.compareAndSet(shared, worst))
+				shared = this.sharedBound.get();
+		}
+
+		@Override
+		protected void compute() {
+			int[] stack = new int[64];
+			double[] bounds = new double[64];
+			int top = 0;
+
+			stack[top] = this.subtree;
+			bounds[top++] = this.subtreeBound;
+
+			while (top > 0) {
+				int node = stack[--top];
+				if (bounds[top] * this.pruneFactor > this.worstDistance())
+					continue;
+
+				if (FlatKDTree.this.active[node]) {
+					// A point at the shared bound may be the one that set it, on the path of the query
+					double shared = Double.longBitsToDouble(this.sharedBound.get());
+					double distance = FlatKDTree.this.distance(this.query, node, this.worstDistance());
+					if (distance < this.heap.worstDistance() && distance <= shared)
+						this.offer(distance, node);
+				}
+
+				int dim = FlatKDTree.this.splitDims[node];
+				double splitValue = FlatKDTree.this.coords[node * FlatKDTree.this.nDims + dim];
+				int best;
+				int other;
+				if (this.query[dim] >= splitValue) {
+					best = FlatKDTree.this.right[node];
+					other = FlatKDTree.this.left[node];
+				} else {
+					best = FlatKDTree.this.left[node];
+					other = FlatKDTree.this.right[node];
+				}
+
+				if (top + 2 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+					bounds = Arrays.copyOf(bounds, bounds.length * 2);
+				}
+
+				double cutoff = this.worstDistance() / this.pruneFactor;
+				if (other != NIL) {
+					double otherBound = FlatKDTree.this.boxDistance(this.query, other, cutoff);
+					if (otherBound <= cutoff) {
+						stack[top] = other;
+						bounds[top++] = otherBound;
+					}
+				}
+				if (best != NIL) {
+					double bestBound = FlatKDTree.this.boxDistance(this.query, best, cutoff);
+					if (bestBound <= cutoff) {
+						stack[top] = best;
+						bounds[top++] = bestBound;
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Same search, for a heap already holding the first numSeeds slots of seeds, which
+	 * are not offered a second time.
+	 */
+	private void search(double[] query, KnnQueryContext context, int[] seeds, int numSeeds) {
+		BoundedMaxHeap heap = context.heap;
+		int[] stack = context.stack;
+		double[] bounds = context.bounds;
+		int top = 0;
+
+		if (this.root == NIL)
+			return;
+
+		double pruneFactor = 1 + this.epsilon;
+		int budget = this.maxVisitedNodes > 0 ? this.maxVisitedNodes : Integer.MAX_VALUE;
+		long visited = 0;
+		long computed = 0;
+
+		stack[top] = this.root;
+		bounds[top++] = 0;
+
+		while (top > 0) {
+			int node = stack[--top];
+			double bound = bounds[top];
+
+			if (bound * pruneFactor > heap.worstDistance())
+				continue;
+			if (budget-- == 0)
+				break;
+			visited++;
+
+			if (this.active[node]) {
+				// Once the heap is full, points farther than its worst candidate are abandoned early
+				double distance = this.distance(query, node, heap.worstDistance());
+				computed++;
+				if (distance < heap.worstDistance() && (numSeeds == 0 || !contains(seeds, numSeeds, node)))
+					heap.offer(distance, node);
+			}
+
+			int dim = this.splitDims[node];
+			double splitValue = this.coords[node * this.nDims + dim];
+			int best;
+			int other;
+			if (query[dim] >= splitValue) {
+				best = this.right[node];
+				other = this.left[node];
+			} else {
+				best = this.left[node];
+				other = this.right[node];
+			}
+
+			if (top + 2 > stack.length) {
+				context.ensureStack(top + 2);
+				stack = context.stack;
+				bounds = context.bounds;
+			}
+
+			double cutoff = heap.worstDistance() / pruneFactor;
+
+			// The far branch is pushed first so the near one is explored before it
+			if (other != NIL) {
+				double otherBound = this.boxDistance(query, other, cutoff);
+				if (otherBound <= cutoff) {
+					stack[top] = other;
+					bounds[top++] = otherBound;
+				}
+			}
+			if (best != NIL) {
+				double bestBound = this.boxDistance(query, best, cutoff);
+				if (bestBound <= cutoff) {
+					stack[top] = best;
+					bounds[top++] = bestBound;
+				}
+			}
+		}
+
+		this.totalNodesVisited += visited;
+		this.totalDistancesComputed += computed;
+	}
+
+	private static boolean contains(int[] values, int length, int value) {
+		for (int i = 0; i < length; i++) {
+			if (values[i] == value)
+				return true;
+		}
+		return false;
+	}
+
+	protected double distance(double[] query, int slot) {
+		return this.kernel.distance(query, 0, this.coords, slot * this.nDims, this.nDims);
+	}
+
+	private double distance(double[] query, int slot, double cutoff) {
+		return this.kernel.distance(query, 0, this.coords, slot * this.nDims, this.nDims, cutoff);
+	}
+
+	private double boxDistance(double[] query, int slot, double cutoff) {
+		return this.kernel.boxDistance(query, this.lower, this.upper, slot * this.nDims, this.nDims, cutoff);
+	}
+
+	@Override
+	public double[] getDistances() throws Exception {
+		KnnQueryContext context = KnnQueryContext.get();
+		return Arrays.copyOf(context.distances, context.size);
+	}
+
+	@Override
+	public void update(Instance ins) throws Exception {
+		this.addInstance(ins);
+	}
+
+	/*
+	 * Inserts ins and returns its slot, which can be given to removeHandle.
+	 */
+	@Override
+	public int addInstance(Instance ins) throws Exception {
+		if (this.nDims == 0)
+			this.nDims = ins.numAttributes() - 1;
+		return this.insert(ins);
+	}
+
+	@Override
+	public void setInstances(Instances instances) throws Exception {
+		super.setInstances(instances);
+		List<Instance> window = new ArrayList<Instance>(instances.size());
+		for (int i = 0; i < instances.size(); i++) {
+			window.add(instances.get(i));
+		}
+		this.buildKDTree(window);
+	}
+
+	/*
+	 * Builds the tree over references to the window instances, without copying them.
+	 */
+	@Override
+	public void setInstances(List<Instance> window) throws Exception {
+		this.buildKDTree(window);
+	}
+
+	/*
+	 * Bulk loads the tree: slot i holds instances.get(i) and the links are written by
+	 * KDTreeBulkLoader, without walking down from the root for every point.
+	 */
+	public void buildKDTree(List<Instance> instances) throws Exception {
+
+		if (!(instances instanceof RandomAccess))
+			instances = new ArrayList<Instance>(instances);
+
+		int size = instances.size();
+		this.nDims = instances.get(0).numAttributes() - 1;
+		this.clear(size);
+
+		int[] indexes = new int[size];
+		for (int i = 0; i < size; i++) {
+			Instance inst = instances.get(i);
+			loadFeatures(inst, this.coords, i * this.nDims);
+			this.slotInstances[i] = inst;
+			this.labels[i] = inst.classValue();
+			this.active[i] = true;
+			this.slotsByInstance.put(inst, i);
+			indexes[i] = i;
+		}
+		this.numSlots = size;
+		this.numInstances = size;
+
+		this.root = KDTreeBulkLoader.build(this.coords, this.nDims, indexes, 0, size, 0,
+				this.left, this.right, this.splitDims, this.parents, this.sizes);
+		System.arraycopy(this.sizes, 0, this.live, 0, size);
+		KDTreeBulkLoader.computeBoxes(this.coords, this.nDims, this.root, this.left, this.right, this.lower, this.upper);
+	}
+
+	protected int insert(Instance inst) {
+		double[] values = new double[this.nDims];
+		loadFeatures(inst, values, 0);
+		return this.insert(inst, values, 0);
+	}
+
+	/*
+	 * Stores the point in a free slot and links it below the leaf reached by walking
+	 * down from the root. The new node splits on the dimension following the one of its
+	 * parent, and the boxes of its ancestors are extended to hold it. If it ends up
+	 * deeper than log(size)/log(1/ALPHA), the first unbalanced ancestor is rebuilt.
+	 */
+	private int insert(Instance inst, double[] values, int offset) {
+		int slot = this.allocateSlot();
+		System.arraycopy(values, offset, this.coords, slot * this.nDims, this.nDims);
+		System.arraycopy(values, offset, this.lower, slot * this.nDims, this.nDims);
+		System.arraycopy(values, offset, this.upper, slot * this.nDims, this.nDims);
+		this.slotInstances[slot] = inst;
+		this.slotsByInstance.put(inst, slot);
+		this.labels[slot] = inst.classValue();
+		this.left[slot] = NIL;
+		this.right[slot] = NIL;
+		this.sizes[slot] = 1;
+		this.live[slot] = 1;
+		this.active[slot] = true;
+		this.numInstances++;
+		this.earnCredit();
+
+		if (this.root == NIL) {
+			this.root = slot;
+			this.parents[slot] = NIL;
+			this.splitDims[slot] = 0;
+		} else {
+			int p = this.root;
+			int depth = 1;
+			while (true) {
+				this.sizes[p]++;
+				this.live[p]++;
+				this.extendBox(p, values, offset);
+				int dim = this.splitDims[p];
+				if (values[offset + dim] < this.coords[p * this.nDims + dim]) {
+					if (this.left[p] == NIL) {
+						this.left[p] = slot;
+						break;
+					}
+					p = this.left[p];
+				} else {
+					if (this.right[p] == NIL) {
+						this.right[p] = slot;
+						break;
+					}
+					p = this.right[p];
+				}
+				depth++;
+			}
+			this.parents[slot] = p;
+			this.splitDims[slot] = (this.splitDims[p] + 1) % this.nDims;
+
+			if (depth > Math.log(this.sizes[this.root]) / LOG_INV_ALPHA)
+				this.rebuildIfAffordable(this.findScapegoat(slot));
+		}
+
+		return slot;
+	}
+
+	private void extendBox(int slot, double[] values, int offset) {
+		int boxOffset = slot * this.nDims;
+		for (int d = 0; d < this.nDims; d++) {
+			double value = values[offset + d];
+			if (value < this.lower[boxOffset + d])
+				this.lower[boxOffset + d] = value;
+			if (value > this.upper[boxOffset + d])
+				this.upper[boxOffset + d] = value;
+		}
+	}
+
+	/*
+	 * Returns the first ancestor of slot having a child with more than ALPHA of its
+	 * nodes, or NIL.
+	 */
+	private int findScapegoat(int slot) {
+		int child = slot;
+		int p = this.parents[slot];
+		while (p != NIL) {
+			if (this.sizes[child] > ALPHA * this.sizes[p])
+				return p;
+			child = p;
+			p = this.parents[p];
+		}
+		return NIL;
+	}
+
+	private void earnCredit() {
+		this.rebuildCredit = Math.min(this.rebuildCredit + REBUILD_CREDIT,
+				this.root == NIL ? 0 : this.sizes[this.root]);
+	}
+
+	private void rebuildIfAffordable(int node) {
+		if (node == NIL || this.sizes[node] > this.rebuildCredit)
+			return;
+		this.rebuildCredit -= this.sizes[node];
+		this.rebuildSubtree(node);
+	}
+
+	/*
+	 * Bulk loads the active points of the subtree of node in place, releasing the slots
+	 * of its tombstones. The other slots keep their points, so slots handed out by
+	 * earlier queries stay valid.
+	 */
+	private void rebuildSubtree(int node) {
+		int parent = this.parents[node];
+		int oldSize = this.sizes[node];
+
+		int[] members = new int[oldSize];
+		int count = 0;
+		members[count++] = node;
+		for (int i = 0; i < count; i++) {
+			int m = members[i];
+			if (this.left[m] != NIL)
+				members[count++] = this.left[m];
+			if (this.right[m] != NIL)
+				members[count++] = this.right[m];
+		}
+
+		int numLive = 0;
+		for (int i = 0; i < count; i++) {
+			int m = members[i];
+			if (this.active[m])
+				members[numLive++] = m;
+			else
+				this.releaseSlot(m);
+		}
+
+		int subtree = KDTreeBulkLoader.build(this.coords, this.nDims, members, 0, numLive, this.splitDims[node],
+				this.left, this.right, this.splitDims, this.parents, this.sizes);
+		for (int i = 0; i < numLive; i++) {
+			this.live[members[i]] = this.sizes[members[i]];
+		}
+		KDTreeBulkLoader.computeBoxes(this.coords, this.nDims, subtree, this.left, this.right, this.lower, this.upper);
+
+		this.replaceChild(parent, node, subtree);
+		for (int p = parent; p != NIL; p = this.parents[p]) {
+			this.sizes[p] -= oldSize - numLive;
+		}
+
+		this.numPartialRebuilds++;
+	}
+
+	private void replaceChild(int parent, int child, int replacement) {
+		if (replacement != NIL)
+			this.parents[replacement] = parent;
+		if (parent == NIL)
+			this.root = replacement;
+		else if (this.left[parent] == child)
+			this.left[parent] = replacement;
+		else
+			this.right[parent] = replacement;
+	}
+
+	private int allocateSlot() {
+		if (this.numFreeSlots > 0)
+			return this.freeSlots[--this.numFreeSlots];
+		if (this.numSlots == this.slotInstances.length)
+			this.grow(Math.max(16, this.numSlots * 2));
+		return this.numSlots++;
+	}
+
+	private void releaseSlot(int slot) {
+		this.slotInstances[slot] = null;
+		this.freeSlots[this.numFreeSlots++] = slot;
+		this.numNodesDeactivated--;
+	}
+
+	private void grow(int capacity) {
+		this.coords = Arrays.copyOf(this.coords, capacity * this.nDims);
+		this.lower = Arrays.copyOf(this.lower, capacity * this.nDims);
+		this.upper = Arrays.copyOf(this.upper, capacity * this.nDims);
+		this.left = Arrays.copyOf(this.left, capacity);
+		this.right = Arrays.copyOf(this.right, capacity);
+		this.splitDims = Arrays.copyOf(this.splitDims, capacity);
+		this.parents = Arrays.copyOf(this.parents, capacity);
+		this.sizes = Arrays.copyOf(this.sizes, capacity);
+		this.live = Arrays.copyOf(this.live, capacity);
+		this.freeSlots = Arrays.copyOf(this.freeSlots, capacity);
+		this.active = Arrays.copyOf(this.active, capacity);
+		this.labels = Arrays.copyOf(this.labels, capacity);
+		this.slotInstances = Arrays.copyOf(this.slotInstances, capacity);
+	}
+
+	private void clear(int capacity) {
+		this.numInstances = 0;
+		this.numSlots = 0;
+		this.numNodesDeactivated = 0;
+		this.numFreeSlots = 0;
+		this.rebuildCredit = 0;
+		this.root = NIL;
+		this.coords = new double[0];
+		this.lower = new double[0];
+		this.upper = new double[0];
+		this.left = new int[0];
+		this.right = new int[0];
+		this.splitDims = new int[0];
+		this.parents = new int[0];
+		this.sizes = new int[0];
+		this.live = new int[0];
+		this.freeSlots = new int[0];
+		this.active = new boolean[0];
+		this.labels = new double[0];
+		this.slotInstances = new Instance[0];
+		this.slotsByInstance.clear();
+		this.grow(Math.max(16, capacity));
+	}
+
+	/*
+	 * Removes inst itself when it was given to the tree, so a duplicate is never removed
+	 * in its place. Other instances fall back to a search by value.
+	 */
+	@Override
+	public void removeInstance(Instance inst) throws Exception {
+
+		Integer mapped = this.slotsByInstance.get(inst);
+		int slot = mapped != null ? mapped : this.search(inst);
+
+		if (slot == NIL)
+			throw new InstanceNotFoundException("Instance not found on KDTree. Is there any missing data on the dataset?");
+
+		this.removeSlot(slot);
+	}
+
+	@Override
+	public void removeHandle(int handle, Instance inst) throws Exception {
+
+		if (handle < 0 || handle >= this.numSlots || !this.active[handle] || this.slotInstances[handle] != inst) {
+			this.removeInstance(inst);
+			return;
+		}
+
+		this.removeSlot(handle);
+	}
+
+	/*
+	 * Tombstones the node, unlinks it if it is a leaf and rebuilds the highest ancestor
+	 * left with more than TOMBSTONE_RATIO of tombstones.
+	 */
+	private void removeSlot(int slot) {
+
+		this.slotsByInstance.remove(this.slotInstances[slot]);
+		this.active[slot] = false;
+		this.numNodesDeactivated++;
+		this.numInstances--;
+		this.earnCredit();
+		for (int p = slot; p != NIL; p = this.parents[p]) {
+			this.live[p]--;
+		}
+
+		int node = this.unlinkDeadLeaves(slot);
+
+		int candidate = NIL;
+		for (int p = node; p != NIL; p = this.parents[p]) {
+			if (this.sizes[p] >= MIN_REBUILD_SIZE && this.sizes[p] - this.live[p] > TOMBSTONE_RATIO * this.sizes[p])
+				candidate = p;
+		}
+		this.rebuildIfAffordable(candidate);
+	}
+
+	/*
+	 * Unlinks node and then its ancestors while they are tombstoned leaves. Returns the
+	 * first ancestor kept, or NIL.
+	 */
+	private int unlinkDeadLeaves(int node) {
+		int removed = 0;
+		while (node != NIL && !this.active[node] && this.left[node] == NIL && this.right[node] == NIL) {
+			int parent = this.parents[node];
+			this.replaceChild(parent, node, NIL);
+			this.releaseSlot(node);
+			removed++;
+			node = parent;
+		}
+		for (int p = node; p != NIL; p = this.parents[p]) {
+			this.sizes[p] -= removed;
+		}
+		return node;
+	}
+
+	/*
+	 * Follows the insertion path of inst and returns the first active slot holding the
+	 * same feature values and class, or NIL.
+	 */
+	protected int search(Instance inst) {
+		double[] values = new double[this.nDims];
+		loadFeatures(inst, values, 0);
+		double classValue = inst.classValue();
+
+		int p = this.root;
+		while (p != NIL) {
+			if (this.active[p] && this.labels[p] == classValue && this.isSlotEqual(p, values))
+				return p;
+			int dim = this.splitDims[p];
+			if (values[dim] < this.coords[p * this.nDims + dim])
+				p = this.left[p];
+			else
+				p = this.right[p];
+		}
+		return NIL;
+	}
+
+	private boolean isSlotEqual(int slot, double[] values) {
+		int offset = slot * this.nDims;
+		for (int i = 0; i < this.nDims; i++) {
+			if (this.coords[offset + i] != values[i])
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Balance and tombstones are handled by the partial rebuilds, so the tree never asks
+	 * to be rebuilt as a whole.
+	 */
+	@Override
+	public boolean isToRebuild() {
+		return false;
+	}
+
+	/*
+	 * Copies the attribute values of inst into dst, skipping the class attribute.
+	 */
+	protected static void loadFeatures(Instance inst, double[] dst, int offset) {
+		if (inst instanceof FeatureInstance || FeatureRecord.isSparse(inst)) {
+			FeatureRecord.of(inst).copyFeatures(dst, offset);
+			return;
+		}
+		int classIndex = inst.classIndex();
+		int numAttributes = inst.numAttributes();
+		for (int i = 0; i < numAttributes; i++) {
+			if (i != classIndex)
+				dst[offset++] = inst.value(i);
+		}
+	}
+
+}
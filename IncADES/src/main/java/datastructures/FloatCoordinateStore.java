@@ -0,0 +1,71 @@
+/*
+*    FloatCoordinateStore.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.util.Arrays;
+
+/*
+ * Coordinates rounded to 32-bit floats, half the memory of doubles.
+ */
+public class FloatCoordinateStore extends CoordinateStore {
+
+	private static final long serialVersionUID = 1L;
+
+	private float[] values = new float[0];
+
+	public FloatCoordinateStore(int nDims) {
+		super(nDims);
+	}
+
+	@Override
+	public void grow(int capacity) {
+		this.values = Arrays.copyOf(this.values, capacity * this.nDims);
+	}
+
+	@Override
+	public void set(int row, double[] values, int offset) {
+		int base = row * this.nDims;
+		for (int i = 0; i < this.nDims; i++) {
+			this.values[base + i] = (float) values[offset + i];
+		}
+	}
+
+	@Override
+	public void decode(int row, double[] out, int outOffset) {
+		int base = row * this.nDims;
+		for (int i = 0; i < this.nDims; i++) {
+			out[outOffset + i] = this.values[base + i];
+		}
+	}
+
+	@Override
+	public void decode(int fromRow, int toRow, double[] out, int outOffset) {
+		int from = fromRow * this.nDims;
+		int length = (toRow - fromRow) * this.nDims;
+		for (int i = 0; i < length; i++) {
+			out[outOffset + i] = this.values[from + i];
+		}
+	}
+
+	@Override
+	public void copy(int fromRow, int toRow) {
+		System.arraycopy(this.values, fromRow * this.nDims, this.values, toRow * this.nDims, this.nDims);
+	}
+}
@@ -0,0 +1,828 @@
+/*
+*    HNSWGraph.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import javax.management.InstanceNotFoundException;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import incades.neighborsearch.CanberraKernel;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.NeighborSet;
+import incades.neighborsearch.StreamNeighborSearch;
+import moa.classifiers.lazy.neighboursearch.NearestNeighbourSearch;
+
+/*
+ * Hierarchical navigable small world graph (Malkov and Yashunin), an approximate index
+ * for large windows with many attributes, where the trees end up visiting most of
+ * their points.
+ *
+ * Every point is linked to its closest points, chosen to lie in different directions,
+ * on level 0 and on the levels up to its own, drawn at random with probability
+ * decreasing exponentially. A query walks greedily down the upper levels from the
+ * entry point, then runs best-first searches keeping the efSearch closest points found
+ * on level 1, and on level 0 from the closest point of level 1. The beam on level 1
+ * finds the right region of clustered data even after the few links between clusters
+ * on level 0 expired with their points, where a greedy walk may stop in the wrong one.
+ * A new point is linked by the same search with efConstruction, up to m links per
+ * level and 2m on level 0.
+ *
+ * Points are stored in slots as in FlatKDTree, and the slot is the handle of the point.
+ * A removed point becomes a tombstone: it still routes the searches but is never
+ * returned. Once tombstones are COMPACTION_RATIO of the graph, a compaction pass
+ * condemns them and repairs COMPACTION_STEP slots on each update, dropping their links
+ * to condemned points and relinking the slots that lost too many through the
+ * neighbours of the condemned ones. The condemned slots are freed at the end of the
+ * pass, so the cost of the deletions is spread over the updates.
+ *
+ * The coordinates can be kept as floats or quantized codes (see CoordinateStore). The
+ * graph is then built and searched on the decoded values, and a query keeps
+ * CoordinateStore.rerankSize(k) points that are ranked again with the exact values.
+ */
+public class HNSWGraph extends NearestNeighbourSearch implements StreamNeighborSearch {
+
+	private static final long serialVersionUID = 1L;
+
+	protected static final int NIL = -1;
+
+	public static final int DEFAULT_M = 16;
+	public static final int DEFAULT_EF_CONSTRUCTION = 100;
+	public static final int DEFAULT_EF_SEARCH = 64;
+
+	private static final double COMPACTION_RATIO = 0.2;
+
+	/*
+	 * A candidate is skipped by selectNeighbours when PRUNE_ALPHA times its distance to
+	 * a picked one is below its distance to the base point. Above 1 it keeps a few more
+	 * links than the original heuristic, which holds the recall up as expired points
+	 * are compacted away (the alpha of Vamana / FreshDiskANN).
+	 */
+	private static final double PRUNE_ALPHA = 1.1;
+
+	/* Slots repaired on each update while a compaction pass runs */
+	private static final int COMPACTION_STEP = 64;
+
+	private final DistanceKernel kernel;
+	private final CoordinateFormat format;
+	private final int m;
+	private final int maxLinks0;
+	private final int efConstruction;
+	private int efSearch;
+	private final double levelFactor;
+	private final Random random = new Random(1);
+
+	private int nDims = 0;
+	private int numInstances = 0;
+	private int numTombstones = 0;
+	private int numSlots = 0;
+	private int numCompactions = 0;
+
+	private CoordinateStore coords;
+	private double[] labels = new double[0];
+	private boolean[] active = new boolean[0];
+	private int[] levels = new int[0];
+	private int[] freeSlots = new int[0];
+	private int numFreeSlots = 0;
+	private Instance[] slotInstances = new Instance[0];
+	private IdentityHashMap<Instance, Integer> slotsByInstance = new IdentityHashMap<Instance, Integer>();
+
+	/*
+	 * Links of level 0, maxLinks0 + 1 entries per slot: the number of links, then the
+	 * linked slots. The upper levels of a slot follow the same layout with m + 1
+	 * entries per level, in an array of their own.
+	 */
+	private int[] links0 = new int[0];
+	private int[][] upperLinks = new int[0][];
+
+	private int entryPoint = NIL;
+	private int maxLevel = NIL;
+
+	private boolean[] condemned = new boolean[0];
+	private int[] condemnedSlots = new int[0];
+	private int numCondemned = 0;
+	private int compactionCursor = NIL;
+	private int compactionEnd = 0;
+
+	private double[] candidateDistances = new double[0];
+	private int[] candidateSlots = new int[0];
+	private double[] selectedDistances = new double[0];
+	private int[] selectedSlots = new int[0];
+	private double[] prunedDistances = new double[0];
+	private int[] prunedSlots = new int[0];
+
+	/* Decoded coordinates of the points being linked, and of the candidates compared */
+	private double[] rowValues = new double[0];
+	private double[] linkValues = new double[0];
+	private double[] candidateValues = new double[0];
+	private double[] decoded = new double[0];
+
+	private transient IntFunction<Instance> resolver;
+
+	public HNSWGraph() {
+		this(DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH, new CanberraKernel());
+	}
+
+	public HNSWGraph(DistanceKernel kernel) {
+		this(DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH, kernel);
+	}
+
+	public HNSWGraph(int m, int efConstruction, int efSearch, DistanceKernel kernel) {
+		this(m, efConstruction, efSearch, kernel, CoordinateFormat.DOUBLE);
+	}
+
+	public HNSWGraph(int m, int efConstruction, int efSearch, DistanceKernel kernel, CoordinateFormat format) {
+		super();
+		if (m < 2 || efConstruction < 1 || efSearch < 1)
+			throw new IllegalArgumentException("m must be at least 2, efConstruction and efSearch at least 1.");
+		this.kernel = kernel;
+		this.format = format;
+		this.m = m;
+		this.maxLinks0 = 2 * m;
+		this.efConstruction = Math.max(efConstruction, m);
+		this.efSearch = efSearch;
+		this.levelFactor = 1 / Math.log(m);
+	}
+
+	@Override
+	public Instance nearestNeighbour(Instance target) throws Exception {
+		Instances neighbours = this.kNearestNeighbours(target, 1);
+		return neighbours.get(0);
+	}
+
+	public int getNumInstances() {
+		return this.numInstances;
+	}
+
+	public int getNumCompactions() {
+		return this.numCompactions;
+	}
+
+	public int getEfSearch() {
+		return this.efSearch;
+	}
+
+	/*
+	 * Number of closest points kept by the search on level 0, traded between recall and
+	 * query time. A query keeps at least k of them.
+	 */
+	public void setEfSearch(int efSearch) {
+		if (efSearch < 1)
+			throw new IllegalArgumentException("efSearch must be at least 1.");
+		this.efSearch = efSearch;
+	}
+
+	/*
+	 * The returned Instances belongs to the query context of the calling thread and is
+	 * overwritten by the next query made on that thread.
+	 */
+	@Override
+	public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+
+		ReusableInstances neighbours = context.neighbours(target, k);
+		for (int i = 0; i < context.size; i++) {
+			neighbours.addNeighbour(this.slotInstances[context.slots[i]]);
+		}
+
+		return neighbours;
+	}
+
+	@Override
+	public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+
+		NeighborSet neighbours = context.neighborSet;
+		neighbours.clear(target.numClasses(), this.getResolver());
+		for (int i = 0; i < context.size; i++) {
+			int slot = context.slots[i];
+			neighbours.add(slot, context.distances[i], this.labels[slot]);
+		}
+
+		return neighbours;
+	}
+
+	private IntFunction<Instance> getResolver() {
+		if (this.resolver == null)
+			this.resolver = slot -> this.slotInstances[slot];
+		return this.resolver;
+	}
+
+	private KnnQueryContext search(Instance target, int k) throws Exception {
+
+		if (this.nDims == 0) {
+			throw new Exception("The HNSW graph was not initialized. Please use the method setInstances(Instances)");
+		}
+
+		boolean exact = this.coords.isExact();
+		KnnQueryContext context = KnnQueryContext.get();
+		double[] query = context.begin(exact ? k : CoordinateStore.rerankSize(k), this.nDims);
+		FlatKDTree.loadFeatures(target, query, 0);
+
+		if (this.entryPoint != NIL && k > 0) {
+			int ef = Math.max(this.efSearch, k);
+			int entry = this.entryPoint;
+			if (this.maxLevel > 0) {
+				entry = this.descend(query, 0, entry, this.maxLevel, 1, context);
+				this.searchLevel(query, 0, entry, 1, ef, context, null);
+				entry = context.beam.closestSlot();
+			}
+			this.searchLevel(query, 0, entry, 0, ef, context, context.heap);
+		}
+
+		context.finish();
+		if (!exact)
+			context.rerank(k, this.nDims, this.kernel, this.getResolver());
+		return context;
+	}
+
+	/*
+	 * Greedy walk from entry on the levels fromLevel down to toLevel + 1, moving to the
+	 * closest linked point while it gets closer to x. Returns the point reached.
+	 */
+	private int descend(double[] x, int xOffset, int entry, int fromLevel, int toLevel, KnnQueryContext context) {
+		double[] scratch = context.decodeBuffer(this.nDims);
+		int current = entry;
+		double best = this.coords.distance(this.kernel, x, xOffset, current, scratch);
+
+		for (int level = fromLevel; level > toLevel; level--) {
+			boolean moved = true;
+			while (moved) {
+				moved = false;
+				int[] links = this.linksOf(current, level);
+				int base = this.linkBase(current, level);
+				for (int i = 1; i <= links[base]; i++) {
+					int next = links[base + i];
+					double distance = this.coords.distance(this.kernel, x, xOffset, next, best, scratch);
+					if (distance < best) {
+						best = distance;
+						current = next;
+						moved = true;
+					}
+				}
+			}
+		}
+
+		return current;
+	}
+
+	/*
+	 * Best-first search of level from entry. The ef closest points found are kept in
+	 * context.beam, tombstones included since they still connect the graph, and the
+	 * search stops when the closest point left to expand is farther than all of them.
+	 * When results is given, the live points found are offered to it as well.
+	 */
+	private void searchLevel(double[] x, int xOffset, int entry, int level, int ef, KnnQueryContext context,
+			BoundedMaxHeap results) {
+		BoundedMaxHeap beam = context.beam;
+		CandidateQueue frontier = context.frontier;
+		int mark = context.beginMarks(this.numSlots);
+		int[] marks = context.marks;
+		double[] scratch = context.decodeBuffer(this.nDims);
+
+		beam.reset(ef);
+		frontier.clear();
+
+		double distance = this.coords.distance(this.kernel, x, xOffset, entry, scratch);
+		marks[entry] = mark;
+		beam.offer(distance, entry);
+		frontier.add(distance, entry);
+		if (results != null && this.active[entry])
+			results.offer(distance, entry);
+
+		while (!frontier.isEmpty() && frontier.peekDistance() <= beam.worstDistance()) {
+			int node = frontier.poll();
+			int[] links = this.linksOf(node, level);
+			int base = this.linkBase(node, level);
+
+			for (int i = 1; i <= links[base]; i++) {
+				int next = links[base + i];
+				if (marks[next] == mark)
+					continue;
+				marks[next] = mark;
+
+				double worst = beam.worstDistance();
+				double cutoff = results == null ? worst : Math.max(worst, results.worstDistance());
+				distance = this.coords.distance(this.kernel, x, xOffset, next, cutoff, scratch);
+				if (distance < worst) {
+					beam.offer(distance, next);
+					frontier.add(distance, next);
+				}
+				if (results != null && this.active[next])
+					results.offer(distance, next);
+			}
+		}
+	}
+
+	/*
+	 * Writes the decoded coordinates of slot to values, for the updates of the graph.
+	 */
+	private double[] decode(int slot, double[] values) {
+		this.coords.decode(slot, values, 0);
+		return values;
+	}
+
+	private int[] linksOf(int slot, int level) {
+		return level == 0 ? this.links0 : this.upperLinks[slot];
+	}
+
+	private int linkBase(int slot, int level) {
+		return level == 0 ? slot * (this.maxLinks0 + 1) : (level - 1) * (this.m + 1);
+	}
+
+	private int maxLinks(int level) {
+		return level == 0 ? this.maxLinks0 : this.m;
+	}
+
+	@Override
+	public double[] getDistances() throws Exception {
+		KnnQueryContext context = KnnQueryContext.get();
+		return Arrays.copyOf(context.distances, context.size);
+	}
+
+	@Override
+	public void update(Instance ins) throws Exception {
+		this.addInstance(ins);
+	}
+
+	/*
+	 * Inserts ins and returns its slot, which can be given to removeHandle.
+	 */
+	@Override
+	public int addInstance(Instance ins) throws Exception {
+		if (this.nDims == 0) {
+			this.nDims = ins.numAttributes() - 1;
+			this.clear(16);
+		}
+
+		int slot = this.allocateSlot(ins);
+		this.insert(slot);
+		this.compact();
+		return slot;
+	}
+
+	private int allocateSlot(Instance ins) {
+		int slot;
+		if (this.numFreeSlots > 0) {
+			slot = this.freeSlots[--this.numFreeSlots];
+		} else {
+			if (this.numSlots == this.slotInstances.length)
+				this.grow(Math.max(16, this.numSlots * 2));
+			slot = this.numSlots++;
+		}
+
+		FlatKDTree.loadFeatures(ins, this.rowValues, 0);
+		this.coords.set(slot, this.rowValues, 0);
+		this.slotInstances[slot] = ins;
+		this.slotsByInstance.put(ins, slot);
+		this.labels[slot] = ins.classValue();
+		this.active[slot] = true;
+		this.numInstances++;
+		return slot;
+	}
+
+	/*
+	 * Links slot into the graph on every level up to its own. On each level, and on
+	 * level 1 in any case, the efConstruction closest points are searched from the
+	 * closest one found on the level above, and the live ones are filtered by
+	 * selectNeighbours.
+	 */
+	private void insert(int slot) {
+		int level = (int) (-Math.log(1 - this.random.nextDouble()) * this.levelFactor);
+		this.levels[slot] = level;
+		this.links0[this.linkBase(slot, 0)] = 0;
+		this.upperLinks[slot] = level > 0 ? new int[level * (this.m + 1)] : null;
+
+		if (this.entryPoint == NIL) {
+			this.entryPoint = slot;
+			this.maxLevel = level;
+			return;
+		}
+
+		KnnQueryContext context = KnnQueryContext.get();
+		double[] values = this.decode(slot, this.rowValues);
+		int top = Math.min(Math.max(level, 1), this.maxLevel);
+		int entry = this.descend(values, 0, this.entryPoint, this.maxLevel, top, context);
+
+		for (int l = top; l >= 0; l--) {
+			this.searchLevel(values, 0, entry, l, this.efConstruction, context, null);
+			if (l > level) {
+				entry = context.beam.closestSlot();
+				continue;
+			}
+			int count = context.beam.drainAscending(this.candidateDistances, this.candidateSlots);
+			entry = this.candidateSlots[0];
+
+			int live = 0;
+			for (int i = 0; i < count; i++) {
+				if (this.active[this.candidateSlots[i]]) {
+					this.candidateSlots[live] = this.candidateSlots[i];
+					this.candidateDistances[live++] = this.candidateDistances[i];
+				}
+			}
+
+			int[] links = this.linksOf(slot, l);
+			int base = this.linkBase(slot, l);
+			int numLinks = this.selectNeighbours(this.candidateSlots, this.candidateDistances, live, this.m,
+					this.selectedSlots, this.selectedDistances);
+			links[base] = numLinks;
+			for (int i = 0; i < numLinks; i++) {
+				links[base + 1 + i] = this.selectedSlots[i];
+				this.link(this.selectedSlots[i], slot, l, this.selectedDistances[i], context.beam);
+			}
+		}
+
+		if (level > this.maxLevel) {
+			this.entryPoint = slot;
+			this.maxLevel = level;
+		}
+	}
+
+	/*
+	 * Picks up to max of the count candidates, sorted by increasing distance to a base
+	 * point, skipping those clearly closer to an already picked candidate than to the base
+	 * point (see PRUNE_ALPHA). This keeps links in every direction around the base point instead of a cluster of
+	 * them. Returns the number of candidates written to selected.
+	 */
+	private int selectNeighbours(int[] candidates, double[] distances, int count, int max, int[] selected,
+			double[] selectedDistances) {
+		int numSelected = 0;
+
+		for (int i = 0; i < count && numSelected < max; i++) {
+			int candidate = candidates[i];
+			double distance = distances[i];
+			double[] values = numSelected > 0 ? this.decode(candidate, this.candidateValues) : null;
+
+			boolean diverse = true;
+			for (int j = 0; j < numSelected && diverse; j++) {
+				double between = this.coords.distance(this.kernel, values, 0, selected[j], distance / PRUNE_ALPHA,
+						this.decoded);
+				diverse = PRUNE_ALPHA * between >= distance;
+			}
+
+			if (diverse) {
+				selected[numSelected] = candidate;
+				selectedDistances[numSelected++] = distance;
+			}
+		}
+
+		return numSelected;
+	}
+
+	/*
+	 * Adds a link from target to slot on level. A full list is pruned with
+	 * selectNeighbours over its links and the new one, sorted with sorter.
+	 */
+	private void link(int target, int slot, int level, double distance, BoundedMaxHeap sorter) {
+		int[] links = this.linksOf(target, level);
+		int base = this.linkBase(target, level);
+		int count = links[base];
+		int max = this.maxLinks(level);
+
+		if (count < max) {
+			links[base + 1 + count] = slot;
+			links[base] = count + 1;
+			return;
+		}
+
+		double[] values = this.decode(target, this.linkValues);
+		sorter.reset(count + 1);
+		sorter.offer(distance, slot);
+		for (int i = 1; i <= count; i++) {
+			int linked = links[base + i];
+			sorter.offer(this.coords.distance(this.kernel, values, 0, linked, this.decoded), linked);
+		}
+
+		sorter.drainAscending(this.candidateDistances, this.candidateSlots);
+		links[base] = this.selectNeighbours(this.candidateSlots, this.candidateDistances, count + 1, max,
+				this.prunedSlots, this.prunedDistances);
+		System.arraycopy(this.prunedSlots, 0, links, base + 1, links[base]);
+	}
+
+	/*
+	 * Starts a compaction pass once tombstones are COMPACTION_RATIO of the graph, and
+	 * advances the running pass by COMPACTION_STEP slots.
+	 */
+	private void compact() {
+		if (this.compactionCursor == NIL) {
+			if (this.numTombstones == 0
+					|| this.numTombstones <= COMPACTION_RATIO * (this.numInstances + this.numTombstones))
+				return;
+			this.startCompaction();
+		}
+
+		int end = Math.min(this.compactionEnd, this.compactionCursor + COMPACTION_STEP);
+		for (int slot = this.compactionCursor; slot < end; slot++) {
+			if (this.levels[slot] != NIL && !this.condemned[slot])
+				this.repair(slot);
+		}
+		this.compactionCursor = end;
+
+		if (end == this.compactionEnd)
+			this.finishCompaction();
+	}
+
+	/*
+	 * Condemns the current tombstones. Points removed during the pass stay tombstones
+	 * until the next one. No new link goes to a condemned point, since only live points
+	 * are linked, so once every slot was repaired the condemned ones are unreachable.
+	 */
+	private void startCompaction() {
+		this.numCondemned = 0;
+		for (int slot = 0; slot < this.numSlots; slot++) {
+			if (this.levels[slot] != NIL && !this.active[slot]) {
+				this.condemned[slot] = true;
+				this.condemnedSlots[this.numCondemned++] = slot;
+			}
+		}
+		this.compactionCursor = 0;
+		this.compactionEnd = this.numSlots;
+	}
+
+	/*
+	 * Drops the links of slot to condemned points. A level left with less than half of
+	 * its links is relinked with selectNeighbours over the links kept and the live links
+	 * of the condemned points it was linked to.
+	 */
+	private void repair(int slot) {
+		KnnQueryContext context = null;
+		double[] values = null;
+
+		for (int level = 0; level <= this.levels[slot]; level++) {
+			int[] links = this.linksOf(slot, level);
+			int base = this.linkBase(slot, level);
+			int count = links[base];
+
+			int kept = 0;
+			for (int i = 1; i <= count; i++) {
+				if (!this.condemned[links[base + i]])
+					kept++;
+			}
+			if (kept == count)
+				continue;
+
+			int max = this.maxLinks(level);
+			if (kept >= max / 2) {
+				kept = 0;
+				for (int i = 1; i <= count; i++) {
+					int linked = links[base + i];
+					if (!this.condemned[linked])
+						links[base + 1 + kept++] = linked;
+				}
+				links[base] = kept;
+				continue;
+			}
+
+			if (context == null)
+				context = KnnQueryContext.get();
+			int mark = context.beginMarks(this.numSlots);
+			int[] marks = context.marks;
+			marks[slot] = mark;
+
+			int numCandidates = 0;
+			for (int i = 1; i <= count; i++) {
+				int linked = links[base + i];
+				if (!this.condemned[linked]) {
+					marks[linked] = mark;
+					numCandidates = this.addCandidate(numCandidates, linked);
+				}
+			}
+			for (int i = 1; i <= count; i++) {
+				int dead = links[base + i];
+				if (!this.condemned[dead])
+					continue;
+				int[] deadLinks = this.linksOf(dead, level);
+				int deadBase = this.linkBase(dead, level);
+				for (int j = 1; j <= deadLinks[deadBase]; j++) {
+					int candidate = deadLinks[deadBase + j];
+					if (marks[candidate] != mark && this.active[candidate]) {
+						marks[candidate] = mark;
+						numCandidates = this.addCandidate(numCandidates, candidate);
+					}
+				}
+			}
+
+			if (values == null)
+				values = this.decode(slot, this.rowValues);
+			BoundedMaxHeap sorter = context.beam;
+			sorter.reset(numCandidates);
+			for (int i = 0; i < numCandidates; i++) {
+				int candidate = this.candidateSlots[i];
+				sorter.offer(this.coords.distance(this.kernel, values, 0, candidate, this.decoded), candidate);
+			}
+			sorter.drainAscending(this.candidateDistances, this.candidateSlots);
+
+			links[base] = this.selectNeighbours(this.candidateSlots, this.candidateDistances, numCandidates, max,
+					this.prunedSlots, this.prunedDistances);
+			System.arraycopy(this.prunedSlots, 0, links, base + 1, links[base]);
+		}
+	}
+
+	private int addCandidate(int numCandidates, int slot) {
+		if (numCandidates == this.candidateSlots.length) {
+			this.candidateSlots = Arrays.copyOf(this.candidateSlots, numCandidates * 2);
+			this.candidateDistances = Arrays.copyOf(this.candidateDistances, numCandidates * 2);
+		}
+		this.candidateSlots[numCandidates] = slot;
+		return numCandidates + 1;
+	}
+
+	/*
+	 * Frees the condemned slots and, if the entry point was one of them, moves it to a
+	 * point of the highest level left.
+	 */
+	private void finishCompaction() {
+		for (int i = 0; i < this.numCondemned; i++) {
+			int slot = this.condemnedSlots[i];
+			this.condemned[slot] = false;
+			this.levels[slot] = NIL;
+			this.upperLinks[slot] = null;
+			this.links0[this.linkBase(slot, 0)] = 0;
+			this.freeSlots[this.numFreeSlots++] = slot;
+		}
+		this.numTombstones -= this.numCondemned;
+		this.numCondemned = 0;
+		this.compactionCursor = NIL;
+		this.numCompactions++;
+
+		if (this.entryPoint != NIL && this.levels[this.entryPoint] == NIL) {
+			this.entryPoint = NIL;
+			this.maxLevel = NIL;
+			for (int slot = 0; slot < this.numSlots; slot++) {
+				if (this.levels[slot] > this.maxLevel) {
+					this.entryPoint = slot;
+					this.maxLevel = this.levels[slot];
+				}
+			}
+		}
+	}
+
+	private void grow(int capacity) {
+		this.coords.grow(capacity);
+		this.labels = Arrays.copyOf(this.labels, capacity);
+		this.active = Arrays.copyOf(this.active, capacity);
+		this.levels = Arrays.copyOf(this.levels, capacity);
+		this.freeSlots = Arrays.copyOf(this.freeSlots, capacity);
+		this.slotInstances = Arrays.copyOf(this.slotInstances, capacity);
+		this.links0 = Arrays.copyOf(this.links0, capacity * (this.maxLinks0 + 1));
+		this.upperLinks = Arrays.copyOf(this.upperLinks, capacity);
+		this.condemned = Arrays.copyOf(this.condemned, capacity);
+		this.condemnedSlots = Arrays.copyOf(this.condemnedSlots, capacity);
+	}
+
+	private void clear(int capacity) {
+		this.numInstances = 0;
+		this.numTombstones = 0;
+		this.numSlots = 0;
+		this.numFreeSlots = 0;
+		this.numCondemned = 0;
+		this.compactionCursor = NIL;
+		this.entryPoint = NIL;
+		this.maxLevel = NIL;
+		this.coords = CoordinateStore.create(this.format, this.nDims);
+		this.labels = new double[0];
+		this.active = new boolean[0];
+		this.levels = new int[0];
+		this.freeSlots = new int[0];
+		this.slotInstances = new Instance[0];
+		this.links0 = new int[0];
+		this.upperLinks = new int[0][];
+		this.condemned = new boolean[0];
+		this.condemnedSlots = new int[0];
+		this.slotsByInstance.clear();
+		this.grow(Math.max(16, capacity));
+
+		int scratch = Math.max(this.efConstruction, this.maxLinks0 + 1);
+		this.candidateDistances = new double[scratch];
+		this.candidateSlots = new int[scratch];
+		this.selectedDistances = new double[this.maxLinks0];
+		this.selectedSlots = new int[this.maxLinks0];
+		this.prunedDistances = new double[this.maxLinks0];
+		this.prunedSlots = new int[this.maxLinks0];
+		this.rowValues = new double[this.nDims];
+		this.linkValues = new double[this.nDims];
+		this.candidateValues = new double[this.nDims];
+		this.decoded = new double[this.nDims];
+	}
+
+	@Override
+	public void setInstances(Instances instances) throws Exception {
+		super.setInstances(instances);
+		List<Instance> window = new ArrayList<Instance>(instances.size());
+		for (int i = 0; i < instances.size(); i++) {
+			window.add(instances.get(i));
+		}
+		this.setInstances(window);
+	}
+
+	/*
+	 * Builds the graph over references to the window instances, inserted in order.
+	 */
+	@Override
+	public void setInstances(List<Instance> window) throws Exception {
+		this.nDims = window.get(0).numAttributes() - 1;
+		this.clear(window.size());
+
+		for (Instance inst : window) {
+			FlatKDTree.loadFeatures(inst, this.rowValues, 0);
+			this.coords.include(this.rowValues, 0);
+		}
+		for (Instance inst : window) {
+			this.insert(this.allocateSlot(inst));
+		}
+	}
+
+	/*
+	 * Removes inst itself when it was given to the graph, so a duplicate is never removed
+	 * in its place. Other instances are looked up by value.
+	 */
+	@Override
+	public void removeInstance(Instance inst) throws Exception {
+
+		Integer mapped = this.slotsByInstance.get(inst);
+		int slot = mapped != null ? mapped : this.indexOfEqual(inst);
+
+		if (slot == NIL)
+			throw new InstanceNotFoundException("Instance not found on HNSWGraph. Is there any missing data on the dataset?");
+
+		this.removeSlot(slot);
+	}
+
+	@Override
+	public void removeHandle(int handle, Instance inst) throws Exception {
+
+		if (handle < 0 || handle >= this.numSlots || !this.active[handle] || this.slotInstances[handle] != inst) {
+			this.removeInstance(inst);
+			return;
+		}
+
+		this.removeSlot(handle);
+	}
+
+	private void removeSlot(int slot) {
+		this.slotsByInstance.remove(this.slotInstances[slot]);
+		this.slotInstances[slot] = null;
+		this.active[slot] = false;
+		this.numInstances--;
+		this.numTombstones++;
+		this.compact();
+	}
+
+	/*
+	 * Returns the first live slot holding the same feature values and class as inst, or
+	 * NIL. The graph gives no exact lookup, so the slots are scanned, comparing the values
+	 * of their instances since a compact store does not keep them exactly.
+	 */
+	private int indexOfEqual(Instance inst) {
+		if (this.nDims == 0)
+			return NIL;
+
+		double[] values = new double[this.nDims];
+		double[] slotValues = new double[this.nDims];
+		FlatKDTree.loadFeatures(inst, values, 0);
+		double classValue = inst.classValue();
+
+		for (int slot = 0; slot < this.numSlots; slot++) {
+			if (!this.active[slot] || this.labels[slot] != classValue)
+				continue;
+			FlatKDTree.loadFeatures(this.slotInstances[slot], slotValues, 0);
+			if (Arrays.equals(values, slotValues))
+				return slot;
+		}
+		return NIL;
+	}
+
+	/*
+	 * Tombstones are compacted incrementally, so the graph never needs to be rebuilt as
+	 * a whole.
+	 */
+	@Override
+	public boolean isToRebuild() {
+		return false;
+	}
+
+}
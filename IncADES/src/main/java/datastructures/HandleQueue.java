@@ -0,0 +1,77 @@
+/*
+*    HandleQueue.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import incades.neighborsearch.StreamNeighborSearch;
+
+/*
+ * Handles given by an index to the entries of a FIFO window, kept in the order of the
+ * window in a circular array that doubles when full. An entry whose handle is unknown
+ * holds StreamNeighborSearch.NO_HANDLE.
+ */
+public class HandleQueue implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private int[] handles = new int[16];
+	private int first = 0;
+	private int size = 0;
+
+	public void addLast(int handle) {
+		if (this.size == this.handles.length) {
+			int[] grown = new int[this.handles.length * 2];
+			for (int i = 0; i < this.size; i++) {
+				grown[i] = this.handles[(this.first + i) % this.handles.length];
+			}
+			this.handles = grown;
+			this.first = 0;
+		}
+		this.handles[(this.first + this.size++) % this.handles.length] = handle;
+	}
+
+	public int removeFirst() {
+		if (this.size == 0)
+			throw new NoSuchElementException();
+		int handle = this.handles[this.first];
+		this.first = (this.first + 1) % this.handles.length;
+		this.size--;
+		return handle;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/*
+	 * Forgets every handle, leaving size entries without one, as after the index was
+	 * rebuilt over a window of that size.
+	 */
+	public void reset(int size) {
+		if (size > this.handles.length)
+			this.handles = new int[Integer.highestOneBit(size - 1) * 2];
+		Arrays.fill(this.handles, StreamNeighborSearch.NO_HANDLE);
+		this.first = 0;
+		this.size = size;
+	}
+}
@@ -0,0 +1,296 @@
+/*
+*    IndexSegment.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datastructures;
+
+import java.io.Serializable;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import incades.neighborsearch.DistanceKernel;
+
+/*
+ * Age-ordered run of points of a SegmentedNeighborSearch. Position p holds the p-th
+ * oldest point appended to the segment.
+ *
+ * A segment is filled by append() while it is the head of the index and is searched
+ * linearly. Once sealed, a k-d tree is bulk loaded over its live points and the
+ * segment no longer accepts points. Points leave a segment either from the front, by
+ * moving start forward, or anywhere through a tombstone.
+ */
+class IndexSegment implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int NIL = KDTreeBulkLoader.NIL;
+
+	private final int nDims;
+	private final DistanceKernel kernel;
+
+	int size = 0;
+	int start = 0;
+	int numRemoved = 0;
+
+	final double[] coords;
+	final double[] labels;
+	final Instance[] instances;
+	private boolean[] removed;
+
+	private int[] left;
+	private int[] right;
+	private int[] splitDims;
+	private double[] lower;
+	private double[] upper;
+	private int root = NIL;
+	private boolean sealed = false;
+
+	IndexSegment(int nDims, int capacity, DistanceKernel kernel) {
+		this.nDims = nDims;
+		this.kernel = kernel;
+		this.coords = new double[capacity * nDims];
+		this.labels = new double[capacity];
+		this.instances = new Instance[capacity];
+	}
+
+	int capacity() {
+		return this.instances.length;
+	}
+
+	boolean isFull() {
+		return this.size == this.instances.length;
+	}
+
+	boolean isSealed() {
+		return this.sealed;
+	}
+
+	int numLive() {
+		return this.size - this.start - this.numRemoved;
+	}
+
+	int numDead() {
+		return this.start + this.numRemoved;
+	}
+
+	boolean isLive(int position) {
+		return position >= this.start && position < this.size
+				&& (this.removed == null || !this.removed[position]);
+	}
+
+	void append(Instance inst, double[] values, int offset) {
+		System.arraycopy(values, offset, this.coords, this.size * this.nDims, this.nDims);
+		this.labels[this.size] = inst.classValue();
+		this.instances[this.size] = inst;
+		this.size++;
+	}
+
+	/*
+	 * Builds the k-d tree over the live points, with the bounding box of every subtree.
+	 * The segment is read-only afterwards, except for removals.
+	 */
+	void seal() {
+		int capacity = this.capacity();
+		this.left = new int[capacity];
+		this.right = new int[capacity];
+		this.splitDims = new int[capacity];
+
+		int[] positions = new int[this.numLive()];
+		int count = 0;
+		for (int p = this.start; p < this.size; p++) {
+			if (this.isLive(p))
+				positions[count++] = p;
+		}
+
+		this.root = KDTreeBulkLoader.build(this.coords, this.nDims, positions, 0, count, 0,
+				this.left, this.right, this.splitDims);
+		this.lower = new double[this.coords.length];
+		this.upper = new double[this.coords.length];
+		KDTreeBulkLoader.computeBoxes(this.coords, this.nDims, this.root, this.left, this.right, this.lower, this.upper);
+		this.sealed = true;
+	}
+
+	/*
+	 * Removes the point at position. Removing the oldest live point only moves start,
+	 * which also skips the tombstones found right after it.
+	 */
+	void remove(int position) {
+		if (position == this.start) {
+			this.instances[this.start++] = null;
+			while (this.start < this.size && this.removed != null && this.removed[this.start]) {
+				this.removed[this.start] = false;
+				this.instances[this.start++] = null;
+				this.numRemoved--;
+			}
+		} else {
+			if (this.removed == null)
+				this.removed = new boolean[this.capacity()];
+			this.removed[position] = true;
+			this.numRemoved++;
+		}
+	}
+
+	/*
+	 * Returns the live position holding inst itself, or -1.
+	 */
+	int indexOfSame(Instance inst) {
+		for (int p = this.start; p < this.size; p++) {
+			if (this.instances[p] == inst && this.isLive(p))
+				return p;
+		}
+		return -1;
+	}
+
+	/*
+	 * Returns the oldest live position holding the given feature values and class, or -1.
+	 */
+	int indexOfEqual(double[] values, double classValue) {
+		for (int p = this.start; p < this.size; p++) {
+			if (this.isLive(p) && this.isEqual(p, values, classValue))
+				return p;
+		}
+		return -1;
+	}
+
+	boolean isEqual(int position, double[] values, double classValue) {
+		if (this.labels[position] != classValue)
+			return false;
+		int offset = position * this.nDims;
+		for (int i = 0; i < this.nDims; i++) {
+			if (this.coords[offset + i] != values[i])
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Returns a sealed segment with the live points of older followed by those of
+	 * newer. Either may be null.
+	 */
+	static IndexSegment merge(IndexSegment older, IndexSegment newer, int nDims) {
+		int capacity = (older == null ? 0 : older.numLive()) + (newer == null ? 0 : newer.numLive());
+		IndexSegment merged = new IndexSegment(nDims, capacity, older != null ? older.kernel : newer.kernel);
+		if (older != null)
+			merged.appendLive(older);
+		if (newer != null)
+			merged.appendLive(newer);
+		merged.seal();
+		return merged;
+	}
+
+	private void appendLive(IndexSegment other) {
+		for (int p = other.start; p < other.size; p++) {
+			if (other.isLive(p))
+				this.append(other.instances[p], other.coords, p * this.nDims);
+		}
+	}
+
+	/*
+	 * Offers the live points of the segment to the heap of the context, as slots
+	 * offset + position. Sealed segments are searched through their tree with the bound
+	 * of the heap shared by all segments; the head is scanned. Subtrees are pruned when
+	 * the distance to their box multiplied by pruneFactor exceeds that bound, and at most
+	 * budget points are visited.
+	 * Returns the budget left.
+	 */
+	int search(double[] query, KnnQueryContext context, int offset, double pruneFactor, int budget) {
+		BoundedMaxHeap heap = context.heap;
+
+		if (!this.sealed) {
+			double[] scan = context.scanBuffer(this.size - this.start);
+			this.kernel.distances(query, 0, this.coords, this.start, this.size, this.nDims, scan, 0);
+			for (int p = this.start; p < this.size && budget > 0; p++) {
+				if (this.isLive(p)) {
+					heap.offer(scan[p - this.start], offset + p);
+					budget--;
+				}
+			}
+			return budget;
+		}
+
+		if (this.root == NIL)
+			return budget;
+
+		int[] stack = context.stack;
+		double[] bounds = context.bounds;
+		int top = 0;
+
+		stack[top] = this.root;
+		bounds[top++] = 0;
+
+		while (top > 0) {
+			int node = stack[--top];
+			double bound = bounds[top];
+
+			if (bound * pruneFactor > heap.worstDistance())
+				continue;
+			if (budget == 0)
+				break;
+			budget--;
+
+			if (this.isLive(node))
+				heap.offer(this.distance(query, node, heap.worstDistance()), offset + node);
+
+			int dim = this.splitDims[node];
+			double splitValue = this.coords[node * this.nDims + dim];
+			int best;
+			int other;
+			if (query[dim] >= splitValue) {
+				best = this.right[node];
+				other = this.left[node];
+			} else {
+				best = this.left[node];
+				other = this.right[node];
+			}
+
+			if (top + 2 > stack.length) {
+				context.ensureStack(top + 2);
+				stack = context.stack;
+				bounds = context.bounds;
+			}
+
+			double cutoff = heap.worstDistance() / pruneFactor;
+
+			if (other != NIL) {
+				double otherBound = this.boxDistance(query, other, cutoff);
+				if (otherBound <= cutoff) {
+					stack[top] = other;
+					bounds[top++] = otherBound;
+				}
+			}
+			if (best != NIL) {
+				double bestBound = this.boxDistance(query, best, cutoff);
+				if (bestBound <= cutoff) {
+					stack[top] = best;
+					bounds[top++] = bestBound;
+				}
+			}
+		}
+
+		return budget;
+	}
+
+	private double distance(double[] query, int position, double cutoff) {
+		return this.kernel.distance(query, 0, this.coords, position * this.nDims, this.nDims, cutoff);
+	}
+
+	private double boxDistance(double[] query, int position, double cutoff) {
+		return this.kernel.boxDistance(query, this.lower, this.upper, position * this.nDims, this.nDims, cutoff);
+	}
+}
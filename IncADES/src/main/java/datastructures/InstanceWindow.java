@@ -0,0 +1,47 @@
+/*
+*    InstanceWindow.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.util.AbstractList;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/*
+ * Validation window of IncADES (the DSEW): instances are added at the end and expire
+ * from the start, and the window is read as a list by the neighbour search and the
+ * pruning engine.
+ */
+public abstract class InstanceWindow extends AbstractList<Instance> implements RandomAccess {
+
+	public abstract void addLast(Instance inst);
+
+	public abstract Instance removeFirst();
+
+	public Instance getFirst() {
+		if (this.isEmpty())
+			throw new NoSuchElementException();
+		return this.get(0);
+	}
+
+	@Override
+	public abstract void clear();
+}
@@ -0,0 +1,380 @@
+/*
+*    InvertedListNeighborSearch.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import javax.management.InstanceNotFoundException;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import incades.neighborsearch.CanberraDistance;
+import incades.neighborsearch.NeighborSet;
+import incades.neighborsearch.StreamNeighborSearch;
+import moa.classifiers.lazy.neighboursearch.NearestNeighbourSearch;
+
+/*
+ * Exact Canberra search for sparse data, such as bags of features with thousands of
+ * attributes of which each instance only sets a few. Every feature keeps the list of
+ * the points where it is not zero, with their values, and a point keeps nothing but
+ * its non-zero features (see FeatureRecord).
+ *
+ * A dimension that is zero in both points adds nothing to the Canberra distance, and
+ * one that is zero in a single point adds the term of the other value alone, 1 unless
+ * it is missing. The distance from the query to a point is thus the sum of the lone
+ * terms of both, corrected on the features they share. The lone sums are kept per
+ * point, and a query only walks the lists of its own non-zero features to collect the
+ * corrections, so it costs the length of those lists plus one addition per point,
+ * whatever the number of attributes.
+ *
+ * Points are identified by handles, which index their arrays and never move. Each
+ * point remembers its position in the list of each of its features, so a removal
+ * moves the last entry of those lists into its place.
+ */
+public class InvertedListNeighborSearch extends NearestNeighbourSearch implements StreamNeighborSearch {
+
+	private static final long serialVersionUID = 1L;
+
+	protected static final int NIL = -1;
+
+	private static final int[] NO_ENTRIES = new int[0];
+	private static final double[] NO_VALUES = new double[0];
+
+	private int nDims = 0;
+	private int numPoints = 0;
+
+	// Points by handle, a free handle having no instance
+	private Instance[] instances = new Instance[0];
+	private double[] labels = new double[0];
+	private int[][] pointFeatures = new int[0][];
+	private int[][] pointPositions = new int[0][];
+	private double[] loneTerms = new double[0];
+	private IdentityHashMap<Instance, Integer> handlesByInstance = new IdentityHashMap<Instance, Integer>();
+
+	private int[] freeHandles = new int[0];
+	private int numFreeHandles = 0;
+	private int numHandles = 0;
+
+	// List of each feature: the handles of the points where it is not zero, and their values
+	private int[][] listHandles = new int[0][];
+	private double[][] listValues = new double[0][];
+	private int[] listSizes = new int[0];
+
+	private transient IntFunction<Instance> resolver;
+
+	private long totalEntriesVisited = 0;
+	private long totalDistancesComputed = 0;
+
+	@Override
+	public Instance nearestNeighbour(Instance target) throws Exception {
+		Instances neighbours = this.kNearestNeighbours(target, 1);
+		return neighbours.get(0);
+	}
+
+	public int getNumInstances() {
+		return this.numPoints;
+	}
+
+	/*
+	 * The list entries read by the queries stand for the visited nodes.
+	 */
+	@Override
+	public long getTotalNodesVisited() {
+		return this.totalEntriesVisited;
+	}
+
+	@Override
+	public long getTotalDistancesComputed() {
+		return this.totalDistancesComputed;
+	}
+
+	/*
+	 * The returned Instances belongs to the query context of the calling thread and is
+	 * overwritten by the next query made on that thread.
+	 */
+	@Override
+	public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+
+		ReusableInstances neighbours = context.neighbours(target, k);
+		for (int i = 0; i < context.size; i++) {
+			neighbours.addNeighbour(this.instances[context.slots[i]]);
+		}
+
+		return neighbours;
+	}
+
+	/*
+	 * Neighbours are identified by their handles.
+	 */
+	@Override
+	public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+
+		NeighborSet neighbours = context.neighborSet;
+		neighbours.clear(target.numClasses(), this.getResolver());
+		for (int i = 0; i < context.size; i++) {
+			int handle = context.slots[i];
+			neighbours.add(handle, context.distances[i], this.labels[handle]);
+		}
+
+		return neighbours;
+	}
+
+	private IntFunction<Instance> getResolver() {
+		if (this.resolver == null)
+			this.resolver = handle -> this.instances[handle];
+		return this.resolver;
+	}
+
+	private KnnQueryContext search(Instance target, int k) throws Exception {
+
+		if (this.nDims == 0) {
+			throw new Exception("The index was not initialized. Please use the method setInstances(Instances)");
+		}
+
+		KnnQueryContext context = KnnQueryContext.get();
+		context.begin(k, 0);
+
+		FeatureRecord query = FeatureRecord.of(target);
+		int[] features = query.nonZeroIndices();
+		double[] values = query.nonZeroValues();
+
+		// Corrections of the points sharing features with the query
+		double[] corrections = context.scanBuffer(this.numHandles);
+		Arrays.fill(corrections, 0, this.numHandles, 0);
+
+		double queryLoneTerms = 0;
+		for (int i = 0; i < features.length; i++) {
+			double value = values[i];
+			double lone = CanberraDistance.term(value, 0);
+			queryLoneTerms += lone;
+
+			int feature = features[i];
+			int size = this.listSizes[feature];
+			int[] handles = this.listHandles[feature];
+			double[] others = this.listValues[feature];
+			for (int j = 0; j < size; j++) {
+				double other = others[j];
+				corrections[handles[j]] += CanberraDistance.term(value, other) - lone - CanberraDistance.term(0, other);
+			}
+			this.totalEntriesVisited += size;
+		}
+
+		BoundedMaxHeap heap = context.heap;
+		for (int handle = 0; handle < this.numHandles; handle++) {
+			if (this.instances[handle] != null)
+				heap.offer(queryLoneTerms + this.loneTerms[handle] + corrections[handle], handle);
+		}
+
+		this.totalDistancesComputed += this.numPoints;
+		context.finish();
+		return context;
+	}
+
+	@Override
+	public double[] getDistances() throws Exception {
+		KnnQueryContext context = KnnQueryContext.get();
+		return Arrays.copyOf(context.distances, context.size);
+	}
+
+	@Override
+	public void update(Instance inst) throws Exception {
+		this.addInstance(inst);
+	}
+
+	/*
+	 * Adds inst to the lists of its non-zero features and returns its handle, which can
+	 * be given to removeHandle.
+	 */
+	@Override
+	public int addInstance(Instance inst) throws Exception {
+		FeatureRecord record = FeatureRecord.of(inst);
+		if (this.nDims == 0)
+			this.initialize(record.numFeatures());
+
+		if (this.numFreeHandles == 0 && this.numHandles == this.instances.length)
+			this.grow(Math.max(16, this.numHandles * 2));
+		int handle = this.numFreeHandles > 0 ? this.freeHandles[--this.numFreeHandles] : this.numHandles++;
+
+		int[] features = record.nonZeroIndices();
+		double[] values = record.nonZeroValues();
+		int[] positions = new int[features.length];
+		double loneTerms = 0;
+		for (int i = 0; i < features.length; i++) {
+			positions[i] = this.append(features[i], handle, values[i]);
+			loneTerms += CanberraDistance.term(0, values[i]);
+		}
+
+		this.instances[handle] = inst;
+		this.labels[handle] = inst.classValue();
+		this.pointFeatures[handle] = features;
+		this.pointPositions[handle] = positions;
+		this.loneTerms[handle] = loneTerms;
+		this.handlesByInstance.put(inst, handle);
+		this.numPoints++;
+		return handle;
+	}
+
+	private void initialize(int nDims) {
+		this.nDims = nDims;
+		this.listHandles = new int[nDims][];
+		this.listValues = new double[nDims][];
+		this.listSizes = new int[nDims];
+		Arrays.fill(this.listHandles, NO_ENTRIES);
+		Arrays.fill(this.listValues, NO_VALUES);
+	}
+
+	private void grow(int capacity) {
+		this.instances = Arrays.copyOf(this.instances, capacity);
+		this.labels = Arrays.copyOf(this.labels, capacity);
+		this.pointFeatures = Arrays.copyOf(this.pointFeatures, capacity);
+		this.pointPositions = Arrays.copyOf(this.pointPositions, capacity);
+		this.loneTerms = Arrays.copyOf(this.loneTerms, capacity);
+		this.freeHandles = Arrays.copyOf(this.freeHandles, capacity);
+	}
+
+	/*
+	 * Appends the entry of handle to the list of feature and returns its position.
+	 */
+	private int append(int feature, int handle, double value) {
+		int position = this.listSizes[feature]++;
+		if (position == this.listHandles[feature].length) {
+			int capacity = Math.max(4, position * 2);
+			this.listHandles[feature] = Arrays.copyOf(this.listHandles[feature], capacity);
+			this.listValues[feature] = Arrays.copyOf(this.listValues[feature], capacity);
+		}
+		this.listHandles[feature][position] = handle;
+		this.listValues[feature][position] = value;
+		return position;
+	}
+
+	@Override
+	public void setInstances(Instances instances) throws Exception {
+		super.setInstances(instances);
+		List<Instance> window = new ArrayList<Instance>(instances.size());
+		for (int i = 0; i < instances.size(); i++) {
+			window.add(instances.get(i));
+		}
+		this.setInstances(window);
+	}
+
+	/*
+	 * Replaces the content of the index by references to the window instances.
+	 */
+	@Override
+	public void setInstances(List<Instance> window) throws Exception {
+		this.nDims = 0;
+		this.numPoints = 0;
+		this.numHandles = 0;
+		this.numFreeHandles = 0;
+		this.handlesByInstance.clear();
+		this.instances = new Instance[0];
+		this.grow(Math.max(16, window.size()));
+
+		for (Instance inst : window) {
+			this.addInstance(inst);
+		}
+	}
+
+	/*
+	 * Removes inst itself when it was given to the index, so a duplicate is never removed
+	 * in its place. Other instances are looked up by value.
+	 */
+	@Override
+	public void removeInstance(Instance inst) throws Exception {
+
+		Integer mapped = this.handlesByInstance.get(inst);
+		int handle = mapped != null ? mapped : this.indexOfEqual(inst);
+
+		if (handle == NIL)
+			throw new InstanceNotFoundException("Instance not found on the index. Is there any missing data on the dataset?");
+
+		this.removePoint(handle);
+	}
+
+	@Override
+	public void removeHandle(int handle, Instance inst) throws Exception {
+
+		if (handle < 0 || handle >= this.numHandles || this.instances[handle] != inst) {
+			this.removeInstance(inst);
+			return;
+		}
+
+		this.removePoint(handle);
+	}
+
+	/*
+	 * Moves the last entry of every list of the point into its place.
+	 */
+	private void removePoint(int handle) {
+		int[] features = this.pointFeatures[handle];
+		int[] positions = this.pointPositions[handle];
+		for (int i = 0; i < features.length; i++) {
+			int feature = features[i];
+			int position = positions[i];
+			int last = --this.listSizes[feature];
+			if (position == last)
+				continue;
+			int moved = this.listHandles[feature][last];
+			this.listHandles[feature][position] = moved;
+			this.listValues[feature][position] = this.listValues[feature][last];
+			this.pointPositions[moved][Arrays.binarySearch(this.pointFeatures[moved], feature)] = position;
+		}
+
+		this.handlesByInstance.remove(this.instances[handle]);
+		this.instances[handle] = null;
+		this.pointFeatures[handle] = null;
+		this.pointPositions[handle] = null;
+		this.freeHandles[this.numFreeHandles++] = handle;
+		this.numPoints--;
+	}
+
+	/*
+	 * Returns the handle of a point holding the same feature values and class as inst,
+	 * or NIL.
+	 */
+	private int indexOfEqual(Instance inst) {
+		if (this.nDims == 0)
+			return NIL;
+
+		FeatureRecord record = FeatureRecord.of(inst);
+		for (int handle = 0; handle < this.numHandles; handle++) {
+			if (this.instances[handle] != null && record.sameValues(FeatureRecord.of(this.instances[handle])))
+				return handle;
+		}
+		return NIL;
+	}
+
+	/*
+	 * The lists are kept exact by every update, so the index never needs to be rebuilt.
+	 */
+	@Override
+	public boolean isToRebuild() {
+		return false;
+	}
+
+}
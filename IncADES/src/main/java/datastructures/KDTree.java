@@ -2,6 +2,7 @@ package datastructures;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import javax.management.InstanceNotFoundException;
 
@@ -11,6 +12,7 @@ import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 
 import incades.util.InstancesUtils;
+import incades.neighborsearch.NeighborSet;
 import incades.neighborsearch.StreamNeighborSearch;
 import moa.classifiers.lazy.neighboursearch.EuclideanDistance;
 import moa.classifiers.lazy.neighboursearch.NearestNeighbourSearch;
@@ -30,6 +32,8 @@ public class KDTree extends NearestNeighbourSearch implements StreamNeighborSear
 	
 	private KDTreeNode m_Root = null;
 
+	private NodeHandles handles = new NodeHandles();
+
 	private int numNodesDeactivated = 0;
 	
 	private NormalizableDistance distanceFunction;
@@ -37,6 +41,8 @@ public class KDTree extends NearestNeighbourSearch implements StreamNeighborSear
 	private int initialNumInstances = 0;
 
 	private int nodesVisited = 0;
+
+	private double[] lastDistances = new double[0];
 	
 	
 	
@@ -99,8 +105,8 @@ public class KDTree extends NearestNeighbourSearch implements StreamNeighborSear
 		}
 		}
 	
-		double[] targetInfo = target.toDoubleArray();
-		KDTreeNode best = (targetInfo[node.splitDim] >= node.getInfo()[node.splitDim]) ? node.m_Right : node.m_Left;
+		FeatureRecord targetRecord = FeatureRecord.of(target);
+		KDTreeNode best = (targetRecord.attributeValue(node.splitDim) >= node.getSplitVal(node.splitDim)) ? node.m_Right : node.m_Left;
 		KDTreeNode other = (best == node.m_Right) ? node.m_Left : node.m_Right;
 	
 		// Search the best branch
@@ -137,9 +143,16 @@ public class KDTree extends NearestNeighbourSearch implements StreamNeighborSear
 		
 		this.numNeighbours = k;
 		this.nodesVisited = 0;
+		// The record of the target is built once instead of at every node visited
+		target = FeatureInstance.of(target);
 		
 		this.instancesList.clear();
-		this.getDistancesOfBranches(m_Root, target, new ArrayList<Double>());
+		ArrayList<Double> distances = this.getDistancesOfBranches(m_Root, target, new ArrayList<Double>());
+
+		this.lastDistances = new double[distances.size()];
+		for (int i = 0; i < distances.size(); i++) {
+			this.lastDistances[i] = distances.get(i);
+		}
 		
 		// if (this.instancesList.size() < k) {
 		// 	System.out.println("Not enough neighbors");
@@ -153,81 +166,32 @@ public class KDTree extends NearestNeighbourSearch implements StreamNeighborSear
 		
 	}
 
+	@Override
+	public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception {
+		Instances neighbours = this.kNearestNeighbours(target, k);
+		return NeighborSet.fromInstances(neighbours, this.lastDistances, target.numClasses());
+	}
+
 	@Override
 	public double[] getDistances() throws Exception {
-		return null;
+		return this.lastDistances;
 	}
 	
 	@Override
 	public void update(Instance ins) throws Exception {
+		this.addInstance(ins);
+	}
+
+	/*
+	 * Inserts ins and returns its handle, which can be given to removeHandle.
+	 */
+	@Override
+	public int addInstance(Instance ins) throws Exception {
 		if (this.numInstances == 0) {
 			throw new InitializationException("Tree was not created. "
 					+ "Please call the BuildKDTree method first");
 		}
-		this.insert(ins);		
-	}
-
-	private void buildKDTreeBalanced(ArrayList<Instance> insts, int depth) throws Exception {
-		ArrayList<Double> values = new ArrayList<Double>();
-		
-		if (insts.size() == 0)
-			return;
-		
-		if (insts.size() == 1){
-			this.insert(insts.get(0));;
-			return;
-		}
-
-			if (insts.size() == 2) {
-				Instance inst1 = insts.get(0);
-				Instance inst2 = insts.get(1);
-	
-				if (inst1.toDoubleArray()[depth] >= inst2.toDoubleArray()[depth]) {
-					this.insert(inst1);
-					this.insert(inst2);
-					return;
-				} else {
-					this.insert(inst2);
-					this.insert(inst1);
-					return;
-				}
-	
-			}
-		
-		
-		for (int i = 0; i < insts.size(); i++) {
-			values.add(insts.get(i).toDoubleArray()[depth]);
-		}
-		
-		double median = getMedian(values);
-		
-		Instance medianInstance = null;
-		
-		ArrayList<Instance> instancesToTheLeft = new ArrayList<Instance>();
-		ArrayList<Instance> instancesToTheRight = new ArrayList<Instance>();
-		
-			for (int i = 0; i < insts.size(); i++) {
-				if(insts.get(i).toDoubleArray()[depth] == median && medianInstance == null) {
-					medianInstance = insts.get(i);
-				}
-				else if (insts.get(i).toDoubleArray()[depth] < median)
-					instancesToTheLeft.add(insts.get(i));
-				else
-					instancesToTheRight.add(insts.get(i));
-			}
-		
-		this.insert(medianInstance);
-
-		buildKDTreeBalanced(instancesToTheLeft, (depth+1)%this.nDims);
-		buildKDTreeBalanced(instancesToTheRight, (depth+1)%this.nDims);
-		
-	}
-	
-	protected double getMedian(ArrayList<Double> values) {
-		
-		Collections.sort(values);
-        return values.get( (int) (values.size() + 1) / 2 - 1);
-		
+		return this.insert(ins);
 	}
 	
 	@Override
@@ -240,33 +204,49 @@ public class KDTree extends NearestNeighbourSearch implements StreamNeighborSear
 		this.buildKDTree(instances);
 	}
 	
+	/*
+	 * Builds the tree over a copy of the window and keys the nodes by the window entries
+	 * themselves, so they are removed without a search.
+	 */
+	@Override
+	public void setInstances(List<Instance> window) throws Exception {
+		Instances instances = InstancesUtils.gerarDataset(window, "Validation Instances");
+		this.setInstances(instances);
+		int i = 0;
+		for (Instance inst : window) {
+			this.handles.rekey(instances.get(i++), inst);
+		}
+	}
+
 	public void buildKDTree(Instances instances) throws Exception {
 
-		ArrayList<Instance> insts = new ArrayList<Instance>();
+		if (instances.size() == 0)
+			throw new InstanceNotFoundException("Instance list is empty.");
 
-		for (int i = 0; i < instances.size(); ++i) {
-			insts.add(instances.get(i));
+		KDTreeNode[] nodes = new KDTreeNode[instances.size()];
+		this.m_Root = KDTreeBulkLoader.buildNodes(instances, this.nDims, nodes);
+		this.handles.clear();
+		for (int i = 0; i < nodes.length; i++) {
+			this.handles.issue(instances.get(i), nodes[i]);
 		}
-
-		
-		this.buildKDTreeBalanced(insts, 0);
-
+		this.numInstances = instances.size();
+		this.numNodesDeactivated = 0;
 
 		this.initialNumInstances = this.numInstances;
 	}
 	
-	protected void insert(Instance inst) throws Exception {
+	protected int insert(Instance inst) throws Exception {
 		
 		KDTreeNode p = this.m_Root;
 		KDTreeNode prev = null;
-		double[] info = inst.toDoubleArray();
+		FeatureRecord record = FeatureRecord.of(inst);
 		
 		int i = 0;
 		
 		while (p != null) {
 			prev = p;
             // prev.updateRange(inst);
-			if (info[i] < p.getInfo()[i])
+			if (record.attributeValue(i) < p.getSplitVal(i))
 				p = p.m_Left;
 			else
 				p = p.m_Right;
@@ -277,18 +257,32 @@ public class KDTree extends NearestNeighbourSearch implements StreamNeighborSear
 		if (index < 0)
 			index = nDims-1;
 		
+		KDTreeNode node = new KDTreeNode(inst, i);
 		if (this.m_Root == null)
-			this.m_Root = new KDTreeNode(inst, i);
-		else if (info[index] < prev.getInfo()[index]) 
-			prev.m_Left = new KDTreeNode(inst, i);
+			this.m_Root = node;
+		else if (record.attributeValue(index) < prev.getSplitVal(index)) 
+			prev.m_Left = node;
 		else
-			prev.m_Right = new KDTreeNode(inst, i);
-		this.numInstances++;		
+			prev.m_Right = node;
+		this.numInstances++;
+		return this.handles.issue(inst, node);
 		}
 	
 	public void removeInstance(Instance inst) throws Exception {
+		this.remove(inst, this.handles.release(inst));
+	}
+
+	@Override
+	public void removeHandle(int handle, Instance inst) throws Exception {
+		KDTreeNode node = this.handles.release(handle, inst);
+		this.remove(inst, node != null ? node : this.handles.release(inst));
+	}
+
+	private void remove(Instance inst, KDTreeNode nodeToRemove) throws Exception {
 		
-		KDTreeNode nodeToRemove = search(inst, m_Root);
+		// The instance itself is found first, so an equal duplicate is never removed instead
+		if (nodeToRemove == null || !nodeToRemove.isNodeActive())
+			nodeToRemove = search(inst, m_Root);
 		
 		if (nodeToRemove == null)
 			throw new InstanceNotFoundException("Instance not found on KDTree. Is there any missing data on the dataset?");
@@ -298,7 +292,7 @@ public class KDTree extends NearestNeighbourSearch implements StreamNeighborSear
 	}
 	
 	public KDTreeNode search(Instance inst, KDTreeNode node) throws Exception {
-		double[] instInfo = inst.toDoubleArray();
+		FeatureRecord record = FeatureRecord.of(inst);
 		
 		if (node == null){
 			return null;
@@ -309,7 +303,7 @@ public class KDTree extends NearestNeighbourSearch implements StreamNeighborSear
 		
 		KDTreeNode nodeToReturn = null;
 		
-		if (instInfo[node.splitDim] < node.getInfo()[node.splitDim]) {
+		if (record.attributeValue(node.splitDim) < node.getSplitVal(node.splitDim)) {
 			nodeToReturn = search(inst, node.m_Left);
 		}
 		else {
@@ -336,30 +330,14 @@ public class KDTree extends NearestNeighbourSearch implements StreamNeighborSear
 		return retorno;
 	}
 	
-	private boolean isInstanceEqual(Instance inst1, Instance inst2) {	
-		
-		boolean found = true;
-		
-		double[] infoInst1 = inst1.toDoubleArray();
-		double[] infoInst2 = inst2.toDoubleArray();
-		
-		for (int i = 0; i < infoInst1.length; i++) {
-			if (infoInst1[i] != infoInst2[i]) {
-				found = false;
-				break;
-			}
-		}
-		return found;
+	private boolean isInstanceEqual(Instance inst1, Instance inst2) {
+		return FeatureRecord.of(inst1).sameValues(FeatureRecord.of(inst2));
 	}
 	
 	protected void deleteBack(KDTreeNode p) throws Exception {
 		
-		if (p.isALeaf()) {
-			p = null;
-			return;
-		}
-			p.setFlagFalse();
-			this.numNodesDeactivated++;
+		p.setFlagFalse();
+		this.numNodesDeactivated++;
 	}
 	
 	@Override
@@ -380,7 +358,7 @@ public class KDTree extends NearestNeighbourSearch implements StreamNeighborSear
 		double maximum = Collections.max(distances);
 		int splitDim = node.splitDim;
 
-		double minimumDistance = target.toDoubleArray()[splitDim] - node.getInfo()[splitDim];
+		double minimumDistance = FeatureRecord.of(target).attributeValue(splitDim) - node.getSplitVal(splitDim);
 		// double absv = FastMath.abs(minimumDistance);
 		double absv = minimumDistance*minimumDistance;
 
@@ -0,0 +1,399 @@
+/*
+*    KDTreeBulkLoader.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+/*
+ * Builds a balanced k-d tree over points stored as rows of a coordinate array.
+ *
+ * The points to arrange are listed in an index array that is partitioned in place:
+ * each node is found with a three-way quickselect on its split dimension, so a build
+ * costs O(n log n) without sorting or boxing. Nodes are written directly into the
+ * left/right/splitDims arrays (indexed by point) instead of being re-inserted from the
+ * root. Ranges larger than PARALLEL_THRESHOLD are split into ForkJoin tasks; the
+ * tasks write disjoint parts of the arrays.
+ *
+ * As with insertion, the left subtree of a node holds the values strictly smaller than
+ * its split value and the right subtree the values greater or equal to it.
+ */
+public class KDTreeBulkLoader {
+
+	public static final int NIL = -1;
+
+	static final int PARALLEL_THRESHOLD = 8192;
+
+	private static final boolean LEFT = true;
+	private static final boolean RIGHT = false;
+
+	private final double[] coords;
+	private final int nDims;
+	private final int[] indexes;
+	private final int[] left;
+	private final int[] right;
+	private final int[] splitDims;
+	private final int[] parents;
+	private final int[] sizes;
+
+	private int root = NIL;
+
+	private KDTreeBulkLoader(double[] coords, int nDims, int[] indexes, int[] left, int[] right, int[] splitDims,
+			int[] parents, int[] sizes) {
+		this.coords = coords;
+		this.nDims = nDims;
+		this.indexes = indexes;
+		this.left = left;
+		this.right = right;
+		this.splitDims = splitDims;
+		this.parents = parents;
+		this.sizes = sizes;
+	}
+
+	/*
+	 * Arranges the points listed in indexes[from, to) into a tree whose root splits on
+	 * firstDim, each level splitting on the next dimension. coords holds nDims values per
+	 * point. Returns the root point, or NIL for an empty range.
+	 */
+	public static int build(double[] coords, int nDims, int[] indexes, int from, int to, int firstDim,
+			int[] left, int[] right, int[] splitDims) {
+		return build(coords, nDims, indexes, from, to, firstDim, left, right, splitDims, null, null);
+	}
+
+	/*
+	 * Same as above, also recording the parent of every node (NIL for the root) and the
+	 * number of nodes of its subtree. Both arrays are optional.
+	 */
+	public static int build(double[] coords, int nDims, int[] indexes, int from, int to, int firstDim,
+			int[] left, int[] right, int[] splitDims, int[] parents, int[] sizes) {
+
+		if (from >= to)
+			return NIL;
+
+		KDTreeBulkLoader loader = new KDTreeBulkLoader(coords, nDims, indexes, left, right, splitDims,
+				parents, sizes);
+
+		if (to - from > PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1)
+			ForkJoinPool.commonPool().invoke(loader.new SubtreeTask(from, to, firstDim, NIL, LEFT));
+		else
+			loader.buildSequential(from, to, firstDim, NIL, LEFT);
+
+		return loader.root;
+	}
+
+	/*
+	 * Builds a KDTreeNode graph over instances, splitting on the first nDims attributes,
+	 * and returns its root. Used by the trees that keep one object per node. The node of
+	 * instances.get(i) is stored in nodes[i].
+	 */
+	public static KDTreeNode buildNodes(Instances instances, int nDims, KDTreeNode[] nodes) throws Exception {
+		List<Instance> list = new ArrayList<Instance>(instances.size());
+		for (int i = 0; i < instances.size(); i++) {
+			list.add(instances.get(i));
+		}
+		return buildNodes(list, nDims, nodes);
+	}
+
+	public static KDTreeNode buildNodes(List<Instance> instances, int nDims, KDTreeNode[] nodes) throws Exception {
+		int size = instances.size();
+		double[] coords = new double[size * nDims];
+		int[] indexes = new int[size];
+		int[] left = new int[size];
+		int[] right = new int[size];
+		int[] splitDims = new int[size];
+
+		for (int i = 0; i < size; i++) {
+			Instance inst = instances.get(i);
+			for (int d = 0; d < nDims; d++) {
+				coords[i * nDims + d] = inst.value(d);
+			}
+			indexes[i] = i;
+		}
+
+		int root = build(coords, nDims, indexes, 0, size, 0, left, right, splitDims);
+		if (root == NIL)
+			return null;
+
+		for (int i = 0; i < size; i++) {
+			nodes[i] = new KDTreeNode(instances.get(i), splitDims[i]);
+		}
+		for (int i = 0; i < size; i++) {
+			if (left[i] != NIL)
+				nodes[i].m_Left = nodes[left[i]];
+			if (right[i] != NIL)
+				nodes[i].m_Right = nodes[right[i]];
+		}
+
+		return nodes[root];
+	}
+
+	/*
+	 * Writes the bounding box of the subtree of every node below root, itself included,
+	 * into lower and upper (nDims values per node, as in coords). Children are handled
+	 * before their parent by walking a breadth-first listing backwards.
+	 */
+	public static void computeBoxes(double[] coords, int nDims, int root, int[] left, int[] right,
+			double[] lower, double[] upper) {
+
+		if (root == NIL)
+			return;
+
+		int[] order = new int[64];
+		int count = 0;
+		order[count++] = root;
+		for (int i = 0; i < count; i++) {
+			if (count + 2 > order.length)
+				order = Arrays.copyOf(order, order.length * 2);
+			int node = order[i];
+			if (left[node] != NIL)
+				order[count++] = left[node];
+			if (right[node] != NIL)
+				order[count++] = right[node];
+		}
+
+		for (int i = count - 1; i >= 0; i--) {
+			int node = order[i];
+			int offset = node * nDims;
+			System.arraycopy(coords, offset, lower, offset, nDims);
+			System.arraycopy(coords, offset, upper, offset, nDims);
+			if (left[node] != NIL)
+				includeBox(lower, upper, offset, left[node] * nDims, nDims);
+			if (right[node] != NIL)
+				includeBox(lower, upper, offset, right[node] * nDims, nDims);
+		}
+	}
+
+	private static void includeBox(double[] lower, double[] upper, int offset, int childOffset, int nDims) {
+		for (int d = 0; d < nDims; d++) {
+			if (lower[childOffset + d] < lower[offset + d])
+				lower[offset + d] = lower[childOffset + d];
+			if (upper[childOffset + d] > upper[offset + d])
+				upper[offset + d] = upper[childOffset + d];
+		}
+	}
+
+	/*
+	 * Partitions indexes[from, to) around the lower median of dimension dim and returns
+	 * the position of the node: values before it are strictly smaller, values after it
+	 * are greater or equal. The node point gets its split dimension and no children.
+	 */
+	private int split(int from, int to, int dim) {
+		int position = this.select(from, to, from + (to - from + 1) / 2 - 1, dim);
+		int node = this.indexes[position];
+		this.splitDims[node] = dim;
+		this.left[node] = NIL;
+		this.right[node] = NIL;
+		return position;
+	}
+
+	/*
+	 * Three-way quickselect of the k-th smallest value. Returns the first position of
+	 * the run of values equal to it, everything before that position being smaller.
+	 */
+	private int select(int from, int to, int k, int dim) {
+		int[] idx = this.indexes;
+		int lo = from;
+		int hi = to - 1;
+
+		while (hi > lo) {
+			double pivot = this.medianOfThree(idx[lo], idx[lo + (hi - lo) / 2], idx[hi], dim);
+
+			int lt = lo;
+			int i = lo;
+			int gt = hi;
+			while (i <= gt) {
+				double value = this.coords[idx[i] * this.nDims + dim];
+				if (value < pivot) {
+					swap(idx, lt++, i++);
+				} else if (value > pivot) {
+					swap(idx, i, gt--);
+				} else {
+					i++;
+				}
+			}
+
+			if (k < lt)
+				hi = lt - 1;
+			else if (k > gt)
+				lo = gt + 1;
+			else
+				return lt;
+		}
+
+		return lo;
+	}
+
+	private double medianOfThree(int a, int b, int c, int dim) {
+		double x = this.coords[a * this.nDims + dim];
+		double y = this.coords[b * this.nDims + dim];
+		double z = this.coords[c * this.nDims + dim];
+		if (x < y) {
+			if (y < z)
+				return y;
+			return x < z ? z : x;
+		}
+		if (x < z)
+			return x;
+		return y < z ? z : y;
+	}
+
+	private static void swap(int[] values, int i, int j) {
+		int tmp = values[i];
+		values[i] = values[j];
+		values[j] = tmp;
+	}
+
+	private void link(int parent, boolean side, int child, int size) {
+		if (this.parents != null)
+			this.parents[child] = parent;
+		if (this.sizes != null)
+			this.sizes[child] = size;
+
+		if (parent == NIL)
+			this.root = child;
+		else if (side == LEFT)
+			this.left[parent] = child;
+		else
+			this.right[parent] = child;
+	}
+
+	/*
+	 * Builds the subtree over indexes[from, to) below parent with an explicit stack, so
+	 * long runs of duplicated points cannot overflow the call stack.
+	 */
+	private void buildSequential(int from, int to, int dim, int parent, boolean side) {
+		int[] ranges = new int[5 * 32];
+		boolean[] sides = new boolean[32];
+		int top = 0;
+
+		ranges[0] = from;
+		ranges[1] = to;
+		ranges[2] = dim;
+		ranges[3] = parent;
+		sides[0] = side;
+		top = 1;
+
+		while (top > 0) {
+			top--;
+			int f = ranges[5 * top];
+			int t = ranges[5 * top + 1];
+			int d = ranges[5 * top + 2];
+			int p = ranges[5 * top + 3];
+			boolean s = sides[top];
+
+			if (f >= t)
+				continue;
+
+			int position = this.split(f, t, d);
+			int node = this.indexes[position];
+			this.link(p, s, node, t - f);
+
+			int nextDim = (d + 1) % this.nDims;
+
+			if (top + 2 > sides.length) {
+				ranges = Arrays.copyOf(ranges, ranges.length * 2);
+				sides = Arrays.copyOf(sides, sides.length * 2);
+			}
+
+			// The larger range is pushed first, which keeps the stack logarithmic
+			if (position - f >= t - position - 1) {
+				top = push(ranges, sides, top, f, position, nextDim, node, LEFT);
+				top = push(ranges, sides, top, position + 1, t, nextDim, node, RIGHT);
+			} else {
+				top = push(ranges, sides, top, position + 1, t, nextDim, node, RIGHT);
+				top = push(ranges, sides, top, f, position, nextDim, node, LEFT);
+			}
+		}
+	}
+
+	private static int push(int[] ranges, boolean[] sides, int top, int from, int to, int dim, int parent, boolean side) {
+		ranges[5 * top] = from;
+		ranges[5 * top + 1] = to;
+		ranges[5 * top + 2] = dim;
+		ranges[5 * top + 3] = parent;
+		sides[top] = side;
+		return top + 1;
+	}
+
+	/*
+	 * Parallel build of a large range. The smaller child is forked and the larger one is
+	 * handled by the same task in a loop, so the task nesting stays logarithmic even when
+	 * duplicates unbalance the splits.
+	 */
+	private class SubtreeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private int from;
+		private int to;
+		private int dim;
+		private int parent;
+		private boolean side;
+
+		SubtreeTask(int from, int to, int dim, int parent, boolean side) {
+			this.from = from;
+			this.to = to;
+			this.dim = dim;
+			this.parent = parent;
+			this.side = side;
+		}
+
+		@Override
+		protected void compute() {
+			ArrayList<SubtreeTask> forked = new ArrayList<SubtreeTask>();
+
+			while (this.to - this.from > PARALLEL_THRESHOLD) {
+				int position = split(this.from, this.to, this.dim);
+				int node = indexes[position];
+				link(this.parent, this.side, node, this.to - this.from);
+
+				int nextDim = (this.dim + 1) % nDims;
+				boolean leftIsSmaller = position - this.from < this.to - position - 1;
+
+				SubtreeTask task = leftIsSmaller
+						? new SubtreeTask(this.from, position, nextDim, node, LEFT)
+						: new SubtreeTask(position + 1, this.to, nextDim, node, RIGHT);
+				task.fork();
+				forked.add(task);
+
+				if (leftIsSmaller)
+					this.from = position + 1;
+				else
+					this.to = position;
+				this.dim = nextDim;
+				this.parent = node;
+				this.side = leftIsSmaller ? RIGHT : LEFT;
+			}
+
+			buildSequential(this.from, this.to, this.dim, this.parent, this.side);
+
+			for (SubtreeTask task : forked) {
+				task.join();
+			}
+		}
+	}
+}
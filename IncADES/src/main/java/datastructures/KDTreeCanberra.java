@@ -21,8 +21,9 @@
 package datastructures;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 
 import javax.management.InstanceNotFoundException;
 
@@ -33,11 +34,19 @@ import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 
 import incades.neighborsearch.CanberraDistance;
+import incades.neighborsearch.NeighborSet;
 import incades.util.InstancesUtils;
 import incades.neighborsearch.StreamNeighborSearch;
 import moa.classifiers.lazy.neighboursearch.NearestNeighbourSearch;
 import moa.classifiers.lazy.neighboursearch.NormalizableDistance;
 
+/*
+ * Identical feature vectors share a single node, whatever their classes: the node keeps
+ * them as members, in arrival order, with the number of members of each class. A query
+ * computes the distance to the node once and offers its members as that many
+ * neighbours, so the results are those of a tree holding one node per instance, while
+ * duplicate-heavy windows build and search much smaller trees.
+ */
 public class KDTreeCanberra extends NearestNeighbourSearch implements StreamNeighborSearch {
 
 	private static final long serialVersionUID = 1L;
@@ -53,6 +62,10 @@ public class KDTreeCanberra extends NearestNeighbourSearch implements StreamNeig
 	protected ArrayList<Instance> instancesList = new ArrayList<>();
 	
 	ArrayList<Double> distancesList = new ArrayList<Double>();
+
+	private double[] lastDistances = new double[0];
+
+	private double[] targetValues = new double[0];
 	
 	protected int[] m_InstList;
 	
@@ -60,11 +73,22 @@ public class KDTreeCanberra extends NearestNeighbourSearch implements StreamNeig
 	
 	private KDTreeNode m_Root = null;
 
+	private NodeHandles handles = new NodeHandles();
+
 	private int numNodesDeactivated = 0;
 	
 	NormalizableDistance distanceFunction;
 	
-	private int initialNumInstances = 0;
+	private int numNodes = 0;
+
+	private int initialNumNodes = 0;
+
+	/* Rebuild when this share of the nodes is deactivated, or the tree grew this much */
+	private static final double MAX_DEACTIVATED_RATIO = 0.3;
+	private static final int MAX_GROWTH_FACTOR = 2;
+
+	private long totalNodesVisited = 0;
+	private long totalDistancesComputed = 0;
 	
 	
 	public KDTreeCanberra() {
@@ -101,19 +125,30 @@ public class KDTreeCanberra extends NearestNeighbourSearch implements StreamNeig
 	public int getNumInstances() {
 		return this.numInstances;
 	}
+
+	@Override
+	public long getTotalNodesVisited() {
+		return this.totalNodesVisited;
+	}
+
+	@Override
+	public long getTotalDistancesComputed() {
+		return this.totalDistancesComputed;
+	}
 	
 	protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance target) {
 		
 		ArrayList<Double> distances = new ArrayList<Double>();
 
 		this.instancesList.clear();
+		this.totalNodesVisited++;
 		
-		double[] targetInfo = target.toDoubleArray();
+		FeatureRecord targetRecord = FeatureRecord.of(target);
 
 		if (node.isNodeActive()) {
 			double distanceToNode = this.distanceFunction.distance(node.getInstance(), target);
-				distances.add(distanceToNode);
-				this.instancesList.add(node.getInstance());
+			this.totalDistancesComputed++;
+			this.offerMembers(node, distanceToNode, distances);
 		}
 		
 		KDTreeNode best = null;
@@ -121,7 +156,7 @@ public class KDTreeCanberra extends NearestNeighbourSearch implements StreamNeig
 		
 		if (node.m_Right != null && node.m_Left != null) {
 
-			if (targetInfo[node.splitDim] >= node.getInfo()[node.splitDim]) {
+			if (targetRecord.attributeValue(node.splitDim) >= node.getSplitVal(node.splitDim)) {
 				best = node.m_Right;
 				other = node.m_Left;
 			} else {
@@ -145,7 +180,7 @@ public class KDTreeCanberra extends NearestNeighbourSearch implements StreamNeig
 		}
 
 		if (other != null) {
-			if (isToSearchNode(node, target, node.splitDim, maximum) || distances.size() < this.numNeighbours) {
+			if (isToSearchNode(other, maximum) || distances.size() < this.numNeighbours) {
 				distances = getDistancesOfBranches(other, target, distances);
 			}
 		}
@@ -157,6 +192,7 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 		
 		if (node == null)
 			return distances;
+		this.totalNodesVisited++;
 	
 
 		// this.nodesSearched++;
@@ -164,37 +200,18 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 		
 		if (node.isNodeActive()) {
 			double distanceToNode = this.distanceFunction.distance(node.getInstance(), target);
-			if (distances.size() < this.numNeighbours) {
-				distances.add(distanceToNode);
-				this.instancesList.add(node.getInstance());			
-		}
-		else {
-			double maximum = distances.get(0);
-			int maxIndex = 0;
-			for (int i = 0; i < distances.size(); i++) {
-				double toTest = distances.get(i);
-				if (toTest > maximum) {
-					maximum = toTest;
-					maxIndex = i;
-				}
-			}
-			if (distanceToNode <= distances.get(maxIndex)) {
-				distances.remove(maxIndex);
-				distances.add(distanceToNode);
-				this.instancesList.remove(maxIndex);
-				this.instancesList.add(node.getInstance());				
-			}
-		}
+			this.totalDistancesComputed++;
+			this.offerMembers(node, distanceToNode, distances);
 		}
 		
-		double[] targetInfo = target.toDoubleArray();
+		FeatureRecord targetRecord = FeatureRecord.of(target);
 		
 		if (node.m_Right != null && node.m_Left != null) {
 						
 			KDTreeNode best = null;
 			KDTreeNode other = null;
 			
-			if (targetInfo[node.splitDim] >= node.getInfo()[node.splitDim]) {
+			if (targetRecord.attributeValue(node.splitDim) >= node.getSplitVal(node.splitDim)) {
 				best = node.m_Right;
 				other = node.m_Left;
 			} else {
@@ -204,26 +221,26 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 			
 			double maximum = Double.NEGATIVE_INFINITY;
 
-			for (int i = 1; i < distances.size(); i++) {
+			for (int i = 0; i < distances.size(); i++) {
 				double toTest = distances.get(i);
 				if (toTest > maximum)
 					maximum = toTest;
 			}
 
-			if (isToSearchNode(node, target, node.splitDim, maximum) || distances.size() < this.numNeighbours) {
+			if (isToSearchNode(best, maximum) || distances.size() < this.numNeighbours) {
 				distances = getDistancesOfBranches(best, target, distances);
 			}
 
 			maximum = Double.NEGATIVE_INFINITY;
 
-			for (int i = 1; i < distances.size(); i++) {
+			for (int i = 0; i < distances.size(); i++) {
 				double toTest = distances.get(i);
 				if (toTest > maximum)
 					maximum = toTest;
 			}
 
 			if (other != null) {
-				if (isToSearchNode(node, target, node.splitDim, maximum) || distances.size() < this.numNeighbours) {
+				if (isToSearchNode(other, maximum) || distances.size() < this.numNeighbours) {
 					distances = getDistancesOfBranches(other, target, distances);
 				}
 			}
@@ -236,6 +253,42 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 		return distances;
 	}
 
+	/*
+	 * Offers the members of node, all at distanceToNode, as neighbours. Only the
+	 * numNeighbours most recent members can be kept, and they are offered last, so the
+	 * most recent ones win the ties.
+	 */
+	private void offerMembers(KDTreeNode node, double distanceToNode, ArrayList<Double> distances) {
+		int numMembers = node.numMembers();
+		for (int i = Math.max(0, numMembers - this.numNeighbours); i < numMembers; i++) {
+			this.offer(node.getMember(i), distanceToNode, distances);
+		}
+	}
+
+	private void offer(Instance inst, double distance, ArrayList<Double> distances) {
+		if (distances.size() < this.numNeighbours) {
+			distances.add(distance);
+			this.instancesList.add(inst);
+			return;
+		}
+
+		double maximum = distances.get(0);
+		int maxIndex = 0;
+		for (int i = 0; i < distances.size(); i++) {
+			double toTest = distances.get(i);
+			if (toTest > maximum) {
+				maximum = toTest;
+				maxIndex = i;
+			}
+		}
+		if (distance <= maximum) {
+			distances.remove(maxIndex);
+			distances.add(distance);
+			this.instancesList.remove(maxIndex);
+			this.instancesList.add(inst);
+		}
+	}
+
 	@Override
 	public Instances kNearestNeighbours(Instance target, int k) throws Exception {
 
@@ -244,6 +297,12 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 		}
 		
 		this.numNeighbours = k;
+		// The record of the target is built once instead of at every node visited
+		target = FeatureInstance.of(target);
+
+		if (this.targetValues.length != this.nDims)
+			this.targetValues = new double[this.nDims];
+		FlatKDTree.loadFeatures(target, this.targetValues, 0);
 		
 		ArrayList<Double> distances =  this.getDistancesOfBranches(m_Root, target);
 		
@@ -257,8 +316,10 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 			kNeighbors = this.numNeighbours;
 		
 		
+		this.lastDistances = new double[kNeighbors];
 		for (int i = 0; i < kNeighbors; i++) {
 			instances.add(this.instancesList.get(i));
+			this.lastDistances[i] = distances.get(i);
 		}
 		
 		Instances insts = InstancesUtils.gerarDataset(instances, "Neighbors found");
@@ -267,9 +328,15 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 		
 	}
 
+	@Override
+	public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception {
+		Instances neighbours = this.kNearestNeighbours(target, k);
+		return NeighborSet.fromInstances(neighbours, this.lastDistances, target.numClasses());
+	}
+
 	@Override
 	public double[] getDistances() throws Exception {
-		return null;
+		return this.lastDistances;
 	}
 
 	public void printDistances() {
@@ -280,130 +347,22 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 	
 	@Override
 	public void update(Instance ins) throws Exception {
+		this.addInstance(ins);
+	}
+
+	/*
+	 * Inserts ins and returns its handle, which can be given to removeHandle.
+	 */
+	@Override
+	public int addInstance(Instance ins) throws Exception {
 		if (this.numInstances == 0) {
 			throw new InitializationException("Tree was not created. "
 					+ "Please call the BuildKDTree method first");
 		}
 		// this.distanceFunction.getInstances().add(ins);
-		this.insert(ins);		
-	}
-	
-	private void buildKDTreeBalanced(ArrayList<Instance> insts, int depth) throws Exception {
-		ArrayList<Double> values = new ArrayList<Double>();
-		
-		if (insts.size() == 0)
-			return;
-		
-		if (insts.size() == 1){
-			this.insert(insts.get(0));;
-			return;
-		}
-
-			if (insts.size() == 2) {
-				Instance inst1 = insts.get(0);
-				Instance inst2 = insts.get(1);
-	
-				if (inst1.toDoubleArray()[depth] >= inst2.toDoubleArray()[depth]) {
-					this.insert(inst1);
-					this.insert(inst2);
-					return;
-				} else {
-					this.insert(inst2);
-					this.insert(inst1);
-					return;
-				}
-	
-			}
-		
-		
-		for (int i = 0; i < insts.size(); i++) {
-			values.add(insts.get(i).toDoubleArray()[depth]);
-		}
-		
-		double median = getMedian(values);
-		
-		Instance medianInstance = null;
-		
-		ArrayList<Instance> instancesToTheLeft = new ArrayList<Instance>();
-		ArrayList<Instance> instancesToTheRight = new ArrayList<Instance>();
-		
-			for (int i = 0; i < insts.size(); i++) {
-				if(insts.get(i).toDoubleArray()[depth] == median && medianInstance == null) {
-					medianInstance = insts.get(i);
-				}
-				else if (insts.get(i).toDoubleArray()[depth] < median)
-					instancesToTheLeft.add(insts.get(i));
-				else
-					instancesToTheRight.add(insts.get(i));
-			}
-		
-		this.insert(medianInstance);
-
-		buildKDTreeBalanced(instancesToTheLeft, (depth+1)%this.nDims);
-		buildKDTreeBalanced(instancesToTheRight, (depth+1)%this.nDims);
-		
-	}
-	
-	private void buildKDTreeBalanced(Instances insts, int depth) throws Exception {
-		ArrayList<Double> values = new ArrayList<Double>();
-		
-		if (insts.size() == 0)
-			throw new InstanceNotFoundException("Instance list is empty.");
-		
-		if (insts.size() == 1){
-			this.insert(insts.get(0));
-			return;
-		}
-		
-		if (insts.size() == 2) {
-			Instance inst1 = insts.get(0);
-			Instance inst2 = insts.get(1);
-
-			if (inst1.toDoubleArray()[depth] >= inst2.toDoubleArray()[depth]) {
-				this.insert(inst1);
-				this.insert(inst2);
-			} else {
-				this.insert(inst2);
-				this.insert(inst1);
-			}
-			return;
-		}
-		
-		for (int i = 0; i < insts.size(); i++) {
-			values.add(insts.get(i).toDoubleArray()[depth]);
-		}
-		
-		double median = getMedian(values);
-		
-		Instance medianInstance = null;
-		
-		ArrayList<Instance> instancesToTheLeft = new ArrayList<Instance>();
-		ArrayList<Instance> instancesToTheRight = new ArrayList<Instance>();
-		
-		for (int i = 0; i < insts.size(); i++) {
-			if(insts.get(i).toDoubleArray()[depth] == median && medianInstance == null) {
-				medianInstance = insts.get(i);
-			}
-			else if (insts.get(i).toDoubleArray()[depth] < median)
-				instancesToTheLeft.add(insts.get(i));
-			else
-				instancesToTheRight.add(insts.get(i));
-		}
-		
-		this.insert(medianInstance);
-
-		buildKDTreeBalanced(instancesToTheLeft, (depth+1)%this.nDims);
-		buildKDTreeBalanced(instancesToTheRight, (depth+1)%this.nDims);		
+		return this.insert(ins);
 	}
 	
-	protected double getMedian(ArrayList<Double> values) {
-		
-		Collections.sort(values);
-        return values.get( (int) (values.size() + 1) / 2 - 1);
-		
-	}
-	
-	
 	@Override
 	public void setInstances(Instances instances) throws Exception {
 		super.setInstances(instances);
@@ -416,24 +375,109 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 		this.buildKDTree(instances);
 	}
 	
+	/*
+	 * Builds the tree over the window entries themselves, which key the nodes, so they
+	 * are removed without a search. The Canberra distance needs no copy of the window to
+	 * normalize its attributes.
+	 */
+	@Override
+	public void setInstances(List<Instance> window) throws Exception {
+		if (this.nDims == 0){
+			this.nDims = window.get(0).numAttributes()-1;
+			this.a = this.nDims/this.factor;
+			this.a = FastMath.max(a, 1);
+		}
+		this.buildKDTree(window);
+	}
+
 	public void buildKDTree(Instances instances) throws Exception {
-		
-		this.buildKDTreeBalanced(instances, 0);
+		List<Instance> list = new ArrayList<Instance>(instances.size());
+		for (int i = 0; i < instances.size(); i++) {
+			list.add(instances.get(i));
+		}
+		this.buildKDTree(list);
+	}
+
+	/*
+	 * Builds a node for every distinct feature vector, the first instance holding it
+	 * standing for the others.
+	 */
+	public void buildKDTree(List<Instance> instances) throws Exception {
+
+		if (instances.size() == 0)
+			throw new InstanceNotFoundException("Instance list is empty.");
+
+		HashMap<FeatureKey, Integer> distinctIndexes = new HashMap<FeatureKey, Integer>();
+		List<Instance> distinct = new ArrayList<Instance>();
+		int[] nodeIndexes = new int[instances.size()];
+		for (int i = 0; i < instances.size(); i++) {
+			Instance inst = instances.get(i);
+			Integer index = distinctIndexes.putIfAbsent(new FeatureKey(FeatureRecord.of(inst)), distinct.size());
+			if (index == null) {
+				index = distinct.size();
+				distinct.add(inst);
+			}
+			nodeIndexes[i] = index;
+		}
+
+		KDTreeNode[] nodes = new KDTreeNode[distinct.size()];
+		this.m_Root = KDTreeBulkLoader.buildNodes(distinct, this.nDims, nodes);
+		this.computeRanges(this.m_Root);
+		this.handles.clear();
+		for (int i = 0; i < instances.size(); i++) {
+			KDTreeNode node = nodes[nodeIndexes[i]];
+			node.addMember(instances.get(i));
+			this.handles.issue(instances.get(i), node);
+		}
+		this.numInstances = instances.size();
+		this.numNodes = nodes.length;
+		this.numNodesDeactivated = 0;
+
+		this.initialNumNodes = this.numNodes;
+	}
 
-		this.initialNumInstances = this.numInstances;
+	public int getNumNodes() {
+		return this.numNodes;
+	}
+
+	/*
+	 * Sets the range of every node to the bounding box of its subtree.
+	 */
+	private void computeRanges(KDTreeNode node) {
+		if (node == null)
+			return;
+		double[] values = new double[this.nDims];
+		FlatKDTree.loadFeatures(node.getInstance(), values, 0);
+		node.lVex = null;
+		node.updateRange(values);
+		if (node.m_Left != null) {
+			this.computeRanges(node.m_Left);
+			node.updateRange(node.m_Left);
+		}
+		if (node.m_Right != null) {
+			this.computeRanges(node.m_Right);
+			node.updateRange(node.m_Right);
+		}
 	}
 	
-	protected void insert(Instance inst) throws Exception {
+	protected int insert(Instance inst) throws Exception {
 		
 		KDTreeNode p = this.m_Root;
 		KDTreeNode prev = null;
-		double[] info = inst.toDoubleArray();
+		FeatureRecord record = FeatureRecord.of(inst);
+		double[] values = new double[this.nDims];
+		FlatKDTree.loadFeatures(inst, values, 0);
 		
 		int i = 0;
 		
 		while (p != null) {
 			prev = p;
-			if (info[i] < p.getInfo()[i])
+			p.updateRange(values);
+			double value = record.attributeValue(i);
+			// An identical point lies on the path, as its values lead the same way
+			if (value == p.getSplitVal(i) && record.sameFeatures(FeatureRecord.of(p.getInstance())))
+				return this.addMember(p, inst);
+			if (value < p.getSplitVal(i))
 				p = p.m_Left;
 			else
 				p = p.m_Right;
@@ -444,40 +488,70 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 		if (index < 0)
 			index = nDims-1;
 		
+		KDTreeNode node = new KDTreeNode(inst, i);
+		node.updateRange(values);
 		if (this.m_Root == null)
-			this.m_Root = new KDTreeNode(inst, i);
-		else if (info[index] < prev.getInfo()[index]) 
-			prev.m_Left = new KDTreeNode(inst, i);
+			this.m_Root = node;
+		else if (record.attributeValue(index) < prev.getSplitVal(index)) 
+			prev.m_Left = node;
 		else
-			prev.m_Right = new KDTreeNode(inst, i);
-		this.numInstances++;		
+			prev.m_Right = node;
+		this.numNodes++;
+		return this.addMember(node, inst);
 		}
+
+	private int addMember(KDTreeNode node, Instance inst) {
+		if (!node.isNodeActive()) {
+			node.setFlagTrue();
+			this.numNodesDeactivated--;
+		}
+		node.addMember(inst);
+		this.numInstances++;
+		return this.handles.issue(inst, node);
+	}
 	
 	public void removeInstance(Instance inst) throws Exception {
+		this.remove(inst, this.handles.release(inst));
+	}
+
+	@Override
+	public void removeHandle(int handle, Instance inst) throws Exception {
+		KDTreeNode node = this.handles.release(handle, inst);
+		this.remove(inst, node != null ? node : this.handles.release(inst));
+	}
+
+	private void remove(Instance inst, KDTreeNode node) throws Exception {
 		
-		KDTreeNode nodeToRemove = search(inst, m_Root);
-		
-		if (nodeToRemove == null)
-			throw new InstanceNotFoundException("Instance not found on KDTree. Is there any missing data on the dataset?");
+		// The instance itself is found first, so an equal duplicate is never removed instead
+		if (node == null || !node.removeMember(inst)) {
+			// Otherwise the oldest member with the same values and class goes
+			node = search(inst, m_Root);
+			Instance member = node == null ? null : node.removeMemberOfClass(inst.classValue());
+			if (member == null)
+				throw new InstanceNotFoundException("Instance not found on KDTree. Is there any missing data on the dataset?");
+			this.handles.release(member);
+		}
 		
-		delete(nodeToRemove);
+		if (node.numMembers() == 0)
+			delete(node);
 		this.numInstances--;
 	}
 	
 	public KDTreeNode search(Instance inst, KDTreeNode node) throws Exception {
-		double[] instInfo = inst.toDoubleArray();
+		FeatureRecord record = FeatureRecord.of(inst);
 		
 		if (node == null)
 			return null;
 		
-		if (isInstanceEqual(inst, node.getInstance()) && node.isNodeActive())
+		if (node.isNodeActive() && node.getClassCount(inst.classValue()) > 0
+				&& record.sameFeatures(FeatureRecord.of(node.getInstance())))
 			return node;
 		
 
 
 		KDTreeNode nodeToReturn = null;
 		
-		if (instInfo[node.splitDim] < node.getInfo()[node.splitDim]) {
+		if (record.attributeValue(node.splitDim) < node.getSplitVal(node.splitDim)) {
 			nodeToReturn = search(inst, node.m_Left);
 		}
 		else {
@@ -491,11 +565,11 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 	public boolean isToRebuild() {
 		boolean retorno = false;
 
-		if (((double) this.numNodesDeactivated / (double) this.numInstances >= 0.3)) {
+		if (((double) this.numNodesDeactivated / (double) this.numNodes >= MAX_DEACTIVATED_RATIO)) {
 			retorno = true;
 		}
 
-		if (this.numInstances > this.initialNumInstances*2) {
+		if (this.numNodes > this.initialNumNodes * MAX_GROWTH_FACTOR) {
 			retorno = true;
 		}
 
@@ -503,30 +577,10 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 		return retorno;
 	}
 	
-	private boolean isInstanceEqual(Instance inst1, Instance inst2) {	
-		
-		boolean found = true;
-		
-		double[] infoInst1 = inst1.toDoubleArray();
-		double[] infoInst2 = inst2.toDoubleArray();
-		
-		for (int i = 0; i < infoInst1.length; i++) {
-			if (infoInst1[i] != infoInst2[i]) {
-				found = false;
-				break;
-			}
-		}
-		return found;
-	}
-	
 	protected void delete(KDTreeNode p) throws Exception {
 		
-		if (p.isALeaf()) {
-			p = null;
-			return;
-		}
-			p.setFlagFalse();
-			this.numNodesDeactivated++;
+		p.setFlagFalse();
+		this.numNodesDeactivated++;
 	}
 	
 	@Override
@@ -538,25 +592,36 @@ protected ArrayList<Double> getDistancesOfBranches(KDTreeNode node, Instance tar
 	    return insts;
 	  }
 
-	private boolean isToSearchNode(KDTreeNode root, Instance target, int splitDim, double maximum) {
-
-		double minimumDistance = target.toDoubleArray()[splitDim] - root.getInfo()[splitDim];
-		double denominator = FastMath.abs(target.toDoubleArray()[splitDim]) + FastMath.abs(root.getInfo()[splitDim]);
-
-		double modDist = 0;
+	/*
+	 * Key of the distinct feature vectors of a build.
+	 */
+	private static final class FeatureKey {
 
-		if (denominator != 0) {
-			modDist = FastMath.abs(minimumDistance) / denominator;
-		}		
+		private final FeatureRecord record;
+		private final int hash;
 
+		FeatureKey(FeatureRecord record) {
+			this.record = record;
+			this.hash = record.featureHash();
+		}
 
-		// double compare = a*modDist;
-		double compare = 1*modDist;
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
 
-		if (compare <= maximum)
-			return true;
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof FeatureKey && this.record.sameFeatures(((FeatureKey) other).record);
+		}
+	}
 
-		return false;
+	/*
+	 * A subtree is searched unless the Canberra distance from the target to its range
+	 * exceeds the distance of the farthest neighbour found so far.
+	 */
+	private boolean isToSearchNode(KDTreeNode node, double maximum) {
+		return CanberraDistance.boxDistance(this.targetValues, node.lVex, node.uVex, 0, this.nDims, maximum) <= maximum;
 	}
 
 }
@@ -2,6 +2,7 @@ package datastructures;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import com.yahoo.labs.samoa.instances.Instance;
 
@@ -19,6 +20,14 @@ public class KDTreeNode implements Serializable {
 	public ArrayList<KDTreeNode> children;
 	
 	public double[][] m_nodeRanges;
+
+	/*
+	 * Instances sharing the feature values of the node, oldest first, for the trees that
+	 * collapse identical points (see KDTreeCanberra), with the number of members of each
+	 * class. m_InstanceInfo stays the representative of the node once it is removed.
+	 */
+	private ArrayList<Instance> members;
+	private int[] classCounts;
 	
 	public KDTreeNode() throws Exception {
 	}
@@ -38,8 +47,68 @@ public class KDTreeNode implements Serializable {
 		return this.m_InstanceInfo;
 	}
 	
+	public void addMember(Instance inst) {
+		int classIndex = (int) inst.classValue();
+		if (this.members == null) {
+			this.members = new ArrayList<Instance>(1);
+			this.classCounts = new int[classIndex + 1];
+		}
+		this.members.add(inst);
+		if (classIndex >= this.classCounts.length)
+			this.classCounts = Arrays.copyOf(this.classCounts, classIndex + 1);
+		this.classCounts[classIndex]++;
+	}
+
+	public int numMembers() {
+		return this.members == null ? 0 : this.members.size();
+	}
+
+	public Instance getMember(int position) {
+		return this.members.get(position);
+	}
+
+	public int getClassCount(double classValue) {
+		int classIndex = (int) classValue;
+		return this.members == null || classIndex >= this.classCounts.length ? 0 : this.classCounts[classIndex];
+	}
+
+	/*
+	 * Removes inst itself from the members, and returns whether it was one.
+	 */
+	public boolean removeMember(Instance inst) {
+		for (int i = 0; i < this.numMembers(); i++) {
+			if (this.members.get(i) == inst) {
+				this.removeMemberAt(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Removes the oldest member of the given class and returns it, or null if there is
+	 * none.
+	 */
+	public Instance removeMemberOfClass(double classValue) {
+		if (this.getClassCount(classValue) == 0)
+			return null;
+		for (int i = 0; i < this.members.size(); i++) {
+			Instance member = this.members.get(i);
+			if (member.classValue() == classValue) {
+				this.removeMemberAt(i);
+				return member;
+			}
+		}
+		return null;
+	}
+
+	private void removeMemberAt(int position) {
+		Instance member = this.members.remove(position);
+		this.classCounts[(int) member.classValue()]--;
+	}
+
 	public double getSplitVal(int splitDim) {
-		return this.m_InstanceInfo.toDoubleArray()[splitDim];
+		return FeatureRecord.of(this.m_InstanceInfo).attributeValue(splitDim);
 	}
 
 	
@@ -64,24 +133,38 @@ public class KDTreeNode implements Serializable {
 	}
 
 	public void updateRange(Instance inst) {
-		double[] instInfo = inst.toDoubleArray();
-		if (lVex == null){
-			lVex = instInfo;
-			uVex = instInfo;
+		double[] values = new double[inst.numAttributes() - 1];
+		FlatKDTree.loadFeatures(inst, values, 0);
+		this.updateRange(values);
+	}
+
+	/*
+	 * Extends the range of the node (lVex, uVex) to hold the given feature values.
+	 */
+	public void updateRange(double[] values) {
+		if (this.lVex == null) {
+			this.lVex = values.clone();
+			this.uVex = values.clone();
 		} else {
-			for (int i = 0; i < instInfo.length; i++) {
-				if (instInfo[i] < this.lVex[i]) {
-					this.lVex[i] = instInfo[i];
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] < this.lVex[i]) {
+					this.lVex[i] = values[i];
 				}
-				if (instInfo[i] > this.uVex[i]) {
-					this.uVex[i] = instInfo[i];
+				if (values[i] > this.uVex[i]) {
+					this.uVex[i] = values[i];
 				}
 			}
 		}
 	}
 
+	public void updateRange(KDTreeNode child) {
+		this.updateRange(child.lVex);
+		this.updateRange(child.uVex);
+	}
+
 	public boolean isInRange(Instance inst) {
-		double[] instInfo = inst.toDoubleArray();
+		double[] instInfo = new double[inst.numAttributes() - 1];
+		FlatKDTree.loadFeatures(inst, instInfo, 0);
 		boolean inRange = true;
 
 		for (int i = 0; i < instInfo.length; i++) {
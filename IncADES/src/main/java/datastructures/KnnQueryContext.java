@@ -0,0 +1,186 @@
+/*
+*    KnnQueryContext.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datastructures;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.NeighborSet;
+
+/*
+ * Scratch space of a k nearest neighbours query. There is one context per thread,
+ * shared by every index, so a query does not allocate once the buffers have grown to
+ * the largest k, dimensionality and tree depth seen by that thread.
+ */
+public class KnnQueryContext {
+
+	private static final ThreadLocal<KnnQueryContext> CONTEXTS = ThreadLocal.withInitial(KnnQueryContext::new);
+
+	public final BoundedMaxHeap heap = new BoundedMaxHeap(8);
+
+	public int[] stack = new int[64];
+	public double[] bounds = new double[64];
+
+	public double[] query = new double[0];
+
+	public double[] distances = new double[8];
+	public int[] slots = new int[8];
+	public int size = 0;
+
+	public double[] scanDistances = new double[0];
+
+	/* Rows decoded from a compact CoordinateStore */
+	public double[] decoded = new double[0];
+
+	/* Beam and frontier of graph searches */
+	public final BoundedMaxHeap beam = new BoundedMaxHeap(8);
+	public final CandidateQueue frontier = new CandidateQueue(64);
+
+	/* A slot was visited by the current graph search when its mark equals mark */
+	public int[] marks = new int[0];
+	public int mark = 0;
+
+	public final NeighborSet neighborSet = new NeighborSet();
+
+	/* Neighbours each classifier of the pool hits, for the dynamic selection */
+	public int[] hits = new int[0];
+
+	private ReusableInstances neighbours;
+	private Instances neighboursHeader;
+
+	public static KnnQueryContext get() {
+		return CONTEXTS.get();
+	}
+
+	/*
+	 * Empties the heap and returns the query buffer, both sized for a query of k
+	 * neighbours over nDims features.
+	 */
+	public double[] begin(int k, int nDims) {
+		this.heap.reset(k);
+		if (this.distances.length < k) {
+			this.distances = new double[k];
+			this.slots = new int[k];
+		}
+		if (this.query.length < nDims)
+			this.query = new double[nDims];
+		this.size = 0;
+		return this.query;
+	}
+
+	/*
+	 * Makes room for at least required entries on the traversal stack.
+	 */
+	public void ensureStack(int required) {
+		if (required > this.stack.length) {
+			int capacity = Math.max(required, this.stack.length * 2);
+			this.stack = Arrays.copyOf(this.stack, capacity);
+			this.bounds = Arrays.copyOf(this.bounds, capacity);
+		}
+	}
+
+	/*
+	 * Returns the buffer for the distances of a scan over count points.
+	 */
+	public double[] scanBuffer(int count) {
+		if (this.scanDistances.length < count)
+			this.scanDistances = new double[Math.max(count, this.scanDistances.length * 2)];
+		return this.scanDistances;
+	}
+
+	/*
+	 * Returns the buffer for length values decoded from a CoordinateStore.
+	 */
+	public double[] decodeBuffer(int length) {
+		if (this.decoded.length < length)
+			this.decoded = new double[Math.max(length, this.decoded.length * 2)];
+		return this.decoded;
+	}
+
+	/*
+	 * Returns the buffer for the hits of count classifiers.
+	 */
+	public int[] hitBuffer(int count) {
+		if (this.hits.length < count)
+			this.hits = new int[Math.max(count, this.hits.length * 2)];
+		return this.hits;
+	}
+
+	/*
+	 * Starts a graph search over numSlots slots and returns the mark of its visits.
+	 * Marks are only cleared when the counter wraps around.
+	 */
+	public int beginMarks(int numSlots) {
+		if (this.marks.length < numSlots)
+			this.marks = Arrays.copyOf(this.marks, Math.max(numSlots, this.marks.length * 2));
+		if (++this.mark == Integer.MAX_VALUE) {
+			Arrays.fill(this.marks, 0);
+			this.mark = 1;
+		}
+		return this.mark;
+	}
+
+	/*
+	 * Moves the heap content into distances/slots in ascending order of distance.
+	 */
+	public int finish() {
+		this.size = this.heap.drainAscending(this.distances, this.slots);
+		return this.size;
+	}
+
+	/*
+	 * Ranks the candidates left by finish() again with the exact values of their
+	 * instances, keeping the k closest, for indexes searching approximate coordinates.
+	 */
+	public int rerank(int k, int nDims, DistanceKernel kernel, IntFunction<Instance> instances) {
+		double[] values = this.decodeBuffer(nDims);
+		int count = this.size;
+		this.heap.reset(k);
+		for (int i = 0; i < count; i++) {
+			int slot = this.slots[i];
+			Instance inst = instances.apply(slot);
+			double[] exact = values;
+			if (inst instanceof FeatureInstance && !((FeatureInstance) inst).getRecord().isSparse())
+				exact = ((FeatureInstance) inst).getRecord().features();
+			else
+				FlatKDTree.loadFeatures(inst, values, 0);
+			this.heap.offer(kernel.distance(this.query, 0, exact, 0, nDims, this.heap.worstDistance()), slot);
+		}
+		return this.finish();
+	}
+
+	/*
+	 * Returns the neighbours container of this thread, emptied. It is overwritten by
+	 * the next query made on the same thread.
+	 */
+	ReusableInstances neighbours(Instance target, int capacity) {
+		if (this.neighbours == null || this.neighboursHeader != target.dataset()) {
+			this.neighbours = new ReusableInstances(target, capacity);
+			this.neighboursHeader = target.dataset();
+		}
+		this.neighbours.clearNeighbours();
+		return this.neighbours;
+	}
+}
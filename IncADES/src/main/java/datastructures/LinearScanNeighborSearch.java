@@ -0,0 +1,358 @@
+/*
+*    LinearScanNeighborSearch.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import javax.management.InstanceNotFoundException;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import incades.neighborsearch.CanberraKernel;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.NeighborSet;
+import incades.neighborsearch.StreamNeighborSearch;
+import moa.classifiers.lazy.neighboursearch.NearestNeighbourSearch;
+
+/*
+ * Exhaustive search over the points kept in one contiguous array, row after row. For
+ * the small windows left after a drift, and for many attributes, it is cheaper than
+ * any tree: there is nothing to build, and the kernel computes the distances of a
+ * block of rows at once, with the Vector API when it is available.
+ *
+ * A removed point is replaced by the last row, so the rows stay contiguous. Rows thus
+ * move, and handles are mapped to them through rowOfHandle and handleOfRow.
+ *
+ * The rows can be kept as floats or quantized codes (see CoordinateStore), which the
+ * scan decodes block by block. The closest candidates are then ranked again with the
+ * exact values of their instances.
+ */
+public class LinearScanNeighborSearch extends NearestNeighbourSearch implements StreamNeighborSearch {
+
+	private static final long serialVersionUID = 1L;
+
+	protected static final int NIL = -1;
+
+	/* Rows whose distances are computed before they are offered to the heap */
+	private static final int BLOCK_ROWS = 256;
+
+	private final DistanceKernel kernel;
+	private final CoordinateFormat format;
+
+	private int nDims = 0;
+	private int numRows = 0;
+
+	private CoordinateStore rows;
+	private double[] labels = new double[0];
+	private Instance[] instances = new Instance[0];
+	private IdentityHashMap<Instance, Integer> rowsByInstance = new IdentityHashMap<Instance, Integer>();
+
+	private int[] rowOfHandle = new int[0];
+	private int[] handleOfRow = new int[0];
+	private int[] freeHandles = new int[0];
+	private int numFreeHandles = 0;
+	private int numHandles = 0;
+
+	private double[] values = new double[0];
+
+	private transient IntFunction<Instance> resolver;
+
+	private long totalDistancesComputed = 0;
+
+	public LinearScanNeighborSearch() {
+		this(new CanberraKernel());
+	}
+
+	public LinearScanNeighborSearch(DistanceKernel kernel) {
+		this(kernel, CoordinateFormat.DOUBLE);
+	}
+
+	public LinearScanNeighborSearch(DistanceKernel kernel, CoordinateFormat format) {
+		super();
+		this.kernel = kernel;
+		this.format = format;
+	}
+
+	@Override
+	public Instance nearestNeighbour(Instance target) throws Exception {
+		Instances neighbours = this.kNearestNeighbours(target, 1);
+		return neighbours.get(0);
+	}
+
+	public int getNumInstances() {
+		return this.numRows;
+	}
+
+	/*
+	 * A scan visits no node, and computes the distance to every row.
+	 */
+	@Override
+	public long getTotalNodesVisited() {
+		return 0;
+	}
+
+	@Override
+	public long getTotalDistancesComputed() {
+		return this.totalDistancesComputed;
+	}
+
+	/*
+	 * The returned Instances belongs to the query context of the calling thread and is
+	 * overwritten by the next query made on that thread.
+	 */
+	@Override
+	public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+
+		ReusableInstances neighbours = context.neighbours(target, k);
+		for (int i = 0; i < context.size; i++) {
+			neighbours.addNeighbour(this.instances[context.slots[i]]);
+		}
+
+		return neighbours;
+	}
+
+	/*
+	 * Neighbours are identified by their rows, which are valid until the index is
+	 * updated.
+	 */
+	@Override
+	public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+
+		NeighborSet neighbours = context.neighborSet;
+		neighbours.clear(target.numClasses(), this.getResolver());
+		for (int i = 0; i < context.size; i++) {
+			int row = context.slots[i];
+			neighbours.add(row, context.distances[i], this.labels[row]);
+		}
+
+		return neighbours;
+	}
+
+	private IntFunction<Instance> getResolver() {
+		if (this.resolver == null)
+			this.resolver = row -> this.instances[row];
+		return this.resolver;
+	}
+
+	private KnnQueryContext search(Instance target, int k) throws Exception {
+
+		if (this.nDims == 0) {
+			throw new Exception("The index was not initialized. Please use the method setInstances(Instances)");
+		}
+
+		boolean exact = this.rows.isExact();
+		KnnQueryContext context = KnnQueryContext.get();
+		double[] query = context.begin(exact ? k : CoordinateStore.rerankSize(k), this.nDims);
+		FlatKDTree.loadFeatures(target, query, 0);
+
+		BoundedMaxHeap heap = context.heap;
+		int blockRows = Math.min(this.numRows, BLOCK_ROWS);
+		double[] distances = context.scanBuffer(blockRows);
+		double[] decoded = exact ? null : context.decodeBuffer(blockRows * this.nDims);
+		for (int from = 0; from < this.numRows; from += BLOCK_ROWS) {
+			int to = Math.min(this.numRows, from + BLOCK_ROWS);
+			this.rows.distances(this.kernel, query, 0, from, to, distances, 0, decoded);
+			for (int row = from; row < to; row++) {
+				heap.offer(distances[row - from], row);
+			}
+		}
+
+		this.totalDistancesComputed += this.numRows;
+		context.finish();
+		if (!exact)
+			context.rerank(k, this.nDims, this.kernel, this.getResolver());
+		return context;
+	}
+
+	@Override
+	public double[] getDistances() throws Exception {
+		KnnQueryContext context = KnnQueryContext.get();
+		return Arrays.copyOf(context.distances, context.size);
+	}
+
+	@Override
+	public void update(Instance inst) throws Exception {
+		this.addInstance(inst);
+	}
+
+	/*
+	 * Appends inst as the last row and returns its handle, which can be given to
+	 * removeHandle.
+	 */
+	@Override
+	public int addInstance(Instance inst) throws Exception {
+		if (this.nDims == 0) {
+			this.nDims = inst.numAttributes() - 1;
+			this.rows = CoordinateStore.create(this.format, this.nDims);
+		}
+
+		if (this.numRows == this.instances.length)
+			this.grow(Math.max(16, this.numRows * 2));
+
+		int row = this.numRows++;
+		this.rows.set(row, this.loadValues(inst), 0);
+		this.labels[row] = inst.classValue();
+		this.instances[row] = inst;
+		this.rowsByInstance.put(inst, row);
+
+		int handle = this.numFreeHandles > 0 ? this.freeHandles[--this.numFreeHandles] : this.numHandles++;
+		this.rowOfHandle[handle] = row;
+		this.handleOfRow[row] = handle;
+		return handle;
+	}
+
+	private void grow(int capacity) {
+		this.rows.grow(capacity);
+		this.labels = Arrays.copyOf(this.labels, capacity);
+		this.instances = Arrays.copyOf(this.instances, capacity);
+		this.rowOfHandle = Arrays.copyOf(this.rowOfHandle, capacity);
+		this.handleOfRow = Arrays.copyOf(this.handleOfRow, capacity);
+		this.freeHandles = Arrays.copyOf(this.freeHandles, capacity);
+	}
+
+	@Override
+	public void setInstances(Instances instances) throws Exception {
+		super.setInstances(instances);
+		List<Instance> window = new ArrayList<Instance>(instances.size());
+		for (int i = 0; i < instances.size(); i++) {
+			window.add(instances.get(i));
+		}
+		this.setInstances(window);
+	}
+
+	/*
+	 * Replaces the content of the index by references to the window instances.
+	 */
+	@Override
+	public void setInstances(List<Instance> window) throws Exception {
+		this.nDims = window.get(0).numAttributes() - 1;
+		this.numRows = 0;
+		this.numHandles = 0;
+		this.numFreeHandles = 0;
+		this.rowsByInstance.clear();
+		this.rows = CoordinateStore.create(this.format, this.nDims);
+		this.labels = new double[0];
+		this.instances = new Instance[0];
+		this.rowOfHandle = new int[0];
+		this.handleOfRow = new int[0];
+		this.freeHandles = new int[0];
+		this.grow(Math.max(16, window.size()));
+
+		for (Instance inst : window) {
+			this.rows.include(this.loadValues(inst), 0);
+		}
+		for (Instance inst : window) {
+			this.addInstance(inst);
+		}
+	}
+
+	/*
+	 * Removes inst itself when it was given to the index, so a duplicate is never removed
+	 * in its place. Other instances are looked up by value.
+	 */
+	@Override
+	public void removeInstance(Instance inst) throws Exception {
+
+		Integer mapped = this.rowsByInstance.get(inst);
+		int row = mapped != null ? mapped : this.indexOfEqual(inst);
+
+		if (row == NIL)
+			throw new InstanceNotFoundException("Instance not found on the index. Is there any missing data on the dataset?");
+
+		this.removeRow(row);
+	}
+
+	@Override
+	public void removeHandle(int handle, Instance inst) throws Exception {
+
+		if (handle < 0 || handle >= this.numHandles || this.rowOfHandle[handle] == NIL
+				|| this.instances[this.rowOfHandle[handle]] != inst) {
+			this.removeInstance(inst);
+			return;
+		}
+
+		this.removeRow(this.rowOfHandle[handle]);
+	}
+
+	/*
+	 * Moves the last row into the place of row.
+	 */
+	private void removeRow(int row) {
+		int handle = this.handleOfRow[row];
+		this.rowsByInstance.remove(this.instances[row]);
+		this.rowOfHandle[handle] = NIL;
+		this.freeHandles[this.numFreeHandles++] = handle;
+
+		int last = --this.numRows;
+		if (row != last) {
+			this.rows.copy(last, row);
+			this.labels[row] = this.labels[last];
+			this.instances[row] = this.instances[last];
+			this.handleOfRow[row] = this.handleOfRow[last];
+			this.rowOfHandle[this.handleOfRow[row]] = row;
+			this.rowsByInstance.put(this.instances[row], row);
+		}
+		this.instances[last] = null;
+	}
+
+	private double[] loadValues(Instance inst) {
+		if (this.values.length != this.nDims)
+			this.values = new double[this.nDims];
+		FlatKDTree.loadFeatures(inst, this.values, 0);
+		return this.values;
+	}
+
+	/*
+	 * Returns the first row holding the same feature values and class as inst, or NIL.
+	 * The values of the rows are read from their instances, as a compact store does not
+	 * keep them exactly.
+	 */
+	private int indexOfEqual(Instance inst) {
+		if (this.nDims == 0)
+			return NIL;
+
+		double[] values = this.loadValues(inst).clone();
+		double classValue = inst.classValue();
+
+		for (int row = 0; row < this.numRows; row++) {
+			if (this.labels[row] != classValue)
+				continue;
+			if (Arrays.equals(values, this.loadValues(this.instances[row])))
+				return row;
+		}
+		return NIL;
+	}
+
+	/*
+	 * There is no structure to maintain, so the index never needs to be rebuilt.
+	 */
+	@Override
+	public boolean isToRebuild() {
+		return false;
+	}
+
+}
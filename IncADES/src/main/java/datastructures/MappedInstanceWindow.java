@@ -0,0 +1,152 @@
+/*
+*    MappedInstanceWindow.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+/*
+ * Window kept in a MappedRecordRing instead of the heap. Only the values, class and
+ * weight of the instances are stored: get and removeFirst return new instances built
+ * from the records, with the header of the instances added last or queried. The
+ * operating system pages the records in and out, and the window is found again when
+ * the file is reopened.
+ *
+ * The ring is created on the first instance added, once its number of attributes is
+ * known, unless the file already holds one.
+ */
+public class MappedInstanceWindow extends InstanceWindow implements Closeable {
+
+	private final Path file;
+	private final int capacity;
+	private MappedRecordRing ring;
+	private Instances header;
+
+	private double[] values = new double[0];
+
+	public MappedInstanceWindow(Path file, int capacity) throws IOException {
+		this.file = file;
+		this.capacity = capacity;
+		if (Files.exists(file) && Files.size(file) > 0)
+			this.ring = MappedRecordRing.open(file);
+	}
+
+	/*
+	 * The ring of the window, null until the first instance is added to a new file.
+	 */
+	public MappedRecordRing getRing() {
+		return this.ring;
+	}
+
+	/*
+	 * Sets the header of the instances built from the records, when none was added yet.
+	 */
+	public void adoptHeader(Instances header) {
+		if (this.header == null)
+			this.header = header;
+	}
+
+	@Override
+	public void addLast(Instance inst) {
+		int nDims = inst.numAttributes() - 1;
+		try {
+			if (this.ring == null)
+				this.ring = MappedRecordRing.openOrCreate(this.file, nDims, this.capacity);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (nDims != this.ring.numDims())
+			throw new IllegalArgumentException("The window holds instances of " + this.ring.numDims()
+					+ " attributes besides the class, not " + nDims + ".");
+
+		this.header = inst.dataset();
+		FlatKDTree.loadFeatures(inst, this.values(nDims), 0);
+		this.ring.append(inst.classValue(), inst.weight(), this.values, 0);
+		this.modCount++;
+	}
+
+	@Override
+	public Instance removeFirst() {
+		if (this.isEmpty())
+			throw new NoSuchElementException();
+		Instance inst = this.instanceAt(this.ring.slotOf(0));
+		this.ring.removeFirst();
+		this.modCount++;
+		return inst;
+	}
+
+	@Override
+	public Instance get(int index) {
+		if (index < 0 || index >= this.size())
+			throw new IndexOutOfBoundsException("Index " + index + " out of a window of " + this.size() + ".");
+		return this.instanceAt(this.ring.slotOf(index));
+	}
+
+	/*
+	 * Builds the instance stored in slot of the ring, placing the class at the class
+	 * index of the header.
+	 */
+	public Instance instanceAt(int slot) {
+		if (this.header == null)
+			throw new IllegalStateException("No header is known yet to build the instances of the window.");
+
+		int classIndex = this.header.classIndex();
+		double[] attributes = new double[this.ring.numDims() + 1];
+		this.ring.readValues(slot, attributes, 0);
+		System.arraycopy(attributes, classIndex, attributes, classIndex + 1, attributes.length - classIndex - 1);
+		attributes[classIndex] = this.ring.label(slot);
+
+		Instance inst = new DenseInstance(this.ring.weight(slot), attributes);
+		inst.setDataset(this.header);
+		return inst;
+	}
+
+	private double[] values(int nDims) {
+		if (this.values.length != nDims)
+			this.values = new double[nDims];
+		return this.values;
+	}
+
+	@Override
+	public int size() {
+		return this.ring == null ? 0 : this.ring.size();
+	}
+
+	@Override
+	public void clear() {
+		if (this.ring != null)
+			this.ring.clear();
+		this.modCount++;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.ring != null)
+			this.ring.close();
+	}
+}
@@ -0,0 +1,250 @@
+/*
+*    MappedRecordRing.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * FIFO ring of fixed-width records in a memory-mapped file: the class value, the weight
+ * and the nDims feature values of an instance, as little-endian doubles. The file
+ * starts with a header holding the layout and the position of the ring, updated on
+ * every change, so a ring reopened after a restart holds the records it held before.
+ *
+ * Records are found by slot, their position in the file, which does not change while
+ * they are in the ring, or by index, counted from the oldest record. The file is mapped
+ * in segments of less than 2 GB, a single buffer being limited to that size.
+ */
+public class MappedRecordRing implements Closeable {
+
+	private static final long MAGIC = 0x474E495257455344L;
+	private static final int VERSION = 1;
+
+	/* Magic, version, nDims, capacity, first slot and size, padded to 64 bytes */
+	private static final int HEADER_BYTES = 64;
+	private static final int VERSION_OFFSET = 8;
+	private static final int DIMS_OFFSET = 12;
+	private static final int CAPACITY_OFFSET = 16;
+	private static final int FIRST_OFFSET = 20;
+	private static final int SIZE_OFFSET = 24;
+
+	private static final int LABEL = 0;
+	private static final int WEIGHT = 1;
+	private static final int VALUES = 2;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final MappedByteBuffer[] mappings;
+	private final DoubleBuffer[] segments;
+	private final int recordsPerSegment;
+
+	private final int nDims;
+	private final int recordLength;
+	private final int capacity;
+
+	private int first;
+	private int size;
+
+	private MappedRecordRing(Path file, FileChannel channel, int nDims, int capacity, boolean created)
+			throws IOException {
+		this.file = file;
+		this.channel = channel;
+		this.nDims = nDims;
+		this.capacity = capacity;
+		this.recordLength = nDims + VALUES;
+
+		long recordBytes = (long) this.recordLength * Double.BYTES;
+		this.recordsPerSegment = (int) Math.min(capacity, Integer.MAX_VALUE / recordBytes);
+		this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+		this.header.order(ByteOrder.LITTLE_ENDIAN);
+
+		int numSegments = (capacity + this.recordsPerSegment - 1) / this.recordsPerSegment;
+		this.mappings = new MappedByteBuffer[numSegments];
+		this.segments = new DoubleBuffer[numSegments];
+		for (int i = 0; i < numSegments; i++) {
+			int records = Math.min(this.recordsPerSegment, capacity - i * this.recordsPerSegment);
+			long position = HEADER_BYTES + i * this.recordsPerSegment * recordBytes;
+			this.mappings[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, records * recordBytes);
+			this.segments[i] = this.mappings[i].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		}
+
+		if (created) {
+			this.header.putLong(0, MAGIC);
+			this.header.putInt(VERSION_OFFSET, VERSION);
+			this.header.putInt(DIMS_OFFSET, nDims);
+			this.header.putInt(CAPACITY_OFFSET, capacity);
+			this.writePosition();
+		} else {
+			this.first = this.header.getInt(FIRST_OFFSET);
+			this.size = this.header.getInt(SIZE_OFFSET);
+		}
+	}
+
+	/*
+	 * Creates a ring of capacity records of nDims values in file.
+	 */
+	public static MappedRecordRing create(Path file, int nDims, int capacity) throws IOException {
+		if (nDims < 1 || capacity < 1)
+			throw new IllegalArgumentException("nDims and capacity must be at least 1.");
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		return new MappedRecordRing(file, channel, nDims, capacity, true);
+	}
+
+	/*
+	 * Reopens the ring stored in file, with the layout it was created with.
+	 */
+	public static MappedRecordRing open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if (channel.size() < HEADER_BYTES)
+				throw new IOException(file + " is not a record ring.");
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getLong(0) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION)
+				throw new IOException(file + " is not a record ring of version " + VERSION + ".");
+			return new MappedRecordRing(file, channel, header.getInt(DIMS_OFFSET), header.getInt(CAPACITY_OFFSET), false);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Reopens file when it holds a ring, and creates one otherwise. A ring of other
+	 * dimensions or capacity is an error, as the window would not match it.
+	 */
+	public static MappedRecordRing openOrCreate(Path file, int nDims, int capacity) throws IOException {
+		if (Files.exists(file) && Files.size(file) > 0) {
+			MappedRecordRing ring = open(file);
+			if (ring.nDims != nDims) {
+				ring.close();
+				throw new IOException(file + " holds records of " + ring.nDims + " values, not " + nDims + ".");
+			}
+			if (ring.capacity != capacity) {
+				ring.close();
+				throw new IOException(file + " holds a ring of " + ring.capacity + " records, not " + capacity + ".");
+			}
+			return ring;
+		}
+		return create(file, nDims, capacity);
+	}
+
+	public Path getFile() {
+		return this.file;
+	}
+
+	public int numDims() {
+		return this.nDims;
+	}
+
+	public int capacity() {
+		return this.capacity;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/*
+	 * Slot of the record at index, counted from the oldest.
+	 */
+	public int slotOf(int index) {
+		int slot = this.first + index;
+		return slot < this.capacity ? slot : slot - this.capacity;
+	}
+
+	public int append(double label, double weight, double[] values, int offset) {
+		if (this.size == this.capacity)
+			throw new IllegalStateException("The ring is full (" + this.capacity + " records).");
+
+		int slot = this.slotOf(this.size);
+		DoubleBuffer segment = this.segments[slot / this.recordsPerSegment];
+		int base = (slot % this.recordsPerSegment) * this.recordLength;
+		segment.put(base + LABEL, label);
+		segment.put(base + WEIGHT, weight);
+		segment.put(base + VALUES, values, offset, this.nDims);
+
+		this.size++;
+		this.writePosition();
+		return slot;
+	}
+
+	public void removeFirst() {
+		if (this.size == 0)
+			throw new IllegalStateException("The ring is empty.");
+		this.first = this.slotOf(1);
+		this.size--;
+		this.writePosition();
+	}
+
+	public void clear() {
+		this.first = 0;
+		this.size = 0;
+		this.writePosition();
+	}
+
+	private void writePosition() {
+		this.header.putInt(FIRST_OFFSET, this.first);
+		this.header.putInt(SIZE_OFFSET, this.size);
+	}
+
+	public double label(int slot) {
+		return this.segments[slot / this.recordsPerSegment]
+				.get((slot % this.recordsPerSegment) * this.recordLength + LABEL);
+	}
+
+	public double weight(int slot) {
+		return this.segments[slot / this.recordsPerSegment]
+				.get((slot % this.recordsPerSegment) * this.recordLength + WEIGHT);
+	}
+
+	/*
+	 * Copies the feature values of the record in slot to out, from outOffset.
+	 */
+	public void readValues(int slot, double[] out, int outOffset) {
+		this.segments[slot / this.recordsPerSegment]
+				.get((slot % this.recordsPerSegment) * this.recordLength + VALUES, out, outOffset, this.nDims);
+	}
+
+	/*
+	 * Writes the records and the position of the ring to the disk.
+	 */
+	public void force() {
+		for (MappedByteBuffer mapping : this.mappings) {
+			mapping.force();
+		}
+		this.header.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.force();
+		this.channel.close();
+	}
+}
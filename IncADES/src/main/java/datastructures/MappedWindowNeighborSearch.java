@@ -0,0 +1,181 @@
+/*
+*    MappedWindowNeighborSearch.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import incades.neighborsearch.CanberraKernel;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.NeighborSet;
+import incades.neighborsearch.StreamNeighborSearch;
+import moa.classifiers.lazy.neighboursearch.NearestNeighbourSearch;
+
+/*
+ * Exhaustive search reading the records of a MappedInstanceWindow in place, so the
+ * window is never copied to the heap. The index is a view of the window: instances
+ * are added to and removed from the window itself, and update and removeInstance only
+ * follow it.
+ *
+ * Neighbours are identified by the slots of their records in the ring, and their
+ * instances are built from the records when they are resolved.
+ */
+public class MappedWindowNeighborSearch extends NearestNeighbourSearch implements StreamNeighborSearch {
+
+	private static final long serialVersionUID = 1L;
+
+	/* Records whose distances are computed before they are offered to the heap */
+	private static final int BLOCK_ROWS = 256;
+
+	private final MappedInstanceWindow window;
+	private final DistanceKernel kernel;
+
+	private transient IntFunction<Instance> resolver;
+
+	public MappedWindowNeighborSearch(MappedInstanceWindow window) {
+		this(window, new CanberraKernel());
+	}
+
+	public MappedWindowNeighborSearch(MappedInstanceWindow window, DistanceKernel kernel) {
+		super();
+		this.window = window;
+		this.kernel = kernel;
+	}
+
+	@Override
+	public Instance nearestNeighbour(Instance target) throws Exception {
+		Instances neighbours = this.kNearestNeighbours(target, 1);
+		return neighbours.get(0);
+	}
+
+	/*
+	 * The returned Instances belongs to the query context of the calling thread and is
+	 * overwritten by the next query made on that thread.
+	 */
+	@Override
+	public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+
+		ReusableInstances neighbours = context.neighbours(target, k);
+		for (int i = 0; i < context.size; i++) {
+			neighbours.addNeighbour(this.window.instanceAt(context.slots[i]));
+		}
+
+		return neighbours;
+	}
+
+	@Override
+	public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+		MappedRecordRing ring = this.window.getRing();
+
+		NeighborSet neighbours = context.neighborSet;
+		neighbours.clear(target.numClasses(), this.getResolver());
+		for (int i = 0; i < context.size; i++) {
+			int slot = context.slots[i];
+			neighbours.add(slot, context.distances[i], ring.label(slot));
+		}
+
+		return neighbours;
+	}
+
+	private IntFunction<Instance> getResolver() {
+		if (this.resolver == null)
+			this.resolver = this.window::instanceAt;
+		return this.resolver;
+	}
+
+	private KnnQueryContext search(Instance target, int k) throws Exception {
+		MappedRecordRing ring = this.window.getRing();
+		if (ring == null) {
+			throw new Exception("The window is empty. Please add instances to it before searching it.");
+		}
+		this.window.adoptHeader(target.dataset());
+
+		int nDims = ring.numDims();
+		int size = ring.size();
+		KnnQueryContext context = KnnQueryContext.get();
+		double[] query = context.begin(k, nDims);
+		FlatKDTree.loadFeatures(target, query, 0);
+
+		BoundedMaxHeap heap = context.heap;
+		int blockRows = Math.min(size, BLOCK_ROWS);
+		double[] distances = context.scanBuffer(blockRows);
+		double[] rows = context.decodeBuffer(blockRows * nDims);
+		for (int from = 0; from < size; from += BLOCK_ROWS) {
+			int to = Math.min(size, from + BLOCK_ROWS);
+			for (int index = from; index < to; index++) {
+				ring.readValues(ring.slotOf(index), rows, (index - from) * nDims);
+			}
+			this.kernel.distances(query, 0, rows, 0, to - from, nDims, distances, 0);
+			for (int index = from; index < to; index++) {
+				heap.offer(distances[index - from], ring.slotOf(index));
+			}
+		}
+
+		context.finish();
+		return context;
+	}
+
+	@Override
+	public double[] getDistances() throws Exception {
+		KnnQueryContext context = KnnQueryContext.get();
+		return Arrays.copyOf(context.distances, context.size);
+	}
+
+	/*
+	 * The instance was added to the window, which the index reads directly.
+	 */
+	@Override
+	public void update(Instance inst) throws Exception {
+	}
+
+	/*
+	 * The instance was removed from the window, which the index reads directly.
+	 */
+	@Override
+	public void removeInstance(Instance inst) throws Exception {
+	}
+
+	/*
+	 * The index always reads the window it was created with, of which instances can
+	 * only be a copy, such as the snapshot of a background rebuild.
+	 */
+	@Override
+	public void setInstances(Instances instances) throws Exception {
+	}
+
+	@Override
+	public void setInstances(List<Instance> window) throws Exception {
+	}
+
+	/*
+	 * There is no structure to maintain, so the index never needs to be rebuilt.
+	 */
+	@Override
+	public boolean isToRebuild() {
+		return false;
+	}
+
+}
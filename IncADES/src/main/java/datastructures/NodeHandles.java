@@ -0,0 +1,100 @@
+/*
+*    NodeHandles.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/*
+ * Handles of the instances held by the nodes of a pointer-based K-d tree. A handle
+ * indexes the instance and its node in two arrays, and is reused once its instance is
+ * removed. It is only honoured for the instance it was issued for, so a handle kept
+ * after its instance left the tree never designates the instance reusing it.
+ */
+final class NodeHandles implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Instance[] instances = new Instance[0];
+	private KDTreeNode[] nodes = new KDTreeNode[0];
+	private int[] freeHandles = new int[0];
+	private int numFreeHandles = 0;
+	private int numHandles = 0;
+	private IdentityHashMap<Instance, Integer> handlesByInstance = new IdentityHashMap<Instance, Integer>();
+
+	int issue(Instance inst, KDTreeNode node) {
+		if (this.numFreeHandles == 0 && this.numHandles == this.instances.length) {
+			int capacity = Math.max(16, this.numHandles * 2);
+			this.instances = Arrays.copyOf(this.instances, capacity);
+			this.nodes = Arrays.copyOf(this.nodes, capacity);
+			this.freeHandles = Arrays.copyOf(this.freeHandles, capacity);
+		}
+		int handle = this.numFreeHandles > 0 ? this.freeHandles[--this.numFreeHandles] : this.numHandles++;
+		this.instances[handle] = inst;
+		this.nodes[handle] = node;
+		this.handlesByInstance.put(inst, handle);
+		return handle;
+	}
+
+	/*
+	 * Gives the handle of old to inst, which takes its place in the tree.
+	 */
+	void rekey(Instance old, Instance inst) {
+		Integer handle = this.handlesByInstance.remove(old);
+		if (handle == null)
+			return;
+		this.instances[handle] = inst;
+		this.handlesByInstance.put(inst, handle);
+	}
+
+	/*
+	 * Releases the handle of inst and returns its node, or null if inst has none.
+	 */
+	KDTreeNode release(Instance inst) {
+		Integer handle = this.handlesByInstance.get(inst);
+		return handle == null ? null : this.release(handle, inst);
+	}
+
+	/*
+	 * Releases handle and returns the node of inst if the handle was issued for it, or
+	 * null.
+	 */
+	KDTreeNode release(int handle, Instance inst) {
+		if (handle < 0 || handle >= this.numHandles || this.instances[handle] != inst)
+			return null;
+		KDTreeNode node = this.nodes[handle];
+		this.handlesByInstance.remove(inst);
+		this.instances[handle] = null;
+		this.nodes[handle] = null;
+		this.freeHandles[this.numFreeHandles++] = handle;
+		return node;
+	}
+
+	void clear() {
+		Arrays.fill(this.instances, 0, this.numHandles, null);
+		Arrays.fill(this.nodes, 0, this.numHandles, null);
+		this.numHandles = 0;
+		this.numFreeHandles = 0;
+		this.handlesByInstance.clear();
+	}
+}
@@ -0,0 +1,280 @@
+/*
+*    ProjectedNeighborSearch.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import javax.management.InstanceNotFoundException;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.NeighborSet;
+import incades.neighborsearch.Projection;
+import incades.neighborsearch.ProjectionBasis;
+import incades.neighborsearch.StreamNeighborSearch;
+
+/*
+ * Neighbour search in a reduced space. The wrapped index holds projections of the
+ * window instances, made with the basis fitted by the Projection when the window is
+ * set, and kept until the next call to setInstances: instances inserted in between are
+ * projected with the same basis, so the points of the index never move.
+ *
+ * The neighbours are always returned with their distances in the original space, so
+ * they can be compared with distances measured elsewhere. With rerank, the index is
+ * asked for more candidates than needed (see CoordinateStore.rerankSize) and the k
+ * closest in the original space are kept; without it, the k nearest in the reduced
+ * space are only sorted by their original distances.
+ *
+ * A basis fitted on a small window describes the later ones poorly, so the index asks
+ * to be rebuilt whenever the window has grown REFIT_GROWTH times past the size the
+ * basis was fitted on.
+ */
+public class ProjectedNeighborSearch implements StreamNeighborSearch {
+
+	private static final int REFIT_GROWTH = 2;
+
+	private final StreamNeighborSearch index;
+	private final Projection projection;
+	private final DistanceKernel kernel;
+	private final boolean rerank;
+
+	private ProjectionBasis basis;
+	private int fittedSize = 0;
+	private int nDims = 0;
+	private Instances header;
+
+	private final IdentityHashMap<Instance, Instance> projectedOf = new IdentityHashMap<Instance, Instance>();
+	private final IdentityHashMap<Instance, Instance> originalOf = new IdentityHashMap<Instance, Instance>();
+	private Instance[] originalOfHandle = new Instance[0];
+
+	private DenseInstance queryInstance;
+	private double[] queryValues = new double[0];
+
+	private final NeighborSet neighbours = new NeighborSet();
+	private Instance[] resultInstances = new Instance[8];
+	private final IntFunction<Instance> resolver = slot -> this.resultInstances[slot];
+
+	/*
+	 * index must be empty, and measure distances suited to the reduced space, such as
+	 * Euclidean ones; kernel is the distance of the original space.
+	 */
+	public ProjectedNeighborSearch(StreamNeighborSearch index, Projection projection, DistanceKernel kernel,
+			boolean rerank) {
+		this.index = index;
+		this.projection = projection;
+		this.kernel = kernel;
+		this.rerank = rerank;
+	}
+
+	public StreamNeighborSearch getIndex() {
+		return this.index;
+	}
+
+	public ProjectionBasis getBasis() {
+		return this.basis;
+	}
+
+	@Override
+	public void setInstances(Instances insts) throws Exception {
+		List<Instance> window = new ArrayList<Instance>(insts.size());
+		for (int i = 0; i < insts.size(); i++) {
+			window.add(insts.get(i));
+		}
+		this.setInstances(window);
+	}
+
+	/*
+	 * Fits the projection on the window and builds the index over its projections.
+	 */
+	@Override
+	public void setInstances(List<Instance> window) throws Exception {
+		this.basis = this.projection.fit(window);
+		this.fittedSize = window.size();
+		this.nDims = this.basis.getInputDims();
+		this.header = reducedHeader(window.get(0), this.basis.getOutputDims());
+		this.queryValues = new double[this.basis.getOutputDims()];
+		this.queryInstance = new DenseInstance(1, new double[this.basis.getOutputDims() + 1]);
+		this.queryInstance.setDataset(this.header);
+
+		this.projectedOf.clear();
+		this.originalOf.clear();
+		Arrays.fill(this.originalOfHandle, null);
+		List<Instance> projected = new ArrayList<Instance>(window.size());
+		for (Instance inst : window) {
+			Instance projection = this.project(inst);
+			this.projectedOf.put(inst, projection);
+			this.originalOf.put(projection, inst);
+			projected.add(projection);
+		}
+		this.index.setInstances(projected);
+	}
+
+	private static Instances reducedHeader(Instance sample, int outputDims) {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>(outputDims + 1);
+		for (int j = 0; j < outputDims; j++) {
+			attributes.add(new Attribute("projection" + j));
+		}
+		attributes.add(sample.classAttribute());
+		Instances header = new Instances("Projected window", attributes, 0);
+		header.setClassIndex(outputDims);
+		return header;
+	}
+
+	private Instance project(Instance inst) {
+		double[] values = new double[this.basis.getOutputDims() + 1];
+		this.basis.project(FeatureRecord.of(inst).features(), 0, values, 0);
+		values[values.length - 1] = inst.classValue();
+		FeatureInstance projection = new FeatureInstance(inst.weight(), values);
+		projection.setDataset(this.header);
+		return projection;
+	}
+
+	private Instance projectQuery(Instance target) {
+		this.basis.project(FeatureRecord.of(target).features(), 0, this.queryValues, 0);
+		for (int j = 0; j < this.queryValues.length; j++) {
+			this.queryInstance.setValue(j, this.queryValues[j]);
+		}
+		return this.queryInstance;
+	}
+
+	@Override
+	public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception {
+		if (this.basis == null)
+			throw new Exception("The index was not initialized. Please use the method setInstances(Instances)");
+
+		int candidates = this.rerank ? CoordinateStore.rerankSize(k) : k;
+		NeighborSet found = this.index.kNearestNeighbourSet(this.projectQuery(target), candidates);
+
+		// The index is done with the query context, so its heap ranks the candidates again
+		KnnQueryContext context = KnnQueryContext.get();
+		double[] query = context.begin(k, this.nDims);
+		FlatKDTree.loadFeatures(target, query, 0);
+
+		BoundedMaxHeap heap = context.heap;
+		for (int i = 0; i < found.size(); i++) {
+			double[] features = FeatureRecord.of(this.originalOf.get(found.instance(i))).features();
+			heap.offer(this.kernel.distance(query, 0, features, 0, this.nDims, heap.worstDistance()), i);
+		}
+		int size = context.finish();
+
+		if (this.resultInstances.length < size)
+			this.resultInstances = new Instance[size];
+
+		this.neighbours.clear(target.numClasses(), this.resolver);
+		for (int i = 0; i < size; i++) {
+			Instance inst = this.originalOf.get(found.instance(context.slots[i]));
+			this.resultInstances[i] = inst;
+			this.neighbours.add(i, context.distances[i], inst.classValue());
+		}
+		return this.neighbours;
+	}
+
+	@Override
+	public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+		NeighborSet found = this.kNearestNeighbourSet(target, k);
+
+		ReusableInstances result = KnnQueryContext.get().neighbours(target, k);
+		for (int i = 0; i < found.size(); i++) {
+			result.addNeighbour(found.instance(i));
+		}
+		return result;
+	}
+
+	@Override
+	public void update(Instance inst) throws Exception {
+		this.addInstance(inst);
+	}
+
+	@Override
+	public int addInstance(Instance inst) throws Exception {
+		if (this.basis == null)
+			throw new Exception("The index was not initialized. Please use the method setInstances(Instances)");
+
+		Instance projection = this.project(inst);
+		int handle = this.index.addInstance(projection);
+		this.projectedOf.put(inst, projection);
+		this.originalOf.put(projection, inst);
+		if (handle != NO_HANDLE) {
+			if (handle >= this.originalOfHandle.length)
+				this.originalOfHandle = Arrays.copyOf(this.originalOfHandle, Math.max(16, handle * 2));
+			this.originalOfHandle[handle] = inst;
+		}
+		return handle;
+	}
+
+	/*
+	 * Removes inst itself when it was given to the index, and otherwise an instance
+	 * with the same values and class.
+	 */
+	@Override
+	public void removeInstance(Instance inst) throws Exception {
+		Instance projection = this.projectedOf.remove(inst);
+		if (projection == null) {
+			FeatureRecord record = FeatureRecord.of(inst);
+			for (Map.Entry<Instance, Instance> entry : this.projectedOf.entrySet()) {
+				if (record.sameValues(FeatureRecord.of(entry.getKey()))) {
+					projection = this.projectedOf.remove(entry.getKey());
+					break;
+				}
+			}
+		}
+		if (projection == null)
+			throw new InstanceNotFoundException("Instance not found on the index. Is there any missing data on the dataset?");
+
+		this.originalOf.remove(projection);
+		this.index.removeInstance(projection);
+	}
+
+	@Override
+	public void removeHandle(int handle, Instance inst) throws Exception {
+		if (handle < 0 || handle >= this.originalOfHandle.length || this.originalOfHandle[handle] != inst) {
+			this.removeInstance(inst);
+			return;
+		}
+		Instance projection = this.projectedOf.remove(inst);
+		this.originalOf.remove(projection);
+		this.originalOfHandle[handle] = null;
+		this.index.removeHandle(handle, projection);
+	}
+
+	@Override
+	public boolean isToRebuild() {
+		return this.projectedOf.size() > REFIT_GROWTH * this.fittedSize || this.index.isToRebuild();
+	}
+
+	@Override
+	public long getTotalNodesVisited() {
+		return this.index.getTotalNodesVisited();
+	}
+
+	@Override
+	public long getTotalDistancesComputed() {
+		return this.index.getTotalDistancesComputed();
+	}
+}
@@ -0,0 +1,177 @@
+/*
+*    QuantizedCoordinateStore.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package datastructures;
+
+import java.util.Arrays;
+
+/*
+ * Coordinates stored as 8 or 16-bit codes spread evenly over the range of each
+ * attribute, a quarter or an eighth of the memory of doubles.
+ *
+ * The ranges are learned from the values given to include, usually the window an
+ * index is built over, and from the values set afterwards. A value out of its range
+ * widens it by RANGE_MARGIN of its new span beyond the value, and the codes of that
+ * attribute are computed again for the new range, which is rare once the range has
+ * seen the window.
+ *
+ * A range holding zero is aligned so that zero has a code of its own: the Canberra
+ * distance gives a whole unit to a zero compared with any other value, so a zero must
+ * not be decoded as a value close to it.
+ */
+public class QuantizedCoordinateStore extends CoordinateStore {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final double RANGE_MARGIN = 0.1;
+
+	private final int bits;
+	private final int maxCode;
+
+	private byte[] bytes;
+	private short[] shorts;
+	private int capacity = 0;
+
+	private final double[] lower;
+	private final double[] upper;
+	private final double[] step;
+
+	public QuantizedCoordinateStore(int nDims, int bits) {
+		super(nDims);
+		if (bits != 8 && bits != 16)
+			throw new IllegalArgumentException("Only 8 and 16-bit codes are supported.");
+		this.bits = bits;
+		this.maxCode = (1 << bits) - 1;
+		if (bits == 8)
+			this.bytes = new byte[0];
+		else
+			this.shorts = new short[0];
+
+		this.lower = new double[nDims];
+		this.upper = new double[nDims];
+		this.step = new double[nDims];
+		Arrays.fill(this.lower, Double.POSITIVE_INFINITY);
+		Arrays.fill(this.upper, Double.NEGATIVE_INFINITY);
+	}
+
+	@Override
+	public void grow(int capacity) {
+		if (this.bits == 8)
+			this.bytes = Arrays.copyOf(this.bytes, capacity * this.nDims);
+		else
+			this.shorts = Arrays.copyOf(this.shorts, capacity * this.nDims);
+		this.capacity = capacity;
+	}
+
+	@Override
+	public void include(double[] values, int offset) {
+		for (int i = 0; i < this.nDims; i++) {
+			double value = values[offset + i];
+			if (value < this.lower[i] || value > this.upper[i])
+				this.widen(i, value);
+		}
+	}
+
+	/*
+	 * Extends the range of dim to value plus a margin, and computes the codes of dim
+	 * again from their decoded values.
+	 */
+	private void widen(int dim, double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			return;
+
+		double oldLower = this.lower[dim];
+		double oldStep = this.step[dim];
+		boolean wasEmpty = oldLower > this.upper[dim];
+
+		double low = wasEmpty ? value : Math.min(oldLower, value);
+		double high = wasEmpty ? value : Math.max(this.upper[dim], value);
+		double margin = RANGE_MARGIN * (high - low);
+		if (!wasEmpty && value < oldLower)
+			low -= margin;
+		if (!wasEmpty && value > this.upper[dim])
+			high += margin;
+
+		double step = (high - low) / this.maxCode;
+		if (low < 0 && high > 0) {
+			// One code less for the range, so that moving its start down to a multiple of
+			// the step still covers high
+			step = (high - low) / (this.maxCode - 1);
+			low = -Math.ceil(-low / step) * step;
+		}
+
+		this.lower[dim] = low;
+		this.upper[dim] = high;
+		this.step[dim] = step;
+
+		if (wasEmpty)
+			return;
+		for (int row = 0; row < this.capacity; row++) {
+			int index = row * this.nDims + dim;
+			this.store(index, dim, oldLower + this.code(index) * oldStep);
+		}
+	}
+
+	@Override
+	public void set(int row, double[] values, int offset) {
+		this.include(values, offset);
+		int base = row * this.nDims;
+		for (int i = 0; i < this.nDims; i++) {
+			this.store(base + i, i, values[offset + i]);
+		}
+	}
+
+	private void store(int index, int dim, double value) {
+		int code = 0;
+		if (this.step[dim] > 0) {
+			double scaled = Math.rint((value - this.lower[dim]) / this.step[dim]);
+			code = (int) Math.max(0, Math.min(this.maxCode, scaled));
+		}
+		if (this.bits == 8)
+			this.bytes[index] = (byte) code;
+		else
+			this.shorts[index] = (short) code;
+	}
+
+	private int code(int index) {
+		return this.bits == 8 ? this.bytes[index] & 0xFF : this.shorts[index] & 0xFFFF;
+	}
+
+	@Override
+	public void decode(int row, double[] out, int outOffset) {
+		int base = row * this.nDims;
+		if (this.bits == 8) {
+			for (int i = 0; i < this.nDims; i++) {
+				out[outOffset + i] = this.lower[i] + (this.bytes[base + i] & 0xFF) * this.step[i];
+			}
+		} else {
+			for (int i = 0; i < this.nDims; i++) {
+				out[outOffset + i] = this.lower[i] + (this.shorts[base + i] & 0xFFFF) * this.step[i];
+			}
+		}
+	}
+
+	@Override
+	public void copy(int fromRow, int toRow) {
+		if (this.bits == 8)
+			System.arraycopy(this.bytes, fromRow * this.nDims, this.bytes, toRow * this.nDims, this.nDims);
+		else
+			System.arraycopy(this.shorts, fromRow * this.nDims, this.shorts, toRow * this.nDims, this.nDims);
+	}
+}
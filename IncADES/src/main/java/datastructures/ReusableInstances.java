@@ -0,0 +1,50 @@
+/*
+*    ReusableInstances.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datastructures;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import incades.util.AttributesUtils;
+
+/*
+ * Instances container whose content can be replaced without allocating. Unlike
+ * Instances.add, the neighbours are stored by reference and never copied.
+ */
+class ReusableInstances extends Instances {
+
+	private static final long serialVersionUID = 1L;
+
+	ReusableInstances(Instance prototype, int capacity) {
+		super("Neighbors found", AttributesUtils.copyAtributes(prototype), capacity);
+		this.setClassIndex(this.numAttributes() - 1);
+	}
+
+	void clearNeighbours() {
+		for (int i = this.instances.size() - 1; i >= 0; i--) {
+			this.instances.remove(i);
+		}
+	}
+
+	void addNeighbour(Instance inst) {
+		this.instances.add(inst);
+	}
+}
@@ -0,0 +1,352 @@
+/*
+*    SegmentedNeighborSearch.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import javax.management.InstanceNotFoundException;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import incades.neighborsearch.CanberraKernel;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.NeighborSet;
+import incades.neighborsearch.StreamNeighborSearch;
+import moa.classifiers.lazy.neighboursearch.NearestNeighbourSearch;
+
+/*
+ * Log-structured neighbour index for a FIFO window (Bentley-Saxe forest).
+ *
+ * New points go to a small head segment that is scanned linearly. When the head is
+ * full it is sealed (a k-d tree is bulk loaded over it) and appended to a list of
+ * immutable segments ordered by age, merging the newest segments while the older one
+ * is not larger, like a binary counter. The index thus holds O(log n) segments and
+ * every point is rebuilt O(log n) times.
+ *
+ * Removing the oldest point of the window, as the DSEW does when it is full or
+ * truncated after a drift, only moves the start of the oldest segment, and empty
+ * segments are dropped whole. Other removals leave a tombstone; a segment with more
+ * than half of dead points is rebuilt over the live ones. A query searches every
+ * segment with the same heap, so the bound found in one segment prunes the others.
+ */
+public class SegmentedNeighborSearch extends NearestNeighbourSearch implements StreamNeighborSearch {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_HEAD_CAPACITY = 128;
+
+	private final int headCapacity;
+	private final DistanceKernel kernel;
+
+	private int nDims = 0;
+	private int numInstances = 0;
+
+	private final ArrayList<IndexSegment> segments = new ArrayList<IndexSegment>();
+	private IndexSegment head;
+
+	private double[] values = new double[0];
+
+	private double epsilon = 0;
+	private int maxVisitedNodes = 0;
+
+	private transient IntFunction<Instance> resolver;
+
+	public SegmentedNeighborSearch() {
+		this(DEFAULT_HEAD_CAPACITY);
+	}
+
+	public SegmentedNeighborSearch(int headCapacity) {
+		this(headCapacity, new CanberraKernel());
+	}
+
+	public SegmentedNeighborSearch(int headCapacity, DistanceKernel kernel) {
+		super();
+		this.headCapacity = headCapacity;
+		this.kernel = kernel;
+	}
+
+	@Override
+	public Instance nearestNeighbour(Instance target) throws Exception {
+		Instances neighbours = this.kNearestNeighbours(target, 1);
+		return neighbours.get(0);
+	}
+
+	public int getNumInstances() {
+		return this.numInstances;
+	}
+
+	public int getNumSegments() {
+		return this.segments.size();
+	}
+
+	/*
+	 * Same approximation as FlatKDTree.setApproximation. The node budget is shared by
+	 * all the segments of a query.
+	 */
+	public void setApproximation(double epsilon, int maxVisitedNodes) {
+		if (epsilon < 0 || maxVisitedNodes < 0)
+			throw new IllegalArgumentException("epsilon and maxVisitedNodes must not be negative.");
+		this.epsilon = epsilon;
+		this.maxVisitedNodes = maxVisitedNodes;
+	}
+
+	/*
+	 * The returned Instances belongs to the query context of the calling thread and is
+	 * overwritten by the next query made on that thread.
+	 */
+	@Override
+	public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+
+		ReusableInstances neighbours = context.neighbours(target, k);
+		for (int i = 0; i < context.size; i++) {
+			neighbours.addNeighbour(this.instanceAt(context.slots[i]));
+		}
+
+		return neighbours;
+	}
+
+	@Override
+	public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+
+		NeighborSet neighbours = context.neighborSet;
+		neighbours.clear(target.numClasses(), this.getResolver());
+		for (int i = 0; i < context.size; i++) {
+			int slot = context.slots[i];
+			neighbours.add(slot, context.distances[i], this.labelAt(slot));
+		}
+
+		return neighbours;
+	}
+
+	private KnnQueryContext search(Instance target, int k) throws Exception {
+
+		if (this.nDims == 0) {
+			throw new Exception("The index was not initialized. Please use the method setInstances(Instances)");
+		}
+
+		KnnQueryContext context = KnnQueryContext.get();
+		double[] query = context.begin(k, this.nDims);
+		FlatKDTree.loadFeatures(target, query, 0);
+
+		double pruneFactor = 1 + this.epsilon;
+		int budget = this.maxVisitedNodes > 0 ? this.maxVisitedNodes : Integer.MAX_VALUE;
+
+		int offset = 0;
+		for (IndexSegment segment : this.segments) {
+			budget = segment.search(query, context, offset, pruneFactor, budget);
+			offset += segment.capacity();
+		}
+		this.head.search(query, context, offset, pruneFactor, budget);
+
+		context.finish();
+		return context;
+	}
+
+	/*
+	 * Slots number the positions of the segments one after the other, the head last.
+	 * They are valid until the index is updated.
+	 */
+	private Instance instanceAt(int slot) {
+		for (IndexSegment segment : this.segments) {
+			if (slot < segment.capacity())
+				return segment.instances[slot];
+			slot -= segment.capacity();
+		}
+		return this.head.instances[slot];
+	}
+
+	private double labelAt(int slot) {
+		for (IndexSegment segment : this.segments) {
+			if (slot < segment.capacity())
+				return segment.labels[slot];
+			slot -= segment.capacity();
+		}
+		return this.head.labels[slot];
+	}
+
+	private IntFunction<Instance> getResolver() {
+		if (this.resolver == null)
+			this.resolver = this::instanceAt;
+		return this.resolver;
+	}
+
+	@Override
+	public double[] getDistances() throws Exception {
+		KnnQueryContext context = KnnQueryContext.get();
+		return Arrays.copyOf(context.distances, context.size);
+	}
+
+	@Override
+	public void update(Instance inst) throws Exception {
+		if (this.nDims == 0) {
+			this.nDims = inst.numAttributes() - 1;
+			this.head = new IndexSegment(this.nDims, this.headCapacity, this.kernel);
+		}
+
+		double[] values = this.loadValues(inst);
+		this.head.append(inst, values, 0);
+		this.numInstances++;
+
+		if (this.head.isFull())
+			this.sealHead();
+	}
+
+	private double[] loadValues(Instance inst) {
+		if (this.values.length != this.nDims)
+			this.values = new double[this.nDims];
+		FlatKDTree.loadFeatures(inst, this.values, 0);
+		return this.values;
+	}
+
+	/*
+	 * Moves the head to the segment list, then merges the two newest segments while the
+	 * older one holds no more live points than the newer.
+	 */
+	private void sealHead() {
+		IndexSegment sealed = this.head;
+		this.head = new IndexSegment(this.nDims, this.headCapacity, this.kernel);
+
+		if (sealed.numLive() == 0)
+			return;
+		sealed.seal();
+		this.segments.add(sealed);
+
+		int last = this.segments.size() - 1;
+		while (last > 0 && this.segments.get(last - 1).numLive() <= this.segments.get(last).numLive()) {
+			IndexSegment merged = IndexSegment.merge(this.segments.get(last - 1), this.segments.get(last), this.nDims);
+			this.segments.remove(last);
+			this.segments.set(--last, merged);
+		}
+	}
+
+	@Override
+	public void setInstances(Instances instances) throws Exception {
+		super.setInstances(instances);
+		List<Instance> window = new ArrayList<Instance>(instances.size());
+		for (int i = 0; i < instances.size(); i++) {
+			window.add(instances.get(i));
+		}
+		this.setInstances(window);
+	}
+
+	/*
+	 * Replaces the content of the index by the window, loaded as a single segment.
+	 */
+	@Override
+	public void setInstances(List<Instance> window) throws Exception {
+		this.nDims = window.get(0).numAttributes() - 1;
+		this.segments.clear();
+		this.head = new IndexSegment(this.nDims, this.headCapacity, this.kernel);
+
+		IndexSegment segment = new IndexSegment(this.nDims, window.size(), this.kernel);
+		for (Instance inst : window) {
+			segment.append(inst, this.loadValues(inst), 0);
+		}
+		segment.seal();
+		this.segments.add(segment);
+		this.numInstances = window.size();
+	}
+
+	/*
+	 * Removes inst, which is usually the oldest point of the window: that point is
+	 * checked first and dropped in O(1). Otherwise the segments are scanned, from the
+	 * oldest, for inst itself and only then for a point with the same values and class,
+	 * so a duplicate is never removed in place of the instance given.
+	 */
+	@Override
+	public void removeInstance(Instance inst) throws Exception {
+		if (this.nDims == 0)
+			throw new InstanceNotFoundException("Instance not found on the index. Is there any missing data on the dataset?");
+
+		double[] values = this.loadValues(inst);
+		double classValue = inst.classValue();
+
+		IndexSegment oldest = this.segments.isEmpty() ? this.head : this.segments.get(0);
+		if (oldest.numLive() > 0) {
+			int position = oldest.start;
+			if (oldest.instances[position] == inst) {
+				this.remove(oldest, position);
+				return;
+			}
+		}
+
+		for (IndexSegment segment : this.segments) {
+			int position = segment.indexOfSame(inst);
+			if (position >= 0) {
+				this.remove(segment, position);
+				return;
+			}
+		}
+		int position = this.head.indexOfSame(inst);
+		if (position >= 0) {
+			this.remove(this.head, position);
+			return;
+		}
+
+		for (IndexSegment segment : this.segments) {
+			position = segment.indexOfEqual(values, classValue);
+			if (position >= 0) {
+				this.remove(segment, position);
+				return;
+			}
+		}
+		position = this.head.indexOfEqual(values, classValue);
+		if (position >= 0) {
+			this.remove(this.head, position);
+			return;
+		}
+
+		throw new InstanceNotFoundException("Instance not found on the index. Is there any missing data on the dataset?");
+	}
+
+	/*
+	 * Drops the segment once it is empty and rebuilds it when most of it is dead.
+	 */
+	private void remove(IndexSegment segment, int position) {
+		segment.remove(position);
+		this.numInstances--;
+
+		if (segment == this.head)
+			return;
+
+		int index = this.segments.indexOf(segment);
+		if (segment.numLive() == 0)
+			this.segments.remove(index);
+		else if (segment.numDead() > segment.size / 2 && segment.size >= this.headCapacity)
+			this.segments.set(index, IndexSegment.merge(segment, null, this.nDims));
+	}
+
+	/*
+	 * Expired points are dropped incrementally, so the index never needs to be rebuilt
+	 * as a whole.
+	 */
+	@Override
+	public boolean isToRebuild() {
+		return false;
+	}
+
+}
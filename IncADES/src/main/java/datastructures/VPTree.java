@@ -0,0 +1,724 @@
+/*
+*    VPTree.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+
+import javax.management.InstanceNotFoundException;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import incades.neighborsearch.CanberraKernel;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.NeighborSet;
+import incades.neighborsearch.StreamNeighborSearch;
+import moa.classifiers.lazy.neighboursearch.NearestNeighbourSearch;
+
+/*
+ * Vantage-point tree, a metric tree for the streams with many attributes, where the
+ * splits of a k-d tree on one dimension at a time stop pruning.
+ *
+ * An inner node holds a vantage point and the median of the distances from it to the
+ * points below: closer points go to the inside child and the others to the outside
+ * one. Every child also knows the range of the distances from the vantage point of its
+ * parent to its points, so by the triangle inequality no point of the child is closer
+ * to a query q than max(lower - d, d - upper), d being the distance from q to that
+ * vantage point. This requires the kernel to be a metric, which all the kernels are,
+ * Canberra included. Leaves are buckets of up to LEAF_SIZE points, scanned with
+ * early abandoning.
+ *
+ * Points are stored in slots as in FlatKDTree, and the slot is the handle of the
+ * point. A new point walks down to a leaf, widening the ranges on its path, and a full
+ * leaf is split. A removed point leaves its bucket at once, but a removed vantage point
+ * stays as a tombstone, since it still routes the searches. The nodes are rebuilt over
+ * the live points once TOMBSTONE_RATIO of them are tombstones or the tree received as
+ * many insertions as it held points when it was built. The slots are kept, so handles
+ * stay valid across rebuilds.
+ */
+public class VPTree extends NearestNeighbourSearch implements StreamNeighborSearch {
+
+	private static final long serialVersionUID = 1L;
+
+	protected static final int NIL = -1;
+
+	/* Points of a leaf before it is split */
+	private static final int LEAF_SIZE = 16;
+
+	private static final double TOMBSTONE_RATIO = 0.3;
+
+	private final DistanceKernel kernel;
+	private final Random random = new Random(1);
+
+	private int nDims = 0;
+	private int numInstances = 0;
+	private int numSlots = 0;
+	private int numDeadVantages = 0;
+	private int numInsertsSinceBuild = 0;
+	private int builtSize = 0;
+	private int numRebuilds = 0;
+
+	private double epsilon = 0;
+	private int maxVisitedNodes = 0;
+
+	private double[] coords = new double[0];
+	private double[] labels = new double[0];
+	private boolean[] active = new boolean[0];
+	private int[] leafOf = new int[0];
+	private int[] freeSlots = new int[0];
+	private int numFreeSlots = 0;
+	private Instance[] slotInstances = new Instance[0];
+	private IdentityHashMap<Instance, Integer> slotsByInstance = new IdentityHashMap<Instance, Integer>();
+
+	private int root = NIL;
+	private int numNodes = 0;
+	private int[] vantage = new int[0];
+	private double[] radius = new double[0];
+	private int[] inside = new int[0];
+	private int[] outside = new int[0];
+	private double[] lowerDistance = new double[0];
+	private double[] upperDistance = new double[0];
+	private int[][] buckets = new int[0][];
+	private int[] bucketSizes = new int[0];
+
+	private double[] buildDistances = new double[0];
+
+	private transient IntFunction<Instance> resolver;
+
+	public VPTree() {
+		this(new CanberraKernel());
+	}
+
+	public VPTree(DistanceKernel kernel) {
+		super();
+		this.kernel = kernel;
+	}
+
+	@Override
+	public Instance nearestNeighbour(Instance target) throws Exception {
+		Instances neighbours = this.kNearestNeighbours(target, 1);
+		return neighbours.get(0);
+	}
+
+	public int getNumInstances() {
+		return this.numInstances;
+	}
+
+	public int getNumRebuilds() {
+		return this.numRebuilds;
+	}
+
+	/*
+	 * Same approximation as FlatKDTree.setApproximation.
+	 */
+	public void setApproximation(double epsilon, int maxVisitedNodes) {
+		if (epsilon < 0 || maxVisitedNodes < 0)
+			throw new IllegalArgumentException("epsilon and maxVisitedNodes must not be negative.");
+		this.epsilon = epsilon;
+		this.maxVisitedNodes = maxVisitedNodes;
+	}
+
+	/*
+	 * The returned Instances belongs to the query context of the calling thread and is
+	 * overwritten by the next query made on that thread.
+	 */
+	@Override
+	public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+
+		ReusableInstances neighbours = context.neighbours(target, k);
+		for (int i = 0; i < context.size; i++) {
+			neighbours.addNeighbour(this.slotInstances[context.slots[i]]);
+		}
+
+		return neighbours;
+	}
+
+	@Override
+	public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception {
+		KnnQueryContext context = this.search(target, k);
+
+		NeighborSet neighbours = context.neighborSet;
+		neighbours.clear(target.numClasses(), this.getResolver());
+		for (int i = 0; i < context.size; i++) {
+			int slot = context.slots[i];
+			neighbours.add(slot, context.distances[i], this.labels[slot]);
+		}
+
+		return neighbours;
+	}
+
+	private IntFunction<Instance> getResolver() {
+		if (this.resolver == null)
+			this.resolver = slot -> this.slotInstances[slot];
+		return this.resolver;
+	}
+
+	private KnnQueryContext search(Instance target, int k) throws Exception {
+
+		if (this.nDims == 0) {
+			throw new Exception("The VP-tree was not initialized. Please use the method setInstances(Instances)");
+		}
+
+		KnnQueryContext context = KnnQueryContext.get();
+		double[] query = context.begin(k, this.nDims);
+		FlatKDTree.loadFeatures(target, query, 0);
+
+		this.search(query, context);
+		context.finish();
+		return context;
+	}
+
+	/*
+	 * Depth-first search with an explicit stack. Children are pushed with the lower
+	 * bound given by the triangle inequality, the nearer one last so it is explored
+	 * first, and skipped once the heap is full and their bound exceeds its worst
+	 * candidate.
+	 */
+	private void search(double[] query, KnnQueryContext context) {
+		BoundedMaxHeap heap = context.heap;
+		int[] stack = context.stack;
+		double[] bounds = context.bounds;
+		int top = 0;
+
+		if (this.root == NIL)
+			return;
+
+		double pruneFactor = 1 + this.epsilon;
+		int budget = this.maxVisitedNodes > 0 ? this.maxVisitedNodes : Integer.MAX_VALUE;
+
+		stack[top] = this.root;
+		bounds[top++] = 0;
+
+		while (top > 0) {
+			int node = stack[--top];
+			double bound = bounds[top];
+
+			if (bound * pruneFactor > heap.worstDistance())
+				continue;
+			if (budget-- == 0)
+				break;
+
+			int[] bucket = this.buckets[node];
+			if (bucket != null) {
+				for (int i = 0; i < this.bucketSizes[node]; i++) {
+					int slot = bucket[i];
+					heap.offer(this.distance(query, slot, heap.worstDistance()), slot);
+				}
+				continue;
+			}
+
+			int vp = this.vantage[node];
+			double distance = this.distance(query, vp);
+			if (this.active[vp])
+				heap.offer(distance, vp);
+
+			int in = this.inside[node];
+			int out = this.outside[node];
+			double inBound = Math.max(bound,
+					Math.max(this.lowerDistance[in] - distance, distance - this.upperDistance[in]));
+			double outBound = Math.max(bound,
+					Math.max(this.lowerDistance[out] - distance, distance - this.upperDistance[out]));
+
+			if (top + 2 > stack.length) {
+				context.ensureStack(top + 2);
+				stack = context.stack;
+				bounds = context.bounds;
+			}
+
+			double worst = heap.worstDistance();
+			if (distance < this.radius[node]) {
+				top = push(stack, bounds, top, out, outBound, pruneFactor, worst);
+				top = push(stack, bounds, top, in, inBound, pruneFactor, worst);
+			} else {
+				top = push(stack, bounds, top, in, inBound, pruneFactor, worst);
+				top = push(stack, bounds, top, out, outBound, pruneFactor, worst);
+			}
+		}
+	}
+
+	private static int push(int[] stack, double[] bounds, int top, int node, double bound, double pruneFactor,
+			double worst) {
+		if (bound * pruneFactor <= worst) {
+			stack[top] = node;
+			bounds[top++] = bound;
+		}
+		return top;
+	}
+
+	private double distance(double[] query, int slot) {
+		return this.kernel.distance(query, 0, this.coords, slot * this.nDims, this.nDims);
+	}
+
+	private double distance(double[] query, int slot, double cutoff) {
+		return this.kernel.distance(query, 0, this.coords, slot * this.nDims, this.nDims, cutoff);
+	}
+
+	/*
+	 * Distance from the point of slot to the vantage point vp. Insertions, builds and
+	 * lookups all measure it in this order, so they route a point the same way.
+	 */
+	private double distanceToVantage(int slot, int vp) {
+		return this.kernel.distance(this.coords, slot * this.nDims, this.coords, vp * this.nDims, this.nDims);
+	}
+
+	@Override
+	public double[] getDistances() throws Exception {
+		KnnQueryContext context = KnnQueryContext.get();
+		return Arrays.copyOf(context.distances, context.size);
+	}
+
+	@Override
+	public void update(Instance ins) throws Exception {
+		this.addInstance(ins);
+	}
+
+	/*
+	 * Inserts ins and returns its slot, which can be given to removeHandle.
+	 */
+	@Override
+	public int addInstance(Instance ins) throws Exception {
+		if (this.nDims == 0)
+			this.nDims = ins.numAttributes() - 1;
+
+		int slot = this.allocateSlot();
+		FlatKDTree.loadFeatures(ins, this.coords, slot * this.nDims);
+		this.slotInstances[slot] = ins;
+		this.slotsByInstance.put(ins, slot);
+		this.labels[slot] = ins.classValue();
+		this.active[slot] = true;
+		this.numInstances++;
+
+		if (this.root == NIL) {
+			this.root = this.allocateNode();
+			this.build(this.root, new int[] { slot }, 0, 1);
+		} else {
+			this.insert(slot);
+		}
+
+		if (++this.numInsertsSinceBuild > Math.max(this.builtSize, LEAF_SIZE))
+			this.rebuild();
+
+		return slot;
+	}
+
+	/*
+	 * Walks down to the leaf of slot, widening the distance ranges on the way, and adds
+	 * the point to its bucket. A full bucket is split with the point.
+	 */
+	private void insert(int slot) {
+		int node = this.root;
+		while (this.buckets[node] == null) {
+			double distance = this.distanceToVantage(slot, this.vantage[node]);
+			int child = distance < this.radius[node] ? this.inside[node] : this.outside[node];
+			this.lowerDistance[child] = Math.min(this.lowerDistance[child], distance);
+			this.upperDistance[child] = Math.max(this.upperDistance[child], distance);
+			node = child;
+		}
+
+		int size = this.bucketSizes[node];
+		int[] bucket = this.buckets[node];
+		if (size < bucket.length) {
+			bucket[size] = slot;
+			this.bucketSizes[node]++;
+			this.leafOf[slot] = node;
+		} else {
+			int[] members = Arrays.copyOf(bucket, size + 1);
+			members[size] = slot;
+			this.build(node, members, 0, size + 1);
+		}
+	}
+
+	@Override
+	public void setInstances(Instances instances) throws Exception {
+		super.setInstances(instances);
+		List<Instance> window = new ArrayList<Instance>(instances.size());
+		for (int i = 0; i < instances.size(); i++) {
+			window.add(instances.get(i));
+		}
+		this.buildTree(window);
+	}
+
+	/*
+	 * Builds the tree over references to the window instances, without copying them.
+	 */
+	@Override
+	public void setInstances(List<Instance> window) throws Exception {
+		this.buildTree(window);
+	}
+
+	public void buildTree(List<Instance> instances) throws Exception {
+
+		if (!(instances instanceof RandomAccess))
+			instances = new ArrayList<Instance>(instances);
+
+		int size = instances.size();
+		this.nDims = instances.get(0).numAttributes() - 1;
+		this.clear(size);
+
+		for (int i = 0; i < size; i++) {
+			Instance inst = instances.get(i);
+			FlatKDTree.loadFeatures(inst, this.coords, i * this.nDims);
+			this.slotInstances[i] = inst;
+			this.labels[i] = inst.classValue();
+			this.active[i] = true;
+			this.slotsByInstance.put(inst, i);
+		}
+		this.numSlots = size;
+		this.numInstances = size;
+
+		this.rebuild();
+	}
+
+	/*
+	 * Rebuilds the nodes over the live slots and frees the slots of the tombstones.
+	 */
+	private void rebuild() {
+		int[] members = new int[this.numInstances];
+		int count = 0;
+		this.numFreeSlots = 0;
+		for (int slot = 0; slot < this.numSlots; slot++) {
+			if (this.active[slot]) {
+				members[count++] = slot;
+			} else {
+				this.slotInstances[slot] = null;
+				this.freeSlots[this.numFreeSlots++] = slot;
+			}
+		}
+
+		this.numNodes = 0;
+		this.root = NIL;
+		if (count > 0) {
+			this.root = this.allocateNode();
+			this.build(this.root, members, 0, count);
+		}
+
+		this.numDeadVantages = 0;
+		this.numInsertsSinceBuild = 0;
+		this.builtSize = count;
+		this.numRebuilds++;
+	}
+
+	/*
+	 * Turns node into the root of a subtree over the slots members[from, to). The
+	 * vantage point of a range is picked at random and the others are split at the
+	 * median of their distances to it. A range whose points are all at the same
+	 * distance from the vantage point cannot be split and stays a larger leaf. The
+	 * ranges left to build are kept on an explicit stack.
+	 */
+	private void build(int node, int[] members, int from, int to) {
+		if (this.buildDistances.length < members.length)
+			this.buildDistances = new double[members.length];
+		double[] distances = this.buildDistances;
+
+		int[] pending = new int[3 * 32];
+		int top = 0;
+		pending[top++] = node;
+		pending[top++] = from;
+		pending[top++] = to;
+
+		while (top > 0) {
+			int t = pending[--top];
+			int f = pending[--top];
+			int n = pending[--top];
+			int count = t - f;
+
+			if (count <= LEAF_SIZE) {
+				this.makeLeaf(n, members, f, t, LEAF_SIZE);
+				continue;
+			}
+
+			swap(members, f, f + this.random.nextInt(count));
+			int vp = members[f];
+			for (int i = f + 1; i < t; i++) {
+				distances[i] = this.distanceToVantage(members[i], vp);
+			}
+
+			double median = select(members, distances, f + 1, t, f + 1 + (count - 1) / 2);
+			int split = f + 1;
+			for (int i = f + 1; i < t; i++) {
+				if (distances[i] < median) {
+					swap(members, split, i);
+					swapValues(distances, split, i);
+					split++;
+				}
+			}
+
+			if (split == f + 1) {
+				this.makeLeaf(n, members, f, t, 2 * count);
+				continue;
+			}
+
+			int in = this.allocateNode();
+			int out = this.allocateNode();
+			this.vantage[n] = vp;
+			this.radius[n] = median;
+			this.inside[n] = in;
+			this.outside[n] = out;
+			this.buckets[n] = null;
+			this.bucketSizes[n] = 0;
+			this.leafOf[vp] = NIL;
+			this.setRange(in, distances, f + 1, split);
+			this.setRange(out, distances, split, t);
+
+			if (top + 6 > pending.length)
+				pending = Arrays.copyOf(pending, pending.length * 2);
+			pending[top++] = in;
+			pending[top++] = f + 1;
+			pending[top++] = split;
+			pending[top++] = out;
+			pending[top++] = split;
+			pending[top++] = t;
+		}
+	}
+
+	private void makeLeaf(int node, int[] members, int from, int to, int capacity) {
+		int[] bucket = new int[Math.max(capacity, to - from)];
+		for (int i = from; i < to; i++) {
+			bucket[i - from] = members[i];
+			this.leafOf[members[i]] = node;
+		}
+		this.buckets[node] = bucket;
+		this.bucketSizes[node] = to - from;
+		this.vantage[node] = NIL;
+	}
+
+	private void setRange(int node, double[] distances, int from, int to) {
+		double lower = Double.POSITIVE_INFINITY;
+		double upper = Double.NEGATIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			lower = Math.min(lower, distances[i]);
+			upper = Math.max(upper, distances[i]);
+		}
+		this.lowerDistance[node] = lower;
+		this.upperDistance[node] = upper;
+	}
+
+	/*
+	 * Quickselect of the k-th smallest distance in [from, to), moving the members along.
+	 */
+	private static double select(int[] members, double[] distances, int from, int to, int k) {
+		int lo = from;
+		int hi = to - 1;
+		while (hi > lo) {
+			double pivot = distances[lo + (hi - lo) / 2];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (distances[i] < pivot)
+					i++;
+				while (distances[j] > pivot)
+					j--;
+				if (i <= j) {
+					swap(members, i, j);
+					swapValues(distances, i, j);
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				break;
+		}
+		return distances[k];
+	}
+
+	private static void swap(int[] values, int i, int j) {
+		int tmp = values[i];
+		values[i] = values[j];
+		values[j] = tmp;
+	}
+
+	private static void swapValues(double[] values, int i, int j) {
+		double tmp = values[i];
+		values[i] = values[j];
+		values[j] = tmp;
+	}
+
+	private int allocateNode() {
+		if (this.numNodes == this.vantage.length) {
+			int capacity = Math.max(16, this.numNodes * 2);
+			this.vantage = Arrays.copyOf(this.vantage, capacity);
+			this.radius = Arrays.copyOf(this.radius, capacity);
+			this.inside = Arrays.copyOf(this.inside, capacity);
+			this.outside = Arrays.copyOf(this.outside, capacity);
+			this.lowerDistance = Arrays.copyOf(this.lowerDistance, capacity);
+			this.upperDistance = Arrays.copyOf(this.upperDistance, capacity);
+			this.buckets = Arrays.copyOf(this.buckets, capacity);
+			this.bucketSizes = Arrays.copyOf(this.bucketSizes, capacity);
+		}
+		int node = this.numNodes++;
+		this.vantage[node] = NIL;
+		this.inside[node] = NIL;
+		this.outside[node] = NIL;
+		this.lowerDistance[node] = Double.POSITIVE_INFINITY;
+		this.upperDistance[node] = Double.NEGATIVE_INFINITY;
+		this.buckets[node] = null;
+		this.bucketSizes[node] = 0;
+		return node;
+	}
+
+	private int allocateSlot() {
+		if (this.numFreeSlots > 0)
+			return this.freeSlots[--this.numFreeSlots];
+		if (this.numSlots == this.slotInstances.length)
+			this.grow(Math.max(16, this.numSlots * 2));
+		return this.numSlots++;
+	}
+
+	private void grow(int capacity) {
+		this.coords = Arrays.copyOf(this.coords, capacity * this.nDims);
+		this.labels = Arrays.copyOf(this.labels, capacity);
+		this.active = Arrays.copyOf(this.active, capacity);
+		this.leafOf = Arrays.copyOf(this.leafOf, capacity);
+		this.freeSlots = Arrays.copyOf(this.freeSlots, capacity);
+		this.slotInstances = Arrays.copyOf(this.slotInstances, capacity);
+	}
+
+	private void clear(int capacity) {
+		this.numInstances = 0;
+		this.numSlots = 0;
+		this.numFreeSlots = 0;
+		this.numDeadVantages = 0;
+		this.root = NIL;
+		this.numNodes = 0;
+		this.coords = new double[0];
+		this.labels = new double[0];
+		this.active = new boolean[0];
+		this.leafOf = new int[0];
+		this.freeSlots = new int[0];
+		this.slotInstances = new Instance[0];
+		this.slotsByInstance.clear();
+		this.grow(Math.max(16, capacity));
+	}
+
+	/*
+	 * Removes inst itself when it was given to the tree, so a duplicate is never removed
+	 * in its place. Other instances are looked up by value.
+	 */
+	@Override
+	public void removeInstance(Instance inst) throws Exception {
+
+		Integer mapped = this.slotsByInstance.get(inst);
+		int slot = mapped != null ? mapped : this.search(inst);
+
+		if (slot == NIL)
+			throw new InstanceNotFoundException("Instance not found on VPTree. Is there any missing data on the dataset?");
+
+		this.removeSlot(slot);
+	}
+
+	@Override
+	public void removeHandle(int handle, Instance inst) throws Exception {
+
+		if (handle < 0 || handle >= this.numSlots || !this.active[handle] || this.slotInstances[handle] != inst) {
+			this.removeInstance(inst);
+			return;
+		}
+
+		this.removeSlot(handle);
+	}
+
+	/*
+	 * Takes the point out of its bucket, or tombstones it if it is a vantage point, and
+	 * rebuilds the nodes when too many vantage points are tombstones.
+	 */
+	private void removeSlot(int slot) {
+
+		this.slotsByInstance.remove(this.slotInstances[slot]);
+		this.active[slot] = false;
+		this.numInstances--;
+
+		int leaf = this.leafOf[slot];
+		if (leaf != NIL) {
+			int[] bucket = this.buckets[leaf];
+			int last = --this.bucketSizes[leaf];
+			for (int i = 0; i <= last; i++) {
+				if (bucket[i] == slot) {
+					bucket[i] = bucket[last];
+					break;
+				}
+			}
+			this.slotInstances[slot] = null;
+			this.freeSlots[this.numFreeSlots++] = slot;
+		} else {
+			this.numDeadVantages++;
+			if (this.numDeadVantages > TOMBSTONE_RATIO * this.numInstances)
+				this.rebuild();
+		}
+	}
+
+	/*
+	 * Follows the route of inst from the root and returns the first active slot holding
+	 * the same feature values and class, or NIL.
+	 */
+	protected int search(Instance inst) {
+		double[] values = new double[this.nDims];
+		FlatKDTree.loadFeatures(inst, values, 0);
+		double classValue = inst.classValue();
+
+		int node = this.root;
+		while (node != NIL) {
+			int[] bucket = this.buckets[node];
+			if (bucket != null) {
+				for (int i = 0; i < this.bucketSizes[node]; i++) {
+					if (this.isSlotEqual(bucket[i], values, classValue))
+						return bucket[i];
+				}
+				return NIL;
+			}
+			int vp = this.vantage[node];
+			if (this.active[vp] && this.isSlotEqual(vp, values, classValue))
+				return vp;
+			double distance = this.kernel.distance(values, 0, this.coords, vp * this.nDims, this.nDims);
+			node = distance < this.radius[node] ? this.inside[node] : this.outside[node];
+		}
+		return NIL;
+	}
+
+	private boolean isSlotEqual(int slot, double[] values, double classValue) {
+		if (this.labels[slot] != classValue)
+			return false;
+		int offset = slot * this.nDims;
+		for (int i = 0; i < this.nDims; i++) {
+			if (this.coords[offset + i] != values[i])
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * The tree rebuilds itself when needed.
+	 */
+	@Override
+	public boolean isToRebuild() {
+		return false;
+	}
+}
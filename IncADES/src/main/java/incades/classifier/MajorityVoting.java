@@ -19,7 +19,6 @@ package incades.classifier;
 
 import java.util.Collection;
 import java.util.Random;
-import java.util.Vector;
 import java.util.concurrent.ThreadLocalRandom;
 
 import com.yahoo.labs.samoa.instances.Instance;
@@ -32,26 +31,48 @@ public class MajorityVoting<T extends Classifier> {
 
 	public double[] distributionForInstance(Instance instance, Collection<T> classifiers)
 			throws Exception {
+		return vote(countVotes(instance, classifiers), this.random);
+	}
+
+	/*
+	 * Number of classifiers voting for each class, before any tie is resolved.
+	 */
+	public static double[] countVotes(Instance instance, Collection<? extends Classifier> classifiers)
+			throws Exception {
 
-		double[] probs;
 		double[] votes = new double[instance.classAttribute().numValues()];
 
 		for (Classifier classifier : classifiers) {
-			probs = classifier.getVotesForInstance(instance);
-			int maxIndex = 0;
-			for (int j = 0; j < probs.length; j++) {
-				if (probs[j] > probs[maxIndex])
-					maxIndex = j;
-			}
+			addVote(votes, instance, classifier);
+		}
 
-			// Consider the cases when multiple classes happen to have the same
-			// probability
-			for (int j = 0; j < probs.length; j++) {
-				if (probs[j] == probs[maxIndex])
-					votes[j]++;
-			}
+		return votes;
+	}
+
+	/*
+	 * Adds the vote of classifier to votes, one for each class it is the most confident in.
+	 */
+	public static void addVote(double[] votes, Instance instance, Classifier classifier) throws Exception {
+		double[] probs = classifier.getVotesForInstance(instance);
+		int maxIndex = 0;
+		for (int j = 0; j < probs.length; j++) {
+			if (probs[j] > probs[maxIndex])
+				maxIndex = j;
 		}
 
+		// Consider the cases when multiple classes happen to have the same
+		// probability
+		for (int j = 0; j < probs.length; j++) {
+			if (probs[j] == probs[maxIndex])
+				votes[j]++;
+		}
+	}
+
+	/*
+	 * Gives 1 to the class voted the most, drawn at random among the tied ones.
+	 */
+	public static double[] vote(double[] votes, Random random) {
+
 		int tmpMajorityIndex = 0;
 		for (int k = 1; k < votes.length; k++) {
 			if (votes[k] > votes[tmpMajorityIndex])
@@ -60,21 +81,45 @@ public class MajorityVoting<T extends Classifier> {
 
 		// Consider the cases when multiple classes receive the same amount of
 		// votes
-		Vector<Integer> majorityIndexes = new Vector<Integer>();
+		int numMajorities = 0;
 		for (int k = 0; k < votes.length; k++) {
 			if (votes[k] == votes[tmpMajorityIndex])
-				majorityIndexes.add(k);
+				numMajorities++;
 		}
 		// Resolve the ties according to a uniform random distribution
-		int majorityIndex = majorityIndexes.get(random.nextInt(majorityIndexes.size()));
+		int draw = random.nextInt(numMajorities);
+		int majorityIndex = tmpMajorityIndex;
+		for (int k = 0; k < votes.length; k++) {
+			if (votes[k] == votes[tmpMajorityIndex] && draw-- == 0) {
+				majorityIndex = k;
+				break;
+			}
+		}
 
 		// set probs to 0
-		probs = new double[instance.classAttribute().numValues()];
+		double[] probs = new double[votes.length];
 		probs[majorityIndex] = 1; // the class that have been voted the most receives 1
 
 		return probs;
 	}
 
+	/*
+	 * Whether more than one class received the most votes.
+	 */
+	public static boolean isTied(double[] votes) {
+		int numMaxima = 0;
+		double maximum = Double.NEGATIVE_INFINITY;
+		for (int k = 0; k < votes.length; k++) {
+			if (votes[k] > maximum) {
+				maximum = votes[k];
+				numMaxima = 1;
+			} else if (votes[k] == maximum) {
+				numMaxima++;
+			}
+		}
+		return numMaxima > 1;
+	}
+
 	public int maxIndex(double[] doubles) {
 
 		double maximum = 0;
@@ -20,21 +20,47 @@
 
 package incades.classifier;
 
+import java.util.Arrays;
+
 import com.yahoo.labs.samoa.instances.Instances;
 
+import incades.neighborsearch.NeighborSet;
+
 public class OverlapMeasurer {
+
+    private double[] distribution = new double[0];
+
     public double measureOverlap(Instances neighborhood) {
         
         int numClasses = neighborhood.numClasses();
         int numNeighbours = neighborhood.size();
 
-        double[] distribution = new double[numClasses];
+        double[] distribution = this.getDistribution(numClasses);
 
         for (int i =0; i < neighborhood.size(); ++i) {
             int classVal = (int) neighborhood.get(i).classValue();
             distribution[classVal]++;
         }
 
+        return this.maxClassDistribution(distribution, numNeighbours);
+    }
+
+    public double measureOverlap(NeighborSet neighborhood) {
+
+        int numNeighbours = neighborhood.size();
+
+        double[] distribution = this.getDistribution(neighborhood.numClasses());
+
+        for (int i = 0; i < numNeighbours; ++i) {
+            int classVal = (int) neighborhood.classValue(i);
+            distribution[classVal]++;
+        }
+
+        return this.maxClassDistribution(distribution, numNeighbours);
+    }
+
+    private double maxClassDistribution(double[] distribution, int numNeighbours) {
+
         double maximum = 0;
 
         for (int i = 0; i < distribution.length; ++i) {
@@ -46,4 +72,12 @@ public class OverlapMeasurer {
 
         return maxClassDist;
     }
+
+    private double[] getDistribution(int numClasses) {
+        if (this.distribution.length != numClasses)
+            this.distribution = new double[numClasses];
+        else
+            Arrays.fill(this.distribution, 0);
+        return this.distribution;
+    }
 }
@@ -25,6 +25,8 @@
 
 package incades.core;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -33,20 +35,38 @@ import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 
 import com.yahoo.labs.samoa.instances.Instance;
-import com.yahoo.labs.samoa.instances.Instances;
 
 import incades.classifier.IncADESClassifier;
+import incades.classifier.MajorityVoting;
 import incades.classifier.OverlapMeasurer;
 import incades.classifier.factory.AbstractClassifierFactory;
 import incades.classifier.factory.HoeffdingTreeFactory;
 import incades.concept.Concept;
+import incades.dynamicselection.CompetenceRegionCache;
 import incades.dynamicselection.KnoraEliminate;
+import incades.neighborsearch.CanberraKernel;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.NeighborSet;
+import incades.neighborsearch.Projection;
+import incades.neighborsearch.RebuildPolicy;
 import incades.neighborsearch.StreamNeighborSearch;
+import incades.neighborsearch.ThresholdRebuildPolicy;
+import incades.neighborsearch.factory.AbstractNeighborSearchFactory;
+import incades.neighborsearch.factory.FlatKDTreeFactory;
+import incades.neighborsearch.factory.MappedWindowFactory;
+import incades.neighborsearch.factory.NeighborSearchSelector;
+import incades.neighborsearch.factory.ProjectionFactory;
 import incades.pruningengine.AgeBasedPruningEngine;
 import incades.pruningengine.IPruningEngine;
 import incades.pruningengine.PruningMetrics;
-import incades.util.InstancesUtils;
-import datastructures.KDTreeCanberra;
+import datastructures.ArrayInstanceWindow;
+import datastructures.BackgroundRebuildNeighborSearch;
+import datastructures.CoordinateFormat;
+import datastructures.FeatureInstance;
+import datastructures.FeatureRecord;
+import datastructures.HandleQueue;
+import datastructures.InstanceWindow;
+import datastructures.MappedInstanceWindow;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import moa.classifiers.core.driftdetection.ChangeDetector;
@@ -67,7 +87,10 @@ public class IncADES extends AbstractClassifier {
 
 	private int TRAINING_SIZE = 200;
 
-	private LinkedList<Instance> DSEW = new LinkedList<Instance>();
+	private InstanceWindow DSEW = new ArrayInstanceWindow();
+
+	/* Handles of the DSEW entries in the index, in the order of the window */
+	private HandleQueue windowHandles = new HandleQueue();
 
     private KnoraEliminate knorae = new KnoraEliminate();
 
@@ -85,7 +108,36 @@ public class IncADES extends AbstractClassifier {
 	
 	private ChangeDetector changeDetector;
 
-    private KDTreeCanberra neighborSearch;
+    private StreamNeighborSearch neighborSearch;
+
+	private AbstractNeighborSearchFactory neighborSearchFactory;
+
+	private boolean backgroundRebuild = false;
+
+	private double approximationEpsilon = 0;
+
+	private int maxVisitedNodes = 0;
+
+	private DistanceKernel distanceKernel = new CanberraKernel();
+
+	private int graphM = 0;
+
+	private int efSearch = 0;
+
+	private CoordinateFormat coordinateFormat = CoordinateFormat.DOUBLE;
+
+	private int parallelThreshold = 0;
+
+	private Projection projection = null;
+
+	private boolean projectionRerank = true;
+
+	private NeighborSearchSelector indexSelector = null;
+
+	private CompetenceRegionCache competenceCache = null;
+
+	/* Changes whenever a classifier of the pool is added, removed or trained */
+	private long poolVersion = 0;
 
     private boolean knnWasSetUp = false;
 
@@ -93,16 +145,158 @@ public class IncADES extends AbstractClassifier {
 	private int warningLevel = 0;
 	private int numBuilds = 0;
 
+	private RebuildPolicy rebuildPolicy = new ThresholdRebuildPolicy();
+
 	private List<IncADESClassifier<PruningMetrics>> pool = new LinkedList<IncADESClassifier<PruningMetrics>>();
 
+	private Classifier[] poolArray = null;
+
     public IncADES() throws Exception {
         this.changeDetector = new RDDM();
 		this.pruningEngine = new AgeBasedPruningEngine(75);
 		this.classifierFactory = new HoeffdingTreeFactory();
+		this.neighborSearchFactory = new FlatKDTreeFactory();
+	}
+
+	public void setNeighborSearchFactory(AbstractNeighborSearchFactory neighborSearchFactory) {
+		this.neighborSearchFactory = neighborSearchFactory;
+	}
+
+	/*
+	 * Searches the neighbours in the space reduced by projection, fitted on the DSEW each
+	 * time the index is built (see ProjectedNeighborSearch). With rerank, more candidates
+	 * are taken in the reduced space and the closest in the original space are kept.
+	 * Null, the default, searches the original space. Applied to the indexes created
+	 * from then on.
+	 */
+	public void setProjection(Projection projection, boolean rerank) {
+		this.projection = projection;
+		this.projectionRerank = rerank;
+	}
+
+	public Projection getProjection() {
+		return this.projection;
+	}
+
+	/*
+	 * Decides when the neighbour index is rebuilt over the DSEW. The default follows the
+	 * thresholds of each index (see ThresholdRebuildPolicy); CostModelRebuildPolicy
+	 * rebuilds only when the queries would win back the time of the rebuild.
+	 */
+	public void setRebuildPolicy(RebuildPolicy rebuildPolicy) {
+		this.rebuildPolicy = rebuildPolicy;
+	}
+
+	public RebuildPolicy getRebuildPolicy() {
+		return this.rebuildPolicy;
+	}
+
+	/*
+	 * When enabled, rebuilds of the neighbour search run on a background thread while
+	 * the previous index keeps answering queries (see BackgroundRebuildNeighborSearch).
+	 */
+	public void setBackgroundRebuild(boolean backgroundRebuild) {
+		this.backgroundRebuild = backgroundRebuild;
+	}
+
+	/*
+	 * Lets the neighbour search return approximate neighbourhoods: subtrees are pruned
+	 * as if the current k-th distance were divided by (1+epsilon), and a query visits
+	 * at most maxVisitedNodes nodes (0 for no limit). Applied to the indexes created by
+	 * the neighbour search factory from then on.
+	 */
+	public void setApproximateSearch(double epsilon, int maxVisitedNodes) {
+		this.approximationEpsilon = epsilon;
+		this.maxVisitedNodes = maxVisitedNodes;
+	}
+
+	/*
+	 * Splits each neighbour query of the k-d tree over the common ForkJoin pool while the
+	 * DSEW holds at least minInstances instances, lowering the latency of single queries
+	 * on large windows. Zero, the default, keeps the queries on the calling thread.
+	 */
+	public void setParallelSearch(int minInstances) {
+		this.parallelThreshold = minInstances;
+	}
+
+	/*
+	 * Distance used to find the neighbourhood of the instances (Canberra by default),
+	 * given to the neighbour search factory when the index is created.
+	 */
+	public void setDistanceKernel(DistanceKernel distanceKernel) {
+		this.distanceKernel = distanceKernel;
+		if (this.competenceCache != null)
+			this.setCompetenceCache(this.competenceCache.capacity());
+	}
+
+	/*
+	 * Settings of the graph indexes, such as the HNSW graph: m links per point and per
+	 * level, and efSearch points kept by the search beam, traded between recall and
+	 * query time. Zero keeps the defaults of the index. Applied to the indexes created
+	 * by the neighbour search factory from then on.
+	 */
+	public void setGraphSearch(int m, int efSearch) {
+		this.graphM = m;
+		this.efSearch = efSearch;
+	}
+
+	/*
+	 * Format of the coordinates kept by the indexes that support a compact one, the
+	 * linear scan and the HNSW graph: floats halve their memory and 16 or 8-bit codes
+	 * divide it by four or eight, the neighbours found being ranked again with the exact
+	 * values. Applied to the indexes created by the neighbour search factory from then on.
+	 */
+	public void setCoordinateFormat(CoordinateFormat coordinateFormat) {
+		this.coordinateFormat = coordinateFormat;
+	}
+
+	/*
+	 * Keeps the DSEW in a memory-mapped file instead of the heap (see
+	 * MappedInstanceWindow), searched in place by a MappedWindowNeighborSearch. A file
+	 * written by a previous run is reopened with the window it held. It must be set
+	 * after prepareForUse, which empties the window. The index then stays the same: the
+	 * adaptive selection and the background rebuilds do not apply to it.
+	 */
+	public void setPersistentWindow(String file) throws IOException {
+		MappedInstanceWindow window = new MappedInstanceWindow(Paths.get(file), this.MAX_INSTANCES_ACCUMULATED + 1);
+		this.DSEW = window;
+		this.windowHandles.reset(window.size());
+		if (this.competenceCache != null)
+			this.competenceCache.clear();
+		this.neighborSearchFactory = new MappedWindowFactory(window);
+		this.neighborSearch = null;
+		this.knnWasSetUp = false;
+		this.updateNNSearch = true;
+	}
+
+	/*
+	 * When enabled, the neighbour search factory is chosen by a NeighborSearchSelector
+	 * from the size and dimensionality of the DSEW, in place of the one set with
+	 * setNeighborSearchFactory, and the index is rebuilt with another factory whenever
+	 * the window grows or shrinks past the limits of the selector.
+	 */
+	public void setAdaptiveIndexSelection(boolean adaptiveIndexSelection) {
+		this.indexSelector = adaptiveIndexSelection ? new NeighborSearchSelector() : null;
+	}
+
+	/*
+	 * Caches the region of competence and the votes of the last capacity distinct
+	 * feature vectors scored (see CompetenceRegionCache), so the drift detector does not
+	 * select again for the instance the evaluation has just scored. Zero disables the
+	 * cache, the default.
+	 */
+	public void setCompetenceCache(int capacity) {
+		this.competenceCache = capacity > 0 ? new CompetenceRegionCache(capacity, this.distanceKernel) : null;
+	}
+
+	public CompetenceRegionCache getCompetenceCache() {
+		return this.competenceCache;
 	}
 
 	public void trainOnInstanceImpl(Instance instance) {
 		try {
+			// Shared by the window, the index and the selection (see FeatureRecord)
+			instance = FeatureInstance.of(instance);
 
             // this.updateNNSearch = true;
 
@@ -113,20 +307,21 @@ public class IncADES extends AbstractClassifier {
 			if (this.instanceCount > this.numMinInstancesTrained)
 				this.updateDetector(instance);
 
-			Instance removedInstance = null;
 			this.getAccuracyEstimationInstances().addLast(instance);
+			if (this.projection != null)
+				this.projection.add(instance);
+			if (this.competenceCache != null)
+				this.competenceCache.onInsert(instance);
             
-			if (knnWasSetUp) {
-                this.neighborSearch.update(instance);
-            }
+			this.windowHandles.addLast(knnWasSetUp ? this.neighborSearch.addInstance(instance)
+					: StreamNeighborSearch.NO_HANDLE);
 			
-			if (this.getAccuracyEstimationInstances().size() > this.MAX_INSTANCES_ACCUMULATED) {
-				removedInstance = this.getAccuracyEstimationInstances().getFirst();
-				this.getAccuracyEstimationInstances().removeFirst();
-                this.neighborSearch.removeInstance(removedInstance);
-			}
+			if (this.getAccuracyEstimationInstances().size() > this.MAX_INSTANCES_ACCUMULATED)
+				this.removeOldestInstance();
+
+			this.selectIndex();
 
-            if (neighborSearch.isToRebuild()) {
+            if (knnWasSetUp && this.isToRebuild()) {
                 this.knnWasSetUp = false;
                 this.updateNNSearch();
             }
@@ -144,7 +339,10 @@ public class IncADES extends AbstractClassifier {
 			if (this.changeWasDetected && (this.warningLevel != this.instanceCount)) {
 				this.resetDetector();
 				this.shrinkAccuracyEstimationWindow();
-                this.updateNNSearch();
+				this.selectIndex();
+				// A short prefix was removed from the index, a long one is left to the rebuild
+				if (!this.knnWasSetUp || this.isToRebuild())
+					this.updateNNSearch();
 				this.warning = false;
 				this.warningLevel = 0;
 				this.changesDetected++;
@@ -170,6 +368,7 @@ public class IncADES extends AbstractClassifier {
 	protected void updateLastClassifier(Instance instance) throws Exception {
 		IncADESClassifier<PruningMetrics> lastClassifier =  this.getClassifiers().get(this.getNumClassifiersPool()-1);
 		lastClassifier.trainOnInstance(instance);
+		this.poolVersion++;
 }
 	
 	protected boolean classifierTrainedMaxInstances() {
@@ -193,17 +392,76 @@ public class IncADES extends AbstractClassifier {
 	}
 
     protected void createNNSearch() throws Exception {
-            this.neighborSearch = new KDTreeCanberra();
+        if (this.isIndexSelected())
+            this.neighborSearchFactory = this.selectFactory();
+        this.neighborSearchFactory.setApproximation(this.approximationEpsilon, this.maxVisitedNodes);
+        this.neighborSearchFactory.setDistanceKernel(this.distanceKernel);
+        this.neighborSearchFactory.setGraphParameters(this.graphM, this.efSearch);
+        this.neighborSearchFactory.setCoordinateFormat(this.coordinateFormat);
+        this.neighborSearchFactory.setParallelSearch(this.parallelThreshold);
+        AbstractNeighborSearchFactory factory = this.neighborSearchFactory;
+        // The mapped index scans the records of the window file, which hold the original features
+        if (this.projection != null && !(factory instanceof MappedWindowFactory))
+            factory = new ProjectionFactory(factory, this.projection, this.projectionRerank);
+        if (this.isRebuiltInBackground())
+            this.neighborSearch = new BackgroundRebuildNeighborSearch(factory);
+        else
+            this.neighborSearch = factory.createNeighborSearch();
+    }
+
+    private AbstractNeighborSearchFactory selectFactory() {
+        InstanceWindow window = this.getAccuracyEstimationInstances();
+        int nDims = window.isEmpty() ? 0 : window.getFirst().numAttributes() - 1;
+        // The inverted lists cannot be projected, their distance being Canberra
+        boolean sparse = this.projection == null && !window.isEmpty() && FeatureRecord.isSparse(window.getFirst());
+        return this.indexSelector.select(window.size(), nDims, sparse, this.distanceKernel);
     }
 
+	/*
+	 * Rebuilds the index over the DSEW when the selector prefers another factory for the
+	 * current window.
+	 */
+	private void selectIndex() {
+		if (!this.isIndexSelected() || !this.knnWasSetUp)
+			return;
+		if (this.selectFactory() == this.neighborSearchFactory)
+			return;
+
+		// Dropping the index makes even a background search be created with the new factory
+		this.neighborSearch = null;
+		this.updateNNSearch();
+	}
+
+	/*
+	 * A window kept in a file is always searched in place by the index it was set with,
+	 * which has nothing to build, so it is neither selected nor rebuilt in background.
+	 */
+	private boolean isIndexSelected() {
+		return this.indexSelector != null && !(this.DSEW instanceof MappedInstanceWindow);
+	}
+
+	private boolean isRebuiltInBackground() {
+		return this.backgroundRebuild && !(this.DSEW instanceof MappedInstanceWindow);
+	}
+
+	private boolean isToRebuild() {
+		return this.rebuildPolicy.isToRebuild(this.neighborSearch, this.getAccuracyEstimationInstances().size());
+	}
+
     protected StreamNeighborSearch getLinearNNSearch() {
-        return (StreamNeighborSearch) this.neighborSearch;
+        return this.neighborSearch;
     }
 	
 	private void updateNNSearch() {
 		try {
-			this.createNNSearch();
-            this.neighborSearch.setInstances(InstancesUtils.gerarDataset(this.getAccuracyEstimationInstances(), "Validation Instances"));
+			// The background search keeps serving queries while it rebuilds itself
+			if (!this.isRebuiltInBackground() || this.neighborSearch == null)
+				this.createNNSearch();
+			long start = System.nanoTime();
+            this.neighborSearch.setInstances(this.getAccuracyEstimationInstances());
+			this.windowHandles.reset(this.getAccuracyEstimationInstances().size());
+			this.rebuildPolicy.onBuild(this.neighborSearch, this.getAccuracyEstimationInstances().size(),
+					System.nanoTime() - start);
 			this.updateNNSearch = false;
             this.knnWasSetUp = true;
 			this.numBuilds++;
@@ -226,30 +484,22 @@ public class IncADES extends AbstractClassifier {
 					return probs;
 				}
 			}
-			Instances neighborhood = this.getLinearNNSearch().kNearestNeighbours(instance, this.numNeighbors);
-
-			double complexity = this.overlap.measureOverlap(neighborhood);
-
-
-			if (complexity >= 1.0) {
-				double[] classes = new double[instance.numClasses()];
-				for (int i = 0; i < neighborhood.size(); i++) {
-					int neighborClass = (int) neighborhood.get(i).classValue();
-					classes[neighborClass]++;
-				}
-				return classes;
+			NeighborSet neighborhood = null;
+			if (this.competenceCache != null) {
+				neighborhood = this.competenceCache.getNeighborhood(instance, this.numNeighbors);
+				double[] votes = this.competenceCache.getVotes(this.poolVersion);
+				if (votes != null)
+					return votes;
 			}
-				
-			Classifier[] classifiers = new Classifier[this.getNumClassifiersPool()];
-
-			for (int i = 0; i < this.getNumClassifiersPool(); ++i) {
-				classifiers[i] = this.getClassifiers().get(i);
+			if (neighborhood == null) {
+				long start = System.nanoTime();
+				neighborhood = this.getLinearNNSearch().kNearestNeighbourSet(instance, this.numNeighbors);
+				this.rebuildPolicy.onQuery(this.getLinearNNSearch(), 1, System.nanoTime() - start);
+				if (this.competenceCache != null)
+					this.competenceCache.put(instance, this.numNeighbors, neighborhood);
 			}
 
-
-            double[] retorno = knorae.classify(classifiers, neighborhood, instance);
-						
-			return retorno;
+			return this.getVotesForNeighborhood(instance, neighborhood, this.competenceCache);
 		} catch (Exception e) {
 			StringBuilder builder = new StringBuilder();
 			getModelDescription(builder, 0);
@@ -258,6 +508,67 @@ public class IncADES extends AbstractClassifier {
 		
 	}
 
+	/*
+	 * Scores a micro-batch against the current model, with a single batched neighbour
+	 * query. Gives the votes of getVotesForInstance called on each instance.
+	 */
+	public double[][] getVotesForInstances(Instance[] instances) {
+		try {
+			if (updateNNSearch == true){
+				this.updateNNSearch();
+			} else if (this.getNumClassifiersPool() < 1) {
+				double[][] votes = new double[instances.length][];
+				for (int i = 0; i < instances.length; i++) {
+					votes[i] = this.getVotesForInstance(instances[i]);
+				}
+				return votes;
+			}
+			long start = System.nanoTime();
+			NeighborSet[] neighborhoods = this.getLinearNNSearch().kNearestNeighbourSets(instances, this.numNeighbors);
+			this.rebuildPolicy.onQuery(this.getLinearNNSearch(), instances.length, System.nanoTime() - start);
+
+			double[][] votes = new double[instances.length][];
+			for (int i = 0; i < instances.length; i++) {
+				votes[i] = this.getVotesForNeighborhood(instances[i], neighborhoods[i], null);
+			}
+			return votes;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * Votes for instance given its region of competence, cached in cache unless null or
+	 * drawn at random among tied classes, which a cached answer would freeze.
+	 */
+	private double[] getVotesForNeighborhood(Instance instance, NeighborSet neighborhood,
+			CompetenceRegionCache cache) throws Exception {
+
+		double complexity = this.overlap.measureOverlap(neighborhood);
+
+
+		if (complexity >= 1.0) {
+			double[] classes = new double[instance.numClasses()];
+			for (int i = 0; i < neighborhood.size(); i++) {
+				int neighborClass = (int) neighborhood.classValue(i);
+				classes[neighborClass]++;
+			}
+			if (cache != null)
+				cache.putVotes(this.poolVersion, classes);
+			return classes;
+		}
+			
+		Classifier[] classifiers = this.getPoolArray();
+
+
+		double[] votes = knorae.countVotes(classifiers, neighborhood, instance);
+		double[] retorno = MajorityVoting.vote(votes, ThreadLocalRandom.current());
+		if (cache != null && !MajorityVoting.isTied(votes))
+			cache.putVotes(this.poolVersion, retorno);
+					
+		return retorno;
+	}
+
 	protected IncADESClassifier<PruningMetrics> addNewIncrementalClassifier(Instance instance, 
 			List<Instance> DSEL) throws Exception {
 		
@@ -280,6 +591,8 @@ public class IncADES extends AbstractClassifier {
 		if(measuredNewClassifier != null){
 			this.getClassifiers().add(measuredNewClassifier);
 		}
+		this.poolArray = null;
+		this.poolVersion++;
 		
 		this.trainingCount = 0;
 
@@ -295,6 +608,11 @@ public class IncADES extends AbstractClassifier {
 		this.pool.remove(classifierToPrune);
 	}
 
+	/*
+	 * Drops the DSEW entries older than the warning. When they outnumber the survivors,
+	 * they are not removed from the index one by one: the index is marked as not set up,
+	 * to be rebuilt over the survivors.
+	 */
     protected void shrinkAccuracyEstimationWindow() throws Exception {
 		
 		int diff = this.instanceCount - this.warningLevel;
@@ -302,11 +620,29 @@ public class IncADES extends AbstractClassifier {
 		if (diff < 5 || diff == instanceCount)
 			diff = 5;
 
+		if (this.getAccuracyEstimationInstances().size() - diff > diff)
+			this.knnWasSetUp = false;
+
 		while (this.getAccuracyEstimationInstances().size() > diff) {
-			this.getAccuracyEstimationInstances().removeFirst();
+			this.removeOldestInstance();
 		}		
 	}
 
+	/*
+	 * Drops the oldest instance of the DSEW, removed from the index through the handle
+	 * it was inserted under, without a search.
+	 */
+	private void removeOldestInstance() throws Exception {
+		Instance removedInstance = this.getAccuracyEstimationInstances().removeFirst();
+		int handle = this.windowHandles.removeFirst();
+		if (this.knnWasSetUp)
+			this.neighborSearch.removeHandle(handle, removedInstance);
+		if (this.competenceCache != null)
+			this.competenceCache.onRemove(removedInstance);
+		if (this.projection != null)
+			this.projection.remove(removedInstance);
+	}
+
     protected void updateIncADES(Instance instance) throws Exception {
 
 		
@@ -320,7 +656,7 @@ public class IncADES extends AbstractClassifier {
 		
 	}
 
-	protected LinkedList<Instance> getAccuracyEstimationInstances() {
+	protected InstanceWindow getAccuracyEstimationInstances() {
 		return this.DSEW;
 	}
 
@@ -333,6 +669,17 @@ public class IncADES extends AbstractClassifier {
 			this.changeDetector.resetLearning();
 	}
 
+	/*
+	 * The pool as an array, rebuilt only after the pool changes so that predictions
+	 * do not allocate it every time.
+	 */
+	private Classifier[] getPoolArray() {
+		if (this.poolArray == null) {
+			this.poolArray = this.getClassifiers().toArray(new Classifier[this.getNumClassifiersPool()]);
+		}
+		return this.poolArray;
+	}
+
 	private int getNumClassifiersPool() {
 		return this.pool.size();
 	}
@@ -353,11 +700,19 @@ public class IncADES extends AbstractClassifier {
 	@Override
 	public void resetLearningImpl() {
 		this.DSEW.clear();
+		this.windowHandles.reset(0);
+		if (this.projection != null)
+			this.projection.clear();
+		if (this.competenceCache != null)
+			this.competenceCache.clear();
+		this.poolVersion++;
 		this.resetDetector();
 		this.pool.clear();
+		this.poolArray = null;
 		this.changesDetected = 0;
 		this.knnWasSetUp = false;
 		this.updateNNSearch = true;
+		this.neighborSearch = null;
 	}
 
 	@Override
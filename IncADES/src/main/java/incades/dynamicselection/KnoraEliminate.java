@@ -20,71 +20,68 @@
 
 package incades.dynamicselection;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
 
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 
+import datastructures.KnnQueryContext;
 import incades.classifier.MajorityVoting;
+import incades.neighborsearch.NeighborSet;
 import moa.classifiers.Classifier;
 
 public class KnoraEliminate {
-    
+
     public double[] classify(Classifier[] classifiers, Instances roc, Instance target) throws Exception {
+        return this.classify(classifiers, roc.size(), roc::get, target);
+    }
 
-        ArrayList<Classifier> chosenEnsemble = new ArrayList<Classifier>();
+    public double[] classify(Classifier[] classifiers, NeighborSet roc, Instance target) throws Exception {
+        return this.classify(classifiers, roc.size(), roc::instance, target);
+    }
 
-        Map<Classifier, Integer> hitMap = new HashMap<Classifier, Integer>();
-        
+    private double[] classify(Classifier[] classifiers, int rocSize, IntFunction<Instance> roc, Instance target) throws Exception {
+        // The random source of the calling thread breaks the ties
+        return MajorityVoting.vote(this.countVotes(classifiers, rocSize, roc, target), ThreadLocalRandom.current());
+    }
+
+    /*
+     * Votes of the selected ensemble for each class, leaving the ties to the caller.
+     */
+    public double[] countVotes(Classifier[] classifiers, NeighborSet roc, Instance target) throws Exception {
+        return this.countVotes(classifiers, roc.size(), roc::instance, target);
+    }
+
+    private double[] countVotes(Classifier[] classifiers, int rocSize, IntFunction<Instance> roc, Instance target) throws Exception {
+
+        int[] hitMap = KnnQueryContext.get().hitBuffer(classifiers.length);
+        int mostHits = 0;
 
         for (int i = 0; i < classifiers.length; ++i) {
 
             Classifier classifier = classifiers[i];
             int numHits = 0;
 
-            int neighborsPredictedCorrectly = 0;
-            for (int j = 0; j < roc.size(); ++j) {
-                Instance testInst = roc.get(j);
+            for (int j = 0; j < rocSize; ++j) {
+                Instance testInst = roc.apply(j);
                 if (classifier.correctlyClassifies(testInst)) {
-                    neighborsPredictedCorrectly++;
                     numHits++;
                 }
             }
-            hitMap.put(classifier, numHits);
-            if (neighborsPredictedCorrectly == roc.size()) {
-                chosenEnsemble.add(classifier);
-            }
-            hitMap.put(classifier, numHits);
+            hitMap[i] = numHits;
+            mostHits = Math.max(mostHits, numHits);
         }
 
-        if (chosenEnsemble.size() == 0) {
-            int numNeighbors = roc.size() - 1;
-            while (numNeighbors > 0) {
-                for (Classifier classifier : classifiers) {
-                    int numHits = hitMap.get(classifier);
-                    if (numHits == numNeighbors) {
-                        chosenEnsemble.add(classifier);
-                    }
-                }
-                if (chosenEnsemble.size() > 0) {
-                    break;
-                }
-            numNeighbors--;
-            }
-        }
-
-        if (chosenEnsemble.size() == 0) {
-            for (int i = 0; i < classifiers.length; ++i) {
-                chosenEnsemble.add(classifiers[i]);
+        // The classifiers hitting the most neighbours vote, or all of them when none
+        // hits any neighbour
+        double[] votes = new double[target.classAttribute().numValues()];
+        for (int i = 0; i < classifiers.length; ++i) {
+            if (mostHits == 0 || hitMap[i] == mostHits) {
+                MajorityVoting.addVote(votes, target, classifiers[i]);
             }
         }
 
-        MajorityVoting<Classifier> combiner = new MajorityVoting<Classifier>();
-
-        double[] votes = combiner.distributionForInstance(target, chosenEnsemble);
-
         return votes;
     }
 
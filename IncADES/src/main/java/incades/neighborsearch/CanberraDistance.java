@@ -20,14 +20,23 @@
 
 package incades.neighborsearch;
 
-import org.apache.commons.math3.util.FastMath;
 
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 
+import datastructures.FeatureInstance;
+import datastructures.FeatureRecord;
 import moa.classifiers.lazy.neighboursearch.NormalizableDistance;
 
 public class CanberraDistance extends NormalizableDistance implements Cloneable {
+
+	/*
+	 * The vectorized kernel is used when the JVM was started with
+	 * --add-modules jdk.incubator.vector, unless -Dincades.vectorize=false is given, and
+	 * only for points filling at least one vector register.
+	 */
+	private static final boolean VECTORIZED = isVectorApiUsable();
+	private static final int VECTOR_MIN_LENGTH = VECTORIZED ? VectorCanberraKernel.lanes() : Integer.MAX_VALUE;
 	
 	public CanberraDistance() {
 	}
@@ -38,46 +47,242 @@ public class CanberraDistance extends NormalizableDistance implements Cloneable
 	
 	@Override
 	public double distance(Instance first, Instance second) {
+		if (first instanceof FeatureInstance && second instanceof FeatureInstance
+				|| FeatureRecord.isSparse(first) || FeatureRecord.isSparse(second))
+			return distance(FeatureRecord.of(first), FeatureRecord.of(second));
+
 		double[] x = first.toDoubleArray();
 		double[] y = second.toDoubleArray();
 		
 		int classIndex = first.classIndex();
+		if (classIndex < 0 || classIndex >= x.length)
+			return distance(x, 0, y, 0, x.length);
 
-		double sum = 0;
-		
-		for (int i = 0; i < x.length; i++) {
-			if (i != classIndex) {
-				double numerator = FastMath.abs(x[i]-y[i]);
-				double denominator = FastMath.abs(x[i]) + FastMath.abs(y[i]);
-				if (denominator != 0)
-					sum += numerator / denominator;
-			}			
-		}
-		
-	    return sum;
+		// The attributes before and after the class are two contiguous runs
+		return distance(x, 0, y, 0, classIndex)
+				+ distance(x, classIndex + 1, y, classIndex + 1, x.length - classIndex - 1);
 	  }
 	
+	/*
+	 * Stops summing once the distance exceeds cutOffValue, returning the partial sum.
+	 */
 	@Override
 	public double distance(Instance first, Instance second, double cutOffValue) {
+		if (first instanceof FeatureInstance && second instanceof FeatureInstance
+				|| FeatureRecord.isSparse(first) || FeatureRecord.isSparse(second))
+			return distance(FeatureRecord.of(first), FeatureRecord.of(second), cutOffValue);
+
 		double[] x = first.toDoubleArray();
 		double[] y = second.toDoubleArray();
 		
 		int classIndex = first.classIndex();
+		if (classIndex < 0 || classIndex >= x.length)
+			return distance(x, 0, y, 0, x.length, cutOffValue);
 
-		double sum = 0;
-		
-		for (int i = 0; i < x.length; i++) {
-			if (i != classIndex) {
-				double numerator = FastMath.abs(x[i]-y[i]);
-				double denominator = FastMath.abs(x[i]) + FastMath.abs(y[i]);
-				if (denominator != 0)
-					sum += numerator / denominator;
-			}			
-		}
-		
-	    return sum;
+		double sum = distance(x, 0, y, 0, classIndex, cutOffValue);
+		if (sum > cutOffValue)
+			return sum;
+		return sum + distance(x, classIndex + 1, y, classIndex + 1, x.length - classIndex - 1, cutOffValue - sum);
 	  }
 	
+	/*
+	 * Canberra distance between length values of x starting at xOffset and of y
+	 * starting at yOffset. Both arrays are expected to hold features only.
+	 */
+	public static double distance(double[] x, int xOffset, double[] y, int yOffset, int length) {
+		if (length >= VECTOR_MIN_LENGTH)
+			return VectorCanberraKernel.distance(x, xOffset, y, yOffset, length);
+		return scalarDistance(x, xOffset, y, yOffset, length);
+	}
+
+	private static double scalarDistance(double[] x, int xOffset, double[] y, int yOffset, int length) {
+		double sum = 0;
+
+		for (int i = 0; i < length; i++) {
+			sum += term(x[xOffset + i], y[yOffset + i]);
+		}
+
+		return sum;
+	}
+
+	/*
+	 * Same distance, abandoned as soon as the partial sum exceeds cutoff. The value
+	 * returned is then larger than cutoff but may be smaller than the distance.
+	 */
+	public static double distance(double[] x, int xOffset, double[] y, int yOffset, int length, double cutoff) {
+		if (length >= VECTOR_MIN_LENGTH)
+			return VectorCanberraKernel.distance(x, xOffset, y, yOffset, length, cutoff);
+
+		double sum = 0;
+		int i = 0;
+
+		// The cutoff is checked every four dimensions, a test per term costs more than it saves
+		for (; i + 4 <= length; i += 4) {
+			sum += term(x[xOffset + i], y[yOffset + i]);
+			sum += term(x[xOffset + i + 1], y[yOffset + i + 1]);
+			sum += term(x[xOffset + i + 2], y[yOffset + i + 2]);
+			sum += term(x[xOffset + i + 3], y[yOffset + i + 3]);
+			if (sum > cutoff)
+				return sum;
+		}
+		for (; i < length; i++) {
+			sum += term(x[xOffset + i], y[yOffset + i]);
+		}
+
+		return sum;
+	}
+
+	public static double distance(FeatureRecord x, FeatureRecord y) {
+		if (x.isSparse() || y.isSparse())
+			return sparseDistance(x, y, Double.POSITIVE_INFINITY);
+		int length = x.numFeatures();
+		if (length >= VECTOR_MIN_LENGTH)
+			return VectorCanberraKernel.distance(x.features(), 0, y.features(), 0, length);
+		return distance(x, y, Double.POSITIVE_INFINITY);
+	}
+
+	/*
+	 * Distance between the features of two records, taking the denominators from their
+	 * magnitudes, and abandoned past cutoff as above.
+	 */
+	public static double distance(FeatureRecord x, FeatureRecord y, double cutoff) {
+		if (x.isSparse() || y.isSparse())
+			return sparseDistance(x, y, cutoff);
+		int length = x.numFeatures();
+		if (length >= VECTOR_MIN_LENGTH)
+			return VectorCanberraKernel.distance(x.features(), 0, y.features(), 0, length, cutoff);
+
+		double[] xValues = x.features();
+		double[] yValues = y.features();
+		double[] xMagnitudes = x.magnitudes();
+		double[] yMagnitudes = y.magnitudes();
+		double sum = 0;
+		int i = 0;
+
+		for (; i + 4 <= length; i += 4) {
+			sum += term(xValues[i], xMagnitudes[i], yValues[i], yMagnitudes[i]);
+			sum += term(xValues[i + 1], xMagnitudes[i + 1], yValues[i + 1], yMagnitudes[i + 1]);
+			sum += term(xValues[i + 2], xMagnitudes[i + 2], yValues[i + 2], yMagnitudes[i + 2]);
+			sum += term(xValues[i + 3], xMagnitudes[i + 3], yValues[i + 3], yMagnitudes[i + 3]);
+			if (sum > cutoff)
+				return sum;
+		}
+		for (; i < length; i++) {
+			sum += term(xValues[i], xMagnitudes[i], yValues[i], yMagnitudes[i]);
+		}
+
+		return sum;
+	}
+
+	/*
+	 * Distance between two records going over the union of their non-zero features only.
+	 * A dimension that is zero in both contributes nothing, and one that is zero in a
+	 * single record contributes 1. Abandoned past cutoff as above.
+	 */
+	public static double sparseDistance(FeatureRecord x, FeatureRecord y, double cutoff) {
+		int[] xIndices = x.nonZeroIndices();
+		double[] xValues = x.nonZeroValues();
+		int[] yIndices = y.nonZeroIndices();
+		double[] yValues = y.nonZeroValues();
+		double sum = 0;
+		int i = 0;
+		int j = 0;
+
+		while (i < xIndices.length && j < yIndices.length) {
+			if (xIndices[i] == yIndices[j])
+				sum += term(xValues[i++], yValues[j++]);
+			else if (xIndices[i] < yIndices[j])
+				sum += term(xValues[i++], 0);
+			else
+				sum += term(0, yValues[j++]);
+			if (sum > cutoff)
+				return sum;
+		}
+		for (; i < xIndices.length; i++) {
+			sum += term(xValues[i], 0);
+		}
+		for (; j < yIndices.length; j++) {
+			sum += term(0, yValues[j]);
+		}
+
+		return sum;
+	}
+
+	/*
+	 * Distances from the query, length values starting at queryOffset, to the rows
+	 * fromRow to toRow - 1 of rows, which holds length values per row. The distance to
+	 * row r is written to out[outOffset + r - fromRow]. Meant for scans of contiguous
+	 * points, such as leaves and brute-force searches.
+	 */
+	public static void distances(double[] query, int queryOffset, double[] rows, int fromRow, int toRow, int length,
+			double[] out, int outOffset) {
+		if (length >= VECTOR_MIN_LENGTH) {
+			VectorCanberraKernel.distances(query, queryOffset, rows, fromRow, toRow, length, out, outOffset);
+			return;
+		}
+
+		for (int row = fromRow; row < toRow; row++) {
+			out[outOffset++] = scalarDistance(query, queryOffset, rows, row * length, length);
+		}
+	}
+
+	public static boolean isVectorized() {
+		return VECTORIZED;
+	}
+
+	private static boolean isVectorApiUsable() {
+		if (!Boolean.parseBoolean(System.getProperty("incades.vectorize", "true")))
+			return false;
+		if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+			return false;
+		try {
+			return VectorCanberraKernel.lanes() > 1;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	/*
+	 * Contribution of a single dimension to the Canberra distance. It is also a lower
+	 * bound of the distance to any point lying beyond value2 on that dimension.
+	 */
+	public static double term(double value1, double value2) {
+		double denominator = Math.abs(value1) + Math.abs(value2);
+		if (denominator == 0)
+			return 0;
+		return Math.abs(value1 - value2) / denominator;
+	}
+
+	private static double term(double value1, double magnitude1, double value2, double magnitude2) {
+		double denominator = magnitude1 + magnitude2;
+		if (denominator == 0)
+			return 0;
+		return Math.abs(value1 - value2) / denominator;
+	}
+
+	/*
+	 * Lower bound of the Canberra distance from the query to any point of the box whose
+	 * corners are lower and upper, starting at boxOffset. A term only grows as a value
+	 * moves away from the query on either side, so each dimension is bounded by the term
+	 * of the closest value of the box. The sum stops growing once it exceeds cutoff.
+	 */
+	public static double boxDistance(double[] query, double[] lower, double[] upper, int boxOffset, int length,
+			double cutoff) {
+		double sum = 0;
+
+		for (int i = 0; i < length && sum <= cutoff; i++) {
+			double value = query[i];
+			double low = lower[boxOffset + i];
+			double high = upper[boxOffset + i];
+			if (value < low)
+				sum += term(value, low);
+			else if (value > high)
+				sum += term(value, high);
+		}
+
+		return sum;
+	}
+
 	public double canbDifference(int index, double val1, double val2) {
 	    double val = difference(index, val1, val2);
 	    return Math.abs(val);
@@ -0,0 +1,57 @@
+/*
+*    CanberraKernel.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package incades.neighborsearch;
+
+/*
+ * Canberra distance, the one used by IncA-DES by default. Delegates to the static
+ * methods of CanberraDistance, which use the Vector API when it is available.
+ */
+public class CanberraKernel implements DistanceKernel {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public double distance(double[] x, int xOffset, double[] y, int yOffset, int length) {
+		return CanberraDistance.distance(x, xOffset, y, yOffset, length);
+	}
+
+	@Override
+	public double distance(double[] x, int xOffset, double[] y, int yOffset, int length, double cutoff) {
+		return CanberraDistance.distance(x, xOffset, y, yOffset, length, cutoff);
+	}
+
+	@Override
+	public double boxDistance(double[] query, double[] lower, double[] upper, int boxOffset, int length,
+			double cutoff) {
+		return CanberraDistance.boxDistance(query, lower, upper, boxOffset, length, cutoff);
+	}
+
+	@Override
+	public void distances(double[] query, int queryOffset, double[] rows, int fromRow, int toRow, int length,
+			double[] out, int outOffset) {
+		CanberraDistance.distances(query, queryOffset, rows, fromRow, toRow, length, out, outOffset);
+	}
+
+	@Override
+	public String toString() {
+		return "Canberra";
+	}
+}
@@ -0,0 +1,62 @@
+/*
+*    ChebyshevKernel.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package incades.neighborsearch;
+
+/*
+ * Chebyshev distance, the largest difference over the dimensions.
+ */
+public class ChebyshevKernel implements DistanceKernel {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public double distance(double[] x, int xOffset, double[] y, int yOffset, int length) {
+		double max = 0;
+		for (int i = 0; i < length; i++) {
+			max = Math.max(max, Math.abs(x[xOffset + i] - y[yOffset + i]));
+		}
+		return max;
+	}
+
+	@Override
+	public double distance(double[] x, int xOffset, double[] y, int yOffset, int length, double cutoff) {
+		double max = 0;
+		for (int i = 0; i < length && max <= cutoff; i++) {
+			max = Math.max(max, Math.abs(x[xOffset + i] - y[yOffset + i]));
+		}
+		return max;
+	}
+
+	@Override
+	public double boxDistance(double[] query, double[] lower, double[] upper, int boxOffset, int length,
+			double cutoff) {
+		double max = 0;
+		for (int i = 0; i < length && max <= cutoff; i++) {
+			max = Math.max(max, EuclideanKernel.gap(query[i], lower[boxOffset + i], upper[boxOffset + i]));
+		}
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "Chebyshev";
+	}
+}
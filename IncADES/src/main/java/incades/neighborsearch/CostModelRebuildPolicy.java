@@ -0,0 +1,130 @@
+/*
+*    CostModelRebuildPolicy.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch;
+
+/*
+ * Rebuilds when the time the queries would save over the next horizon queries exceeds
+ * the time of a rebuild.
+ *
+ * The work of a query is the number of nodes it visits plus the number of distances it
+ * computes. The queries following a build give the work of a fresh index, and the
+ * saving of a rebuild is the excess of the moving average of the work over that
+ * baseline, converted to time with the moving average of the time per unit of work.
+ * The baseline is scaled linearly to the current size of the window, which overrates
+ * the work of a fresh tree on a window that grew, so the model errs towards not
+ * rebuilding. The cost of a rebuild is the time of the last build, scaled the same way.
+ * Neither scales well from a small window, so the index is rebuilt once the window is
+ * RECALIBRATION_GROWTH times larger than at the last build, which only costs a
+ * logarithmic number of builds while the window fills.
+ *
+ * Indexes that do not count their work fall back to their own thresholds (see
+ * ThresholdRebuildPolicy). With a background rebuild, the time of a build is the part
+ * paid by the thread of IncADES.
+ */
+public class CostModelRebuildPolicy extends ThresholdRebuildPolicy {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_HORIZON = 250;
+
+	public static final int DEFAULT_BASELINE_QUERIES = 32;
+
+	private static final int RECALIBRATION_GROWTH = 2;
+
+	private final int horizon;
+	private final int baselineQueries;
+
+	private double baselineWork = 0;
+	private int baselineSamples = 0;
+	private double nanosPerWork = 0;
+	private int workSamples = 0;
+
+	public CostModelRebuildPolicy() {
+		this(DEFAULT_HORIZON, DEFAULT_BASELINE_QUERIES);
+	}
+
+	/*
+	 * horizon is the number of queries over which a rebuild has to pay for itself, and
+	 * baselineQueries the number of queries after a build that measure a fresh index.
+	 * No rebuild is decided before twice that many queries.
+	 */
+	public CostModelRebuildPolicy(int horizon, int baselineQueries) {
+		if (horizon < 1 || baselineQueries < 1)
+			throw new IllegalArgumentException("The horizon and the number of baseline queries must be positive.");
+		this.horizon = horizon;
+		this.baselineQueries = baselineQueries;
+	}
+
+	@Override
+	public void onBuild(StreamNeighborSearch index, int numInstances, long buildNanos) {
+		super.onBuild(index, numInstances, buildNanos);
+		this.baselineWork = 0;
+		this.baselineSamples = 0;
+	}
+
+	@Override
+	public void onQuery(StreamNeighborSearch index, int numQueries, long queryNanos) {
+		super.onQuery(index, numQueries, queryNanos);
+		if (this.lastQueryWork <= 0)
+			return;
+
+		if (this.baselineSamples < this.baselineQueries)
+			this.baselineWork += (this.lastQueryWork - this.baselineWork) / ++this.baselineSamples;
+
+		double nanos = this.lastQueryNanos / this.lastQueryWork;
+		this.nanosPerWork += (this.workSamples++ == 0 ? 1 : SMOOTHING) * (nanos - this.nanosPerWork);
+	}
+
+	@Override
+	public boolean isToRebuild(StreamNeighborSearch index, int numInstances) {
+		if (index.getTotalNodesVisited() < 0 || index.getTotalDistancesComputed() < 0)
+			return super.isToRebuild(index, numInstances);
+
+		RebuildStatistics statistics = this.statistics;
+		statistics.numChecks++;
+		if (numInstances > RECALIBRATION_GROWTH * Math.max(statistics.lastBuildSize, this.baselineQueries))
+			return this.requestRebuild("recalibration: the window grew from " + statistics.lastBuildSize + " to "
+					+ numInstances + " instances");
+		if (this.baselineSamples < this.baselineQueries || this.queriesSinceBuild < 2L * this.baselineQueries
+				|| statistics.lastBuildSize == 0)
+			return false;
+
+		double scale = (double) numInstances / statistics.lastBuildSize;
+		double work = statistics.averageNodesVisited + statistics.averageDistancesComputed;
+		double excess = work - this.baselineWork * scale;
+
+		statistics.projectedSavings = Math.max(0, excess) * this.nanosPerWork * this.horizon;
+		statistics.estimatedRebuildCost = statistics.lastBuildNanos * scale;
+		if (statistics.projectedSavings <= statistics.estimatedRebuildCost)
+			return false;
+
+		return this.requestRebuild(String.format("cost model: %.1f units per query against %.1f after the last build",
+				work, this.baselineWork * scale));
+	}
+
+	public int getHorizon() {
+		return this.horizon;
+	}
+
+	@Override
+	public String toString() {
+		return "CostModelRebuildPolicy(horizon=" + this.horizon + ")";
+	}
+}
@@ -0,0 +1,69 @@
+/*
+*    DistanceKernel.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package incades.neighborsearch;
+
+import java.io.Serializable;
+
+/*
+ * Distance between points stored as runs of feature values in primitive arrays, with
+ * the class attribute already removed. The indexes only reach their points through a
+ * kernel, so any of the implementations can be used by them.
+ *
+ * Besides the distance itself, a kernel gives two things to the searches: a version
+ * that abandons the computation once the distance is known to exceed a cutoff (the
+ * k-th distance found so far), and a lower bound of the distance from a query to any
+ * point of a bounding box, built from the bound of every dimension, used to prune the
+ * subtrees of a k-d tree.
+ */
+public interface DistanceKernel extends Serializable {
+
+	/*
+	 * Distance between length values of x starting at xOffset and of y starting at
+	 * yOffset.
+	 */
+	double distance(double[] x, int xOffset, double[] y, int yOffset, int length);
+
+	/*
+	 * Same distance, except that once the partial result exceeds cutoff the remaining
+	 * dimensions are skipped. The value returned is then larger than cutoff, but not
+	 * necessarily the distance.
+	 */
+	double distance(double[] x, int xOffset, double[] y, int yOffset, int length, double cutoff);
+
+	/*
+	 * Lower bound of the distance from the length values of query to any point of the
+	 * box whose corners are stored in lower and upper from boxOffset. Like the distance,
+	 * it may stop growing once it exceeds cutoff.
+	 */
+	double boxDistance(double[] query, double[] lower, double[] upper, int boxOffset, int length, double cutoff);
+
+	/*
+	 * Distances from the query, length values starting at queryOffset, to the rows
+	 * fromRow to toRow - 1 of rows, which holds length values per row. The distance to
+	 * row r is written to out[outOffset + r - fromRow].
+	 */
+	default void distances(double[] query, int queryOffset, double[] rows, int fromRow, int toRow, int length,
+			double[] out, int outOffset) {
+		for (int row = fromRow; row < toRow; row++) {
+			out[outOffset++] = this.distance(query, queryOffset, rows, row * length, length);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+*    EuclideanKernel.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package incades.neighborsearch;
+
+/*
+ * Euclidean distance. The sums are made on squares and compared with the squared
+ * cutoff, so the square root is only taken once per distance.
+ */
+public class EuclideanKernel implements DistanceKernel {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public double distance(double[] x, int xOffset, double[] y, int yOffset, int length) {
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			double difference = x[xOffset + i] - y[yOffset + i];
+			sum += difference * difference;
+		}
+		return Math.sqrt(sum);
+	}
+
+	@Override
+	public double distance(double[] x, int xOffset, double[] y, int yOffset, int length, double cutoff) {
+		double limit = cutoff * cutoff;
+		double sum = 0;
+		for (int i = 0; i < length && sum <= limit; i++) {
+			double difference = x[xOffset + i] - y[yOffset + i];
+			sum += difference * difference;
+		}
+		return Math.sqrt(sum);
+	}
+
+	@Override
+	public double boxDistance(double[] query, double[] lower, double[] upper, int boxOffset, int length,
+			double cutoff) {
+		double limit = cutoff * cutoff;
+		double sum = 0;
+		for (int i = 0; i < length && sum <= limit; i++) {
+			double difference = gap(query[i], lower[boxOffset + i], upper[boxOffset + i]);
+			sum += difference * difference;
+		}
+		return Math.sqrt(sum);
+	}
+
+	/*
+	 * Distance from value to the interval [low, high] on one dimension.
+	 */
+	static double gap(double value, double low, double high) {
+		if (value < low)
+			return low - value;
+		if (value > high)
+			return value - high;
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Euclidean";
+	}
+}
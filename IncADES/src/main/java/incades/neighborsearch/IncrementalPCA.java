@@ -0,0 +1,145 @@
+/*
+*    IncrementalPCA.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.RealVector;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import datastructures.FeatureRecord;
+
+/*
+ * Principal component analysis of the DSEW window. The sums of the features and of
+ * their products are updated as instances enter and leave the window, in
+ * O(features^2) per instance, so a fit only decomposes the covariance matrix instead
+ * of going over the window. The basis holds the outputDims components of largest
+ * variance.
+ *
+ * The sums are taken relative to the first instance seen, which keeps them small when
+ * the features are far from zero. A window whose size differs from the count of the
+ * sums, as when the statistics were not fed, is summed again by fit.
+ */
+public class IncrementalPCA extends Projection {
+
+	private static final long serialVersionUID = 1L;
+
+	private int inputDims = 0;
+	private long count = 0;
+	private double[] shift;
+	private double[] sums;
+	/* Upper triangle of the sums of products, row after row */
+	private double[] products;
+	private double[] centered;
+
+	public IncrementalPCA(int outputDims) {
+		super(outputDims);
+	}
+
+	@Override
+	public synchronized void add(Instance inst) {
+		this.accumulate(FeatureRecord.of(inst).features(), 1);
+	}
+
+	@Override
+	public synchronized void remove(Instance inst) {
+		if (this.count > 0)
+			this.accumulate(FeatureRecord.of(inst).features(), -1);
+	}
+
+	@Override
+	public synchronized void clear() {
+		this.inputDims = 0;
+		this.count = 0;
+	}
+
+	private void accumulate(double[] features, int sign) {
+		if (this.inputDims != features.length || this.count == 0) {
+			this.inputDims = features.length;
+			this.shift = features.clone();
+			this.sums = new double[this.inputDims];
+			this.products = new double[this.inputDims * (this.inputDims + 1) / 2];
+			this.centered = new double[this.inputDims];
+			this.count = 0;
+		}
+
+		for (int i = 0; i < this.inputDims; i++) {
+			this.centered[i] = features[i] - this.shift[i];
+			this.sums[i] += sign * this.centered[i];
+		}
+		int p = 0;
+		for (int i = 0; i < this.inputDims; i++) {
+			double value = sign * this.centered[i];
+			for (int j = i; j < this.inputDims; j++) {
+				this.products[p++] += value * this.centered[j];
+			}
+		}
+		this.count += sign;
+	}
+
+	@Override
+	public synchronized ProjectionBasis fit(List<Instance> window) {
+		int inputDims = window.get(0).numAttributes() - 1;
+		if (this.count != window.size() || this.inputDims != inputDims) {
+			this.clear();
+			for (Instance inst : window) {
+				this.add(inst);
+			}
+		}
+
+		int outputDims = this.getOutputDims(inputDims);
+		double[][] covariance = new double[inputDims][inputDims];
+		double n = this.count;
+		int p = 0;
+		for (int i = 0; i < inputDims; i++) {
+			for (int j = i; j < inputDims; j++) {
+				double value = (this.products[p++] - this.sums[i] * this.sums[j] / n) / Math.max(1, n - 1);
+				covariance[i][j] = value;
+				covariance[j][i] = value;
+			}
+		}
+
+		EigenDecomposition decomposition = new EigenDecomposition(new Array2DRowRealMatrix(covariance, false));
+		double[] eigenvalues = decomposition.getRealEigenvalues();
+		Integer[] order = new Integer[inputDims];
+		for (int i = 0; i < inputDims; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(eigenvalues[b], eigenvalues[a]));
+
+		double[] matrix = new double[outputDims * inputDims];
+		for (int j = 0; j < outputDims; j++) {
+			RealVector component = decomposition.getEigenvector(order[j]);
+			for (int i = 0; i < inputDims; i++) {
+				matrix[j * inputDims + i] = component.getEntry(i);
+			}
+		}
+		return ProjectionBasis.dense(inputDims, outputDims, matrix);
+	}
+
+	@Override
+	public String toString() {
+		return "IncrementalPCA(" + this.outputDims + ")";
+	}
+}
@@ -0,0 +1,142 @@
+/*
+*    NeighborSet.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package incades.neighborsearch;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+/*
+ * Result of a k nearest neighbours query kept in primitive arrays: the slot of each
+ * neighbour in the index, its distance to the target and its class value, in
+ * ascending order of distance. The Instance of a neighbour is only looked up when
+ * instance(i) is called.
+ *
+ * Consumers must treat the set as read-only. Indexes reuse it between queries, so it
+ * is only valid until the next query made on the same thread.
+ */
+public class NeighborSet {
+
+	private int[] slots;
+	private double[] distances;
+	private double[] classValues;
+	private int size;
+	private int numClasses;
+	private IntFunction<Instance> resolver;
+
+	public NeighborSet() {
+		this(8);
+	}
+
+	public NeighborSet(int capacity) {
+		this.slots = new int[capacity];
+		this.distances = new double[capacity];
+		this.classValues = new double[capacity];
+	}
+
+	/*
+	 * Wraps the result of an index that only returns Instances. The slot of each
+	 * neighbour is its position in neighbours, and distances[i] must be the distance
+	 * of neighbours.get(i).
+	 */
+	public static NeighborSet fromInstances(Instances neighbours, double[] distances, int numClasses) {
+		int size = neighbours.size();
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			int j = i - 1;
+			while (j >= 0 && distances[order[j]] > distances[i]) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = i;
+		}
+
+		NeighborSet set = new NeighborSet(Math.max(1, size));
+		set.clear(numClasses, neighbours::get);
+		for (int i = 0; i < size; i++) {
+			set.add(order[i], distances[order[i]], neighbours.get(order[i]).classValue());
+		}
+		return set;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int numClasses() {
+		return this.numClasses;
+	}
+
+	public int slot(int i) {
+		return this.slots[i];
+	}
+
+	public double distance(int i) {
+		return this.distances[i];
+	}
+
+	public double classValue(int i) {
+		return this.classValues[i];
+	}
+
+	public Instance instance(int i) {
+		return this.resolver.apply(this.slots[i]);
+	}
+
+	/*
+	 * Empties the set. Used by the indexes before filling it with a new result; the
+	 * resolver maps a slot back to its Instance.
+	 */
+	public void clear(int numClasses, IntFunction<Instance> resolver) {
+		this.size = 0;
+		this.numClasses = numClasses;
+		this.resolver = resolver;
+	}
+
+	/*
+	 * Makes this set a copy of other, so that it outlives the next query.
+	 */
+	public void copyFrom(NeighborSet other) {
+		this.clear(other.numClasses, other.resolver);
+		for (int i = 0; i < other.size; i++) {
+			this.add(other.slots[i], other.distances[i], other.classValues[i]);
+		}
+	}
+
+	/*
+	 * Appends a neighbour. Used by the indexes, which add them in ascending order of
+	 * distance.
+	 */
+	public void add(int slot, double distance, double classValue) {
+		if (this.size == this.slots.length) {
+			int capacity = this.size * 2;
+			this.slots = Arrays.copyOf(this.slots, capacity);
+			this.distances = Arrays.copyOf(this.distances, capacity);
+			this.classValues = Arrays.copyOf(this.classValues, capacity);
+		}
+		this.slots[this.size] = slot;
+		this.distances[this.size] = distance;
+		this.classValues[this.size] = classValue;
+		this.size++;
+	}
+}
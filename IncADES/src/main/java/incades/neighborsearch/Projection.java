@@ -0,0 +1,67 @@
+/*
+*    Projection.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch;
+
+import java.io.Serializable;
+import java.util.List;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/*
+ * Reduction of the feature space placed in front of a neighbour index (see
+ * ProjectedNeighborSearch). A projection is fitted on the window each time the index is
+ * built, and the basis it returns is used unchanged until the next build, so the points
+ * of the index are never projected again in between.
+ *
+ * IncADES reports the instances entering and leaving the DSEW, for projections that
+ * keep statistics of the window up to date. Builds may run on another thread (see
+ * BackgroundRebuildNeighborSearch), so implementations keeping such statistics must
+ * synchronize them with fit.
+ */
+public abstract class Projection implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final int outputDims;
+
+	protected Projection(int outputDims) {
+		if (outputDims < 1)
+			throw new IllegalArgumentException("A projection needs at least one output dimension.");
+		this.outputDims = outputDims;
+	}
+
+	/*
+	 * Number of dimensions of the reduced space, at most the number of features.
+	 */
+	public int getOutputDims(int inputDims) {
+		return Math.min(this.outputDims, inputDims);
+	}
+
+	public abstract ProjectionBasis fit(List<Instance> window);
+
+	public void add(Instance inst) {
+	}
+
+	public void remove(Instance inst) {
+	}
+
+	public void clear() {
+	}
+}
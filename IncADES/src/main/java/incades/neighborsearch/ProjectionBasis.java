@@ -0,0 +1,84 @@
+/*
+*    ProjectionBasis.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch;
+
+import java.io.Serializable;
+
+/*
+ * Linear map from the features of an instance to a space of fewer dimensions, kept as a
+ * sparse matrix: the weights of output dimension j are weights[rowStarts[j]] to
+ * weights[rowStarts[j + 1] - 1], applied to the input dimensions in columns. It is
+ * never modified once fitted (see Projection).
+ */
+public final class ProjectionBasis implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int inputDims;
+	private final int outputDims;
+	private final int[] rowStarts;
+	private final int[] columns;
+	private final double[] weights;
+
+	public ProjectionBasis(int inputDims, int[] rowStarts, int[] columns, double[] weights) {
+		this.inputDims = inputDims;
+		this.outputDims = rowStarts.length - 1;
+		this.rowStarts = rowStarts;
+		this.columns = columns;
+		this.weights = weights;
+	}
+
+	/*
+	 * Basis of the rows of a dense outputDims x inputDims matrix, row after row.
+	 */
+	public static ProjectionBasis dense(int inputDims, int outputDims, double[] matrix) {
+		int[] rowStarts = new int[outputDims + 1];
+		int[] columns = new int[outputDims * inputDims];
+		for (int j = 0; j < outputDims; j++) {
+			rowStarts[j + 1] = (j + 1) * inputDims;
+			for (int i = 0; i < inputDims; i++) {
+				columns[j * inputDims + i] = i;
+			}
+		}
+		return new ProjectionBasis(inputDims, rowStarts, columns, matrix);
+	}
+
+	public int getInputDims() {
+		return this.inputDims;
+	}
+
+	public int getOutputDims() {
+		return this.outputDims;
+	}
+
+	/*
+	 * Writes the projection of the inputDims values of x starting at xOffset to out,
+	 * from outOffset.
+	 */
+	public void project(double[] x, int xOffset, double[] out, int outOffset) {
+		for (int j = 0; j < this.outputDims; j++) {
+			double sum = 0;
+			for (int p = this.rowStarts[j]; p < this.rowStarts[j + 1]; p++) {
+				sum += this.weights[p] * x[xOffset + this.columns[p]];
+			}
+			out[outOffset + j] = sum;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+/*
+*    RebuildPolicy.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch;
+
+import java.io.Serializable;
+
+/*
+ * Decides when IncADES rebuilds its neighbour index from the DSEW. IncADES reports
+ * every build and every query to the policy, and asks it after each update of the
+ * window whether the index should be built again.
+ */
+public interface RebuildPolicy extends Serializable {
+
+	/*
+	 * The index was built over numInstances instances, in buildNanos nanoseconds of the
+	 * thread that asked for it.
+	 */
+	public void onBuild(StreamNeighborSearch index, int numInstances, long buildNanos);
+
+	/*
+	 * The index answered numQueries queries in queryNanos nanoseconds.
+	 */
+	public void onQuery(StreamNeighborSearch index, int numQueries, long queryNanos);
+
+	/*
+	 * Whether the index, now holding numInstances instances, should be rebuilt.
+	 */
+	public boolean isToRebuild(StreamNeighborSearch index, int numInstances);
+
+	public RebuildStatistics getStatistics();
+}
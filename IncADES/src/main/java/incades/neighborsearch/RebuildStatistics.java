@@ -0,0 +1,110 @@
+/*
+*    RebuildStatistics.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch;
+
+import java.io.Serializable;
+
+/*
+ * What a RebuildPolicy saw and decided, for reports.
+ */
+public class RebuildStatistics implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	long numBuilds = 0;
+	long numQueries = 0;
+	long numChecks = 0;
+	long numRebuildsRequested = 0;
+
+	long lastBuildNanos = 0;
+	int lastBuildSize = 0;
+
+	/* Moving averages of the work and time of a query */
+	double averageNodesVisited = 0;
+	double averageDistancesComputed = 0;
+	double averageQueryNanos = 0;
+
+	/* Terms of the last decision of a cost model, in nanoseconds */
+	double projectedSavings = 0;
+	double estimatedRebuildCost = 0;
+
+	String lastReason = "";
+
+	public long getNumBuilds() {
+		return this.numBuilds;
+	}
+
+	public long getNumQueries() {
+		return this.numQueries;
+	}
+
+	public long getNumChecks() {
+		return this.numChecks;
+	}
+
+	public long getNumRebuildsRequested() {
+		return this.numRebuildsRequested;
+	}
+
+	public long getLastBuildNanos() {
+		return this.lastBuildNanos;
+	}
+
+	public int getLastBuildSize() {
+		return this.lastBuildSize;
+	}
+
+	public double getAverageNodesVisited() {
+		return this.averageNodesVisited;
+	}
+
+	public double getAverageDistancesComputed() {
+		return this.averageDistancesComputed;
+	}
+
+	public double getAverageQueryNanos() {
+		return this.averageQueryNanos;
+	}
+
+	public double getProjectedSavings() {
+		return this.projectedSavings;
+	}
+
+	public double getEstimatedRebuildCost() {
+		return this.estimatedRebuildCost;
+	}
+
+	/*
+	 * Why the last rebuild was requested, or empty.
+	 */
+	public String getLastReason() {
+		return this.lastReason;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("builds=%d queries=%d checks=%d rebuildsRequested=%d lastBuild=%.2fms/%d "
+				+ "nodes/query=%.1f distances/query=%.1f query=%.1fus savings=%.2fms rebuildCost=%.2fms reason=%s",
+				this.numBuilds, this.numQueries, this.numChecks, this.numRebuildsRequested, this.lastBuildNanos / 1e6,
+				this.lastBuildSize, this.averageNodesVisited, this.averageDistancesComputed,
+				this.averageQueryNanos / 1e3, this.projectedSavings / 1e6, this.estimatedRebuildCost / 1e6,
+				this.lastReason);
+	}
+}
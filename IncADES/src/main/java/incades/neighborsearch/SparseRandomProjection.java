@@ -0,0 +1,95 @@
+/*
+*    SparseRandomProjection.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/*
+ * Very sparse random projection (Li, Hastie and Church, 2006): each weight is
+ * +sqrt(s / outputDims) or -sqrt(s / outputDims) with probability 1 / 2s each, and
+ * zero otherwise, with s the square root of the number of features. It preserves the
+ * Euclidean distances in expectation, and projecting a point costs about
+ * outputDims * sqrt(inputDims) operations.
+ *
+ * The matrix does not depend on the data, so it is drawn once per number of features
+ * from the seed, and the same basis is returned by every fit.
+ */
+public class SparseRandomProjection extends Projection {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long seed;
+
+	private ProjectionBasis basis;
+
+	public SparseRandomProjection(int outputDims) {
+		this(outputDims, 1);
+	}
+
+	public SparseRandomProjection(int outputDims, long seed) {
+		super(outputDims);
+		this.seed = seed;
+	}
+
+	@Override
+	public synchronized ProjectionBasis fit(List<Instance> window) {
+		int inputDims = window.get(0).numAttributes() - 1;
+		if (this.basis == null || this.basis.getInputDims() != inputDims)
+			this.basis = this.draw(inputDims);
+		return this.basis;
+	}
+
+	private ProjectionBasis draw(int inputDims) {
+		int outputDims = this.getOutputDims(inputDims);
+		double s = Math.max(1, Math.sqrt(inputDims));
+		double probability = 1 / (2 * s);
+		double weight = Math.sqrt(s / outputDims);
+		Random random = new Random(this.seed);
+
+		int[] rowStarts = new int[outputDims + 1];
+		int[] columns = new int[16];
+		double[] weights = new double[16];
+		int count = 0;
+		for (int j = 0; j < outputDims; j++) {
+			for (int i = 0; i < inputDims; i++) {
+				double u = random.nextDouble();
+				if (u >= 2 * probability)
+					continue;
+				if (count == columns.length) {
+					columns = Arrays.copyOf(columns, count * 2);
+					weights = Arrays.copyOf(weights, count * 2);
+				}
+				columns[count] = i;
+				weights[count++] = u < probability ? weight : -weight;
+			}
+			rowStarts[j + 1] = count;
+		}
+		return new ProjectionBasis(inputDims, rowStarts, Arrays.copyOf(columns, count), Arrays.copyOf(weights, count));
+	}
+
+	@Override
+	public String toString() {
+		return "SparseRandomProjection(" + this.outputDims + ")";
+	}
+}
@@ -20,13 +20,63 @@
 
 package incades.neighborsearch;
 
+import java.util.List;
+
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 
+import incades.util.InstancesUtils;
+
 public interface StreamNeighborSearch {
+    public static final int NO_HANDLE = -1;
+
     public Instances kNearestNeighbours(Instance target, int k) throws Exception;
+    public NeighborSet kNearestNeighbourSet(Instance target, int k) throws Exception;
+
+    // Answers a query for every target at once, results[i] holding the neighbours of
+    // targets[i]. The sets are owned by the caller but only valid until the index is
+    // updated. Indexes override it to share work between nearby targets.
+    public default NeighborSet[] kNearestNeighbourSets(Instance[] targets, int k) throws Exception {
+        NeighborSet[] results = new NeighborSet[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            results[i] = new NeighborSet(Math.max(1, k));
+            results[i].copyFrom(this.kNearestNeighbourSet(targets[i], k));
+        }
+        return results;
+    }
     public void update(Instance inst) throws Exception;
     public void removeInstance(Instance inst) throws Exception;
     public void setInstances(Instances insts) throws Exception;
     public boolean isToRebuild();
+
+    // Inserts inst and returns a handle that stays valid until the instance is removed,
+    // or NO_HANDLE if the index does not hand out handles.
+    public default int addInstance(Instance inst) throws Exception {
+        this.update(inst);
+        return NO_HANDLE;
+    }
+
+    // Removes inst, inserted under handle, without searching for it. A handle that no
+    // longer designates inst, as the index was rebuilt since or never handed one out,
+    // falls back to removeInstance, so a stale handle never removes another instance.
+    public default void removeHandle(int handle, Instance inst) throws Exception {
+        this.removeInstance(inst);
+    }
+
+    // Nodes visited and distances computed by all the queries answered so far, read by
+    // the rebuild policies (see CostModelRebuildPolicy). Indexes that do not count them
+    // return -1.
+    public default long getTotalNodesVisited() {
+        return -1;
+    }
+
+    public default long getTotalDistancesComputed() {
+        return -1;
+    }
+
+    // Builds the index over the validation window. Indexes that can keep references to
+    // the window instances override it to avoid copying them into an Instances.
+    public default void setInstances(List<Instance> window) throws Exception {
+        this.setInstances(InstancesUtils.gerarDataset(window, "Validation Instances"));
+    }
 }
@@ -0,0 +1,112 @@
+/*
+*    ThresholdRebuildPolicy.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch;
+
+/*
+ * Rebuilds when the index asks for it through isToRebuild(), that is with the fixed
+ * thresholds of each index, such as the share of tombstones and the growth since the
+ * last build of KDTreeCanberra. It is the default policy of IncADES.
+ *
+ * It also keeps the moving averages of the work done by the queries, from the
+ * counters of the indexes that keep them.
+ */
+public class ThresholdRebuildPolicy implements RebuildPolicy {
+
+	private static final long serialVersionUID = 1L;
+
+	/* Weight of the last query in the moving averages */
+	protected static final double SMOOTHING = 0.05;
+
+	protected final RebuildStatistics statistics = new RebuildStatistics();
+
+	/* Queries since the last build, and counters of the index after the last query */
+	protected long queriesSinceBuild = 0;
+	private transient StreamNeighborSearch countedIndex;
+	private long lastNodesVisited = -1;
+	private long lastDistancesComputed = -1;
+
+	/* Work and time of the last query, nodes visited plus distances computed, or -1 */
+	protected double lastQueryWork = -1;
+	protected double lastQueryNanos = 0;
+
+	@Override
+	public void onBuild(StreamNeighborSearch index, int numInstances, long buildNanos) {
+		this.statistics.numBuilds++;
+		this.statistics.lastBuildNanos = buildNanos;
+		this.statistics.lastBuildSize = numInstances;
+		this.queriesSinceBuild = 0;
+		this.readCounters(index);
+	}
+
+	@Override
+	public void onQuery(StreamNeighborSearch index, int numQueries, long queryNanos) {
+		this.statistics.numQueries += numQueries;
+		this.queriesSinceBuild += numQueries;
+
+		long nodesVisited = this.lastNodesVisited;
+		long distancesComputed = this.lastDistancesComputed;
+		boolean counted = index == this.countedIndex && nodesVisited >= 0;
+		this.readCounters(index);
+
+		// Counters going back belong to an index swapped in by a background rebuild
+		double nodes = (double) (this.lastNodesVisited - nodesVisited) / numQueries;
+		double distances = (double) (this.lastDistancesComputed - distancesComputed) / numQueries;
+		this.lastQueryWork = counted && nodes >= 0 && distances >= 0 ? nodes + distances : -1;
+		this.lastQueryNanos = (double) queryNanos / numQueries;
+
+		double weight = this.queriesSinceBuild == numQueries ? 1 : SMOOTHING;
+		RebuildStatistics statistics = this.statistics;
+		statistics.averageQueryNanos += weight * (this.lastQueryNanos - statistics.averageQueryNanos);
+		if (this.lastQueryWork >= 0) {
+			statistics.averageNodesVisited += weight * (nodes - statistics.averageNodesVisited);
+			statistics.averageDistancesComputed += weight * (distances - statistics.averageDistancesComputed);
+		}
+	}
+
+	private void readCounters(StreamNeighborSearch index) {
+		this.countedIndex = index;
+		this.lastNodesVisited = index.getTotalNodesVisited();
+		this.lastDistancesComputed = index.getTotalDistancesComputed();
+	}
+
+	@Override
+	public boolean isToRebuild(StreamNeighborSearch index, int numInstances) {
+		this.statistics.numChecks++;
+		if (!index.isToRebuild())
+			return false;
+		return this.requestRebuild("thresholds of the index");
+	}
+
+	protected boolean requestRebuild(String reason) {
+		this.statistics.numRebuildsRequested++;
+		this.statistics.lastReason = reason;
+		return true;
+	}
+
+	@Override
+	public RebuildStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	@Override
+	public String toString() {
+		return "ThresholdRebuildPolicy";
+	}
+}
@@ -0,0 +1,98 @@
+/*
+*    VectorCanberraKernel.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package incades.neighborsearch;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Canberra distance written with the JDK Vector API: the terms of as many dimensions
+ * as the widest vector of the CPU holds are computed at once, the remaining ones one
+ * by one (masked loads are not compiled to vector instructions on JDK 17).
+ * CanberraDistance only loads this class when the jdk.incubator.vector module is
+ * present, so the scalar code keeps working without it.
+ */
+final class VectorCanberraKernel {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private VectorCanberraKernel() {
+	}
+
+	static int lanes() {
+		return SPECIES.length();
+	}
+
+	static double distance(double[] x, int xOffset, double[] y, int yOffset, int length) {
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+
+		for (; i < bound; i += SPECIES.length()) {
+			sum = sum.add(terms(DoubleVector.fromArray(SPECIES, x, xOffset + i),
+					DoubleVector.fromArray(SPECIES, y, yOffset + i)));
+		}
+		double result = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			result += CanberraDistance.term(x[xOffset + i], y[yOffset + i]);
+		}
+
+		return result;
+	}
+
+	/*
+	 * The partial sum is compared with cutoff after every vector of terms.
+	 */
+	static double distance(double[] x, int xOffset, double[] y, int yOffset, int length, double cutoff) {
+		int bound = SPECIES.loopBound(length);
+		double result = 0;
+		int i = 0;
+
+		for (; i < bound && result <= cutoff; i += SPECIES.length()) {
+			result += terms(DoubleVector.fromArray(SPECIES, x, xOffset + i),
+					DoubleVector.fromArray(SPECIES, y, yOffset + i)).reduceLanes(VectorOperators.ADD);
+		}
+		for (; i < length && result <= cutoff; i++) {
+			result += CanberraDistance.term(x[xOffset + i], y[yOffset + i]);
+		}
+
+		return result;
+	}
+
+	/*
+	 * Same as CanberraDistance.distances.
+	 */
+	static void distances(double[] query, int queryOffset, double[] rows, int fromRow, int toRow, int length,
+			double[] out, int outOffset) {
+		for (int row = fromRow; row < toRow; row++) {
+			out[outOffset++] = distance(query, queryOffset, rows, row * length, length);
+		}
+	}
+
+	private static DoubleVector terms(DoubleVector a, DoubleVector b) {
+		DoubleVector numerator = a.sub(b).abs();
+		DoubleVector denominator = a.abs().add(b.abs());
+		// Two zero values give 0/0, where the term is zero: they are divided by one instead
+		denominator = denominator.blend(1.0, denominator.eq(0));
+		return numerator.div(denominator);
+	}
+}
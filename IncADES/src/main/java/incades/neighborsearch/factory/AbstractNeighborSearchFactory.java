@@ -0,0 +1,110 @@
+/*
+*    AbstractNeighborSearchFactory.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package incades.neighborsearch.factory;
+
+import java.io.Serializable;
+
+import datastructures.CoordinateFormat;
+import incades.neighborsearch.CanberraKernel;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.StreamNeighborSearch;
+
+public abstract class AbstractNeighborSearchFactory implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	protected double epsilon = 0;
+
+	protected int maxVisitedNodes = 0;
+
+	protected DistanceKernel distanceKernel = new CanberraKernel();
+
+	protected int graphM = 0;
+
+	protected int efSearch = 0;
+
+	protected CoordinateFormat coordinateFormat = CoordinateFormat.DOUBLE;
+
+	protected int parallelThreshold = 0;
+
+	public StreamNeighborSearch createNeighborSearch() throws Exception {
+		return this.createNeighborSearch(this.distanceKernel);
+	}
+
+	/*
+	 * Creates an index measuring its distances with kernel rather than with the kernel
+	 * of the factory, which is left as it is, so that wrappers such as ProjectionFactory
+	 * can pick the distance without changing a factory shared with other threads. A
+	 * factory whose indexes cannot compute the distance of kernel throws an
+	 * IllegalArgumentException.
+	 */
+	public abstract StreamNeighborSearch createNeighborSearch(DistanceKernel kernel) throws Exception;
+
+	/*
+	 * Approximate search settings given to the indexes created afterwards, for the
+	 * indexes that support them. Zero for both means exact search.
+	 */
+	public void setApproximation(double epsilon, int maxVisitedNodes) {
+		this.epsilon = epsilon;
+		this.maxVisitedNodes = maxVisitedNodes;
+	}
+
+	/*
+	 * Window size from which the indexes created afterwards split a query over several
+	 * threads, for the indexes that support it. Zero keeps the queries sequential.
+	 */
+	public void setParallelSearch(int minInstances) {
+		this.parallelThreshold = minInstances;
+	}
+
+	/*
+	 * Graph settings given to the indexes created afterwards, for the graph indexes: the
+	 * number of links per point and per level, and the width of the search beam. Zero
+	 * keeps the default of the index.
+	 */
+	public void setGraphParameters(int m, int efSearch) {
+		this.graphM = m;
+		this.efSearch = efSearch;
+	}
+
+	/*
+	 * Distance used by the indexes created afterwards.
+	 */
+	public void setDistanceKernel(DistanceKernel distanceKernel) {
+		this.distanceKernel = distanceKernel;
+	}
+
+	public DistanceKernel getDistanceKernel() {
+		return this.distanceKernel;
+	}
+
+	/*
+	 * How the indexes created afterwards store the coordinates of their points, for the
+	 * indexes that support a compact format.
+	 */
+	public void setCoordinateFormat(CoordinateFormat coordinateFormat) {
+		this.coordinateFormat = coordinateFormat;
+	}
+
+	public abstract void getDescription(StringBuilder out);
+
+	public abstract void getShortDescription(StringBuilder out);
+}
@@ -0,0 +1,48 @@
+/*
+*    FlatKDTreeFactory.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package incades.neighborsearch.factory;
+
+import datastructures.FlatKDTree;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.StreamNeighborSearch;
+
+public class FlatKDTreeFactory extends AbstractNeighborSearchFactory {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public StreamNeighborSearch createNeighborSearch(DistanceKernel kernel) throws Exception {
+		FlatKDTree index = new FlatKDTree(kernel);
+		index.setApproximation(this.epsilon, this.maxVisitedNodes);
+		index.setParallelSearch(this.parallelThreshold);
+		return index;
+	}
+
+	@Override
+	public void getDescription(StringBuilder out) {
+		out.append("Flat K-d Tree Factory (" + this.distanceKernel + ")");
+	}
+
+	@Override
+	public void getShortDescription(StringBuilder out) {
+		out.append("FlatKDTree");
+	}
+}
@@ -0,0 +1,47 @@
+/*
+*    HNSWGraphFactory.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch.factory;
+
+import datastructures.HNSWGraph;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.StreamNeighborSearch;
+
+public class HNSWGraphFactory extends AbstractNeighborSearchFactory {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public StreamNeighborSearch createNeighborSearch(DistanceKernel kernel) throws Exception {
+		int m = this.graphM > 0 ? this.graphM : HNSWGraph.DEFAULT_M;
+		int efSearch = this.efSearch > 0 ? this.efSearch : HNSWGraph.DEFAULT_EF_SEARCH;
+		return new HNSWGraph(m, HNSWGraph.DEFAULT_EF_CONSTRUCTION, efSearch, kernel,
+				this.coordinateFormat);
+	}
+
+	@Override
+	public void getDescription(StringBuilder out) {
+		out.append("HNSW Graph Factory (" + this.distanceKernel + ")");
+	}
+
+	@Override
+	public void getShortDescription(StringBuilder out) {
+		out.append("HNSWGraph");
+	}
+}
@@ -0,0 +1,53 @@
+/*
+*    InvertedListFactory.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package incades.neighborsearch.factory;
+
+import datastructures.InvertedListNeighborSearch;
+import incades.neighborsearch.CanberraKernel;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.StreamNeighborSearch;
+
+/*
+ * Lists of the points of every feature, for sparse data. The index only computes the
+ * Canberra distance, the only kernel whose terms are known for a dimension that is
+ * zero in one of the points, and any other kernel is rejected.
+ */
+public class InvertedListFactory extends AbstractNeighborSearchFactory {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public StreamNeighborSearch createNeighborSearch(DistanceKernel kernel) throws Exception {
+		if (!(kernel instanceof CanberraKernel))
+			throw new IllegalArgumentException("The inverted lists only compute the Canberra distance.");
+		return new InvertedListNeighborSearch();
+	}
+
+	@Override
+	public void getDescription(StringBuilder out) {
+		out.append("Inverted List Factory (Canberra)");
+	}
+
+	@Override
+	public void getShortDescription(StringBuilder out) {
+		out.append("InvertedList");
+	}
+}
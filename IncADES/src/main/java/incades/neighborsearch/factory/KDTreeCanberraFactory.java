@@ -0,0 +1,51 @@
+/*
+*    KDTreeCanberraFactory.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch.factory;
+
+import datastructures.KDTreeCanberra;
+import incades.neighborsearch.CanberraKernel;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.StreamNeighborSearch;
+
+/*
+ * The original pointer-based K-d tree, which only computes the Canberra distance, any
+ * other kernel being rejected, and relies on rebuilds to drop the nodes it deactivates (see RebuildPolicy).
+ */
+public class KDTreeCanberraFactory extends AbstractNeighborSearchFactory {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public StreamNeighborSearch createNeighborSearch(DistanceKernel kernel) throws Exception {
+		if (!(kernel instanceof CanberraKernel))
+			throw new IllegalArgumentException("The K-d tree Canberra only computes the Canberra distance.");
+		return new KDTreeCanberra();
+	}
+
+	@Override
+	public void getDescription(StringBuilder out) {
+		out.append("K-d Tree Canberra Factory");
+	}
+
+	@Override
+	public void getShortDescription(StringBuilder out) {
+		out.append("KDTreeCanberra");
+	}
+}
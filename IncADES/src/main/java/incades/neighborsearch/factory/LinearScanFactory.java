@@ -0,0 +1,44 @@
+/*
+*    LinearScanFactory.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch.factory;
+
+import datastructures.LinearScanNeighborSearch;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.StreamNeighborSearch;
+
+public class LinearScanFactory extends AbstractNeighborSearchFactory {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public StreamNeighborSearch createNeighborSearch(DistanceKernel kernel) throws Exception {
+		return new LinearScanNeighborSearch(kernel, this.coordinateFormat);
+	}
+
+	@Override
+	public void getDescription(StringBuilder out) {
+		out.append("Linear Scan Factory (" + this.distanceKernel + ")");
+	}
+
+	@Override
+	public void getShortDescription(StringBuilder out) {
+		out.append("LinearScan");
+	}
+}
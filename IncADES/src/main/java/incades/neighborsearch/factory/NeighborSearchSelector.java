@@ -0,0 +1,94 @@
+/*
+*    NeighborSearchSelector.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch.factory;
+
+import java.io.Serializable;
+
+import incades.neighborsearch.CanberraKernel;
+import incades.neighborsearch.DistanceKernel;
+
+/*
+ * Picks the cheapest exact index for the size and dimensionality of the window.
+ *
+ * Measured per update (query, insertion and removal of the oldest point), the linear
+ * scan beats both trees up to a few hundred points at any dimensionality, since it has
+ * nothing to build or maintain. Beyond that the vantage-point tree wins from 4
+ * attributes up, while the k-d tree only keeps up with it on 2 or 3 attributes.
+ *
+ * A window is moved to a tree once it holds more than HYSTERESIS times scanLimit
+ * points, and back to the scan once it holds less than scanLimit / HYSTERESIS, so a
+ * window hovering around the limit does not rebuild its index at every update.
+ *
+ * A window of sparse instances goes to the inverted lists, whose queries only visit
+ * the non-zero features whatever the size of the window, when the distance is Canberra,
+ * the only one they compute. Under another distance it is treated as a dense window.
+ */
+public class NeighborSearchSelector implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_SCAN_LIMIT = 512;
+
+	public static final int DEFAULT_KD_TREE_MAX_DIMS = 3;
+
+	private static final double HYSTERESIS = 1.25;
+
+	private final int scanLimit;
+	private final int kdTreeMaxDims;
+
+	private final AbstractNeighborSearchFactory scanFactory = new LinearScanFactory();
+	private final AbstractNeighborSearchFactory kdTreeFactory = new FlatKDTreeFactory();
+	private final AbstractNeighborSearchFactory metricTreeFactory = new VPTreeFactory();
+	private final AbstractNeighborSearchFactory sparseFactory = new InvertedListFactory();
+
+	private boolean scanning = true;
+
+	public NeighborSearchSelector() {
+		this(DEFAULT_SCAN_LIMIT, DEFAULT_KD_TREE_MAX_DIMS);
+	}
+
+	public NeighborSearchSelector(int scanLimit, int kdTreeMaxDims) {
+		this.scanLimit = scanLimit;
+		this.kdTreeMaxDims = kdTreeMaxDims;
+	}
+
+	public AbstractNeighborSearchFactory select(int windowSize, int nDims) {
+		return this.select(windowSize, nDims, false, null);
+	}
+
+	/*
+	 * Factory of the index to use for a window of windowSize points with nDims
+	 * attributes, sparse or not, searched with kernel. The same factory instances are
+	 * returned every time, so a change of index shows as a different factory.
+	 */
+	public AbstractNeighborSearchFactory select(int windowSize, int nDims, boolean sparse, DistanceKernel kernel) {
+		if (sparse && kernel instanceof CanberraKernel)
+			return this.sparseFactory;
+
+		if (this.scanning && windowSize > this.scanLimit * HYSTERESIS)
+			this.scanning = false;
+		else if (!this.scanning && windowSize < this.scanLimit / HYSTERESIS)
+			this.scanning = true;
+
+		if (this.scanning)
+			return this.scanFactory;
+		return nDims <= this.kdTreeMaxDims ? this.kdTreeFactory : this.metricTreeFactory;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+*    ProjectionFactory.java
+*    Copyright (C) 2024 Ecole de Techonologie Superieure, Montreal, Quebec, Canada
+*    @Author Eduardo Victor Lima Barboza (eduardo.lima-barboza.1@ens.etsmtl.ca)
+*
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package incades.neighborsearch.factory;
+
+import datastructures.ProjectedNeighborSearch;
+import incades.neighborsearch.DistanceKernel;
+import incades.neighborsearch.EuclideanKernel;
+import incades.neighborsearch.Projection;
+import incades.neighborsearch.StreamNeighborSearch;
+
+/*
+ * Creates the indexes of another factory behind a projection (see
+ * ProjectedNeighborSearch). The wrapped indexes measure Euclidean distances in the
+ * reduced space, which the projections preserve; the kernel of the wrapped factory
+ * remains the distance of the original space, in which the neighbours are returned.
+ * The factories bound to the Canberra distance cannot be wrapped, as the projected
+ * coordinates may be negative.
+ */
+public class ProjectionFactory extends AbstractNeighborSearchFactory {
+
+	private static final long serialVersionUID = 1L;
+
+	private final AbstractNeighborSearchFactory factory;
+	private final Projection projection;
+	private final boolean rerank;
+
+	private final DistanceKernel reducedKernel = new EuclideanKernel();
+
+	public ProjectionFactory(AbstractNeighborSearchFactory factory, Projection projection, boolean rerank) {
+		if (factory instanceof KDTreeCanberraFactory || factory instanceof InvertedListFactory)
+			throw new IllegalArgumentException("The indexes of " + factory.getClass().getSimpleName()
+					+ " only compute the Canberra distance.");
+		this.factory = factory;
+		this.projection = projection;
+		this.rerank = rerank;
+		this.distanceKernel = factory.getDistanceKernel();
+	}
+
+	/*
+	 * The wrapped index gets the reduced-space kernel through the overload, since the
+	 * wrapped factory is shared with IncADES while indexes may be created on the thread
+	 * of a background rebuild.
+	 */
+	@Override
+	public StreamNeighborSearch createNeighborSearch(DistanceKernel kernel) throws Exception {
+		StreamNeighborSearch index = this.factory.createNeighborSearch(this.reducedKernel);
+		return new ProjectedNeighborSearch(index, this.projection, kernel, this.rerank);
+	}
+
+	public AbstractNeighborSearchFactory getFactory() {
+		return this.factory;
+	}
+
+	@Override
+	public void getDescription(StringBuilder out) {
+		out.append(this.projection + (this.rerank ? " with rerank, over " : ", over "));
+		this.factory.getDescription(out);
+	}
+
+	@Override
+	public void getShortDescription(StringBuilder out) {
+		out.append(this.projection + "+");
+		this.factory.getShortDescription(out);
+	}
+}
@@ -0,0 +1,217 @@
+package incades.testbed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import datastructures.FlatKDTree;
+import incades.core.IncADES;
+import incades.neighborsearch.NeighborSet;
+import moa.core.TimingUtils;
+import moa.streams.ArffFileStream;
+
+/*
+ * Measures what the approximate neighbour search costs in quality and gains in latency
+ * on a replayed stream.
+ */
+public class ApproximateSearchTestBed {
+
+    /*
+     * The first pass keeps the last windowSize instances in an exact and in an
+     * approximate FlatKDTree and queries both with every instance before it enters the
+     * window. Recall is the share of approximate neighbours that are not farther than
+     * the exact k-th neighbour. IncADES is then run prequentially with exact and with
+     * approximate search, to show the effect on the KNORA-E accuracy.
+     */
+    public void runRecallTest(ArffFileStream stream, String datasetName, int windowSize, int k,
+            double epsilon, int maxVisitedNodes) {
+
+        try {
+            System.out.println(datasetName + "_ApproximateSearch (epsilon=" + epsilon
+                    + ", maxVisitedNodes=" + maxVisitedNodes + ", k=" + k + ")");
+
+            FlatKDTree exact = new FlatKDTree();
+            FlatKDTree approximate = new FlatKDTree();
+            approximate.setApproximation(epsilon, maxVisitedNodes);
+
+            LinkedList<Instance> window = new LinkedList<Instance>();
+            NeighborSet exactNeighbours = new NeighborSet(k);
+            ArrayList<Long> exactTimes = new ArrayList<Long>();
+            ArrayList<Long> approximateTimes = new ArrayList<Long>();
+
+            double recallSum = 0;
+            double ratioSum = 0;
+            int numRatios = 0;
+            int numQueries = 0;
+
+            stream.prepareForUse();
+
+            while (stream.hasMoreInstances()) {
+                Instance inst = stream.nextInstance().getData();
+
+                if (window.size() >= k) {
+                    long start = System.nanoTime();
+                    exactNeighbours.copyFrom(exact.kNearestNeighbourSet(inst, k));
+                    exactTimes.add(System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    NeighborSet approximateNeighbours = approximate.kNearestNeighbourSet(inst, k);
+                    approximateTimes.add(System.nanoTime() - start);
+
+                    double kthDistance = exactNeighbours.distance(exactNeighbours.size() - 1);
+                    double exactSum = 0;
+                    double approximateSum = 0;
+                    int hits = 0;
+                    for (int i = 0; i < exactNeighbours.size(); i++) {
+                        exactSum += exactNeighbours.distance(i);
+                    }
+                    for (int i = 0; i < approximateNeighbours.size(); i++) {
+                        approximateSum += approximateNeighbours.distance(i);
+                        if (approximateNeighbours.distance(i) <= kthDistance)
+                            hits++;
+                    }
+
+                    recallSum += (double) hits / exactNeighbours.size();
+                    if (exactSum > 0) {
+                        ratioSum += approximateSum / exactSum;
+                        numRatios++;
+                    }
+                    numQueries++;
+                }
+
+                exact.update(inst);
+                approximate.update(inst);
+                window.addLast(inst);
+
+                if (window.size() > windowSize) {
+                    Instance removed = window.removeFirst();
+                    exact.removeInstance(removed);
+                    approximate.removeInstance(removed);
+                }
+            }
+
+            System.out.println("Queries: " + numQueries);
+            System.out.println("Recall@" + k + ": " + recallSum / numQueries);
+            System.out.println("Distance ratio (approximate/exact): " + (numRatios > 0 ? ratioSum / numRatios : 1.0));
+            System.out.println("Exact query latency p50/p99 (us): " + percentile(exactTimes, 0.50) / 1e3
+                    + " / " + percentile(exactTimes, 0.99) / 1e3);
+            System.out.println("Approximate query latency p50/p99 (us): " + percentile(approximateTimes, 0.50) / 1e3
+                    + " / " + percentile(approximateTimes, 0.99) / 1e3);
+
+            // The first run only warms up the JIT, so both measured runs start from compiled code
+            this.runIncADES(stream, 0, 0);
+            double[] exactRun = this.runIncADES(stream, 0, 0);
+            double[] approximateRun = this.runIncADES(stream, epsilon, maxVisitedNodes);
+
+            System.out.println("\nIncADES exact: accuracy " + exactRun[0] + ", time " + exactRun[1]
+                    + "s, prediction p99 " + exactRun[2] + "us");
+            System.out.println("IncADES approximate: accuracy " + approximateRun[0] + ", time " + approximateRun[1]
+                    + "s, prediction p99 " + approximateRun[2] + "us");
+
+        } catch (Exception ie) {
+            System.out.println(ie.getMessage());
+        }
+    }
+
+    /*
+     * Fills a window with windowSize copies of the first instance of the stream, which
+     * makes the tree a chain, and checks that a parallel search over it answers every
+     * later instance of the stream as the sequential search does. The parallel path is
+     * only taken when the common pool has more than one thread.
+     */
+    public void runDuplicateWindowCheck(ArffFileStream stream, String datasetName, int windowSize, int k) {
+
+        try {
+            System.out.println(datasetName + "_DuplicateWindow (windowSize=" + windowSize + ", k=" + k
+                    + ", parallelism=" + ForkJoinPool.getCommonPoolParallelism() + ")");
+
+            stream.prepareForUse();
+            Instance first = stream.nextInstance().getData();
+            ArrayList<Instance> window = new ArrayList<Instance>(windowSize);
+            for (int i = 0; i < windowSize; i++) {
+                window.add(first.copy());
+            }
+
+            FlatKDTree sequential = new FlatKDTree();
+            FlatKDTree parallel = new FlatKDTree();
+            parallel.setParallelSearch(1);
+            sequential.setInstances(window);
+            parallel.setInstances(window);
+
+            NeighborSet expected = new NeighborSet(k);
+            int numQueries = 0;
+            int numMismatches = 0;
+            while (stream.hasMoreInstances()) {
+                Instance inst = stream.nextInstance().getData();
+                expected.copyFrom(sequential.kNearestNeighbourSet(inst, k));
+                NeighborSet found = parallel.kNearestNeighbourSet(inst, k);
+                boolean same = found.size() == expected.size();
+                for (int i = 0; same && i < found.size(); i++) {
+                    same = found.distance(i) == expected.distance(i);
+                }
+                if (!same)
+                    numMismatches++;
+                numQueries++;
+            }
+
+            System.out.println("Queries: " + numQueries + ", mismatches: " + numMismatches);
+
+        } catch (Exception ie) {
+            System.out.println(ie.getMessage());
+        }
+    }
+
+    /*
+     * Prequential run of IncADES after training on the first 200 instances, as in
+     * ClassifierTestBed. Returns the accuracy, the CPU time in seconds and the 99th
+     * percentile of the prediction latency in microseconds.
+     */
+    private double[] runIncADES(ArffFileStream stream, double epsilon, int maxVisitedNodes) throws Exception {
+        IncADES classifier = new IncADES();
+        classifier.setRandomSeed(1);
+        classifier.setApproximateSearch(epsilon, maxVisitedNodes);
+        classifier.prepareForUse();
+
+        stream.prepareForUse();
+        classifier.setModelContext(stream.getHeader());
+
+        for (int i = 0; i < 200 && stream.hasMoreInstances(); i++) {
+            classifier.trainOnInstance(stream.nextInstance().getData());
+        }
+
+        int numberSamplesCorrect = 0;
+        int numberSamples = 0;
+        ArrayList<Long> predictionTimes = new ArrayList<Long>();
+        TimingUtils.enablePreciseTiming();
+        long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
+
+        while (stream.hasMoreInstances()) {
+            Instance trainInst = stream.nextInstance().getData();
+
+            long start = System.nanoTime();
+            if (classifier.correctlyClassifies(trainInst))
+                numberSamplesCorrect++;
+            predictionTimes.add(System.nanoTime() - start);
+
+            classifier.trainOnInstance(trainInst);
+            numberSamples++;
+        }
+
+        double accuracy = 100.0 * (double) numberSamplesCorrect / (double) numberSamples;
+        double time = TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread() - evaluateStartTime);
+
+        return new double[] { accuracy, time, percentile(predictionTimes, 0.99) / 1e3 };
+    }
+
+    static double percentile(ArrayList<Long> values, double fraction) {
+        if (values.isEmpty())
+            return 0;
+        ArrayList<Long> sorted = new ArrayList<Long>(values);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(fraction * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index));
+    }
+}